@@ -0,0 +1,94 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+/**
+ * This class holds the result of a single benchmark run.
+ *
+ * @author Captain ALM
+ */
+public final class BenchmarkResult {
+    private final String name;
+    private final String parameters;
+    private final long bytesPerOperation;
+    private final long operations;
+    private final long elapsedNanos;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    /**
+     * Constructs a new benchmark result.
+     *
+     * @param name The name of the benchmark.
+     * @param parameters The parameters of the benchmark.
+     * @param bytesPerOperation The number of bytes processed per operation.
+     * @param operations The number of measured operations.
+     * @param elapsedNanos The total measured time in nanoseconds.
+     * @param latencies The recorded operation latencies.
+     */
+    public BenchmarkResult(String name, String parameters, long bytesPerOperation, long operations, long elapsedNanos, LatencyRecorder latencies) {
+        this.name = name;
+        this.parameters = parameters;
+        this.bytesPerOperation = bytesPerOperation;
+        this.elapsedNanos = elapsedNanos;
+        this.operations = operations;
+        meanNanos = latencies.getMean();
+        p50Nanos = latencies.getPercentile(50);
+        p99Nanos = latencies.getPercentile(99);
+        maxNanos = latencies.getPercentile(100);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public long getBytesPerOperation() {
+        return bytesPerOperation;
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets the throughput in operations per second.
+     *
+     * @return The operations per second.
+     */
+    public double getOperationsPerSecond() {
+        return (elapsedNanos == 0) ? 0 : operations * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the throughput in megabytes (2^20 bytes) per second.
+     *
+     * @return The megabytes per second.
+     */
+    public double getMegabytesPerSecond() {
+        return getOperationsPerSecond() * bytesPerOperation / 1048576.0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class runs timed benchmarks and collects their results.
+ * Each benchmark is warmed up for the warm up time then measured for the measurement time.
+ * Operations are timed in batches sized from the warm up so that timer resolution does not dominate short operations,
+ * the recorded latencies are the mean operation latency of each batch.
+ * Every operation result is written to a volatile sink so that the JIT cannot remove the operation as dead code.
+ *
+ * @author Captain ALM
+ */
+public final class BenchmarkRunner {
+    /**
+     * The target duration of a measured batch in nanoseconds.
+     */
+    public static final long batchNanos = 100000L;
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int minimumOperations;
+    private final PrintStream progress;
+    private final List<BenchmarkResult> results = new ArrayList<>();
+    private volatile Object sink;
+
+    /**
+     * This interface represents a benchmarked operation.
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @return The result of the operation, consumed by the runner.
+         * @throws Exception An Exception has occurred.
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Constructs a new benchmark runner.
+     *
+     * @param warmupMillis The warm up time in milliseconds.
+     * @param measureMillis The measurement time in milliseconds.
+     * @param minimumOperations The minimum number of measured operations.
+     * @param progress The stream to report progress to or null.
+     */
+    public BenchmarkRunner(long warmupMillis, long measureMillis, int minimumOperations, PrintStream progress) {
+        warmupNanos = warmupMillis * 1000000L;
+        measureNanos = measureMillis * 1000000L;
+        this.minimumOperations = minimumOperations;
+        this.progress = progress;
+    }
+
+    /**
+     * Runs a benchmark and records its result.
+     *
+     * @param name The name of the benchmark.
+     * @param parameters The parameters of the benchmark.
+     * @param bytesPerOperation The number of bytes processed per operation.
+     * @param operation The operation to benchmark.
+     * @return The result.
+     * @throws Exception An Exception has occurred.
+     */
+    public BenchmarkResult run(String name, String parameters, long bytesPerOperation, Operation operation) throws Exception {
+        long warmupOperations = 0;
+        long start = System.nanoTime();
+        long end = start + warmupNanos;
+        long time;
+        do {
+            sink = operation.run();
+            warmupOperations++;
+        } while ((time = System.nanoTime()) < end);
+        int batch = (int) Math.max(1, Math.min(Integer.MAX_VALUE, warmupOperations * batchNanos / Math.max(1, time - start)));
+
+        LatencyRecorder latencies = new LatencyRecorder(1024);
+        long operations = 0;
+        start = System.nanoTime();
+        end = start + measureNanos;
+        time = start;
+        while (time < end || operations < minimumOperations) {
+            for (int i = 0; i < batch; i++) sink = operation.run();
+            long now = System.nanoTime();
+            latencies.record((now - time) / batch);
+            operations += batch;
+            time = now;
+        }
+        BenchmarkResult toret = new BenchmarkResult(name, parameters, bytesPerOperation, operations, time - start, latencies);
+        results.add(toret);
+        if (progress != null) progress.println(String.format(Locale.ROOT, "%-32s %-28s %12.1f ops/s %10.2f MiB/s p99 %d ns",
+                name, parameters, toret.getOperationsPerSecond(), toret.getMegabytesPerSecond(), toret.getP99Nanos()));
+        return toret;
+    }
+
+    /**
+     * Gets the recorded results.
+     *
+     * @return The results.
+     */
+    public List<BenchmarkResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Writes the recorded results as CSV.
+     *
+     * @param path The path of the file to write.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("name,parameters,bytes_per_op,operations,elapsed_ns,ops_per_s,mib_per_s,mean_ns,p50_ns,p99_ns,max_ns\n");
+            for (BenchmarkResult result : results)
+                writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.3f,%.3f,%.1f,%d,%d,%d\n", result.getName(), result.getParameters(),
+                        result.getBytesPerOperation(), result.getOperations(), result.getElapsedNanos(), result.getOperationsPerSecond(),
+                        result.getMegabytesPerSecond(), result.getMeanNanos(), result.getP50Nanos(), result.getP99Nanos(), result.getMaxNanos()));
+        }
+    }
+
+    /**
+     * Writes the recorded results as a JSON array.
+     *
+     * @param path The path of the file to write.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public void writeJson(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                BenchmarkResult result = results.get(i);
+                writer.write(String.format(Locale.ROOT, "  {\"name\": \"%s\", \"parameters\": \"%s\", \"bytesPerOp\": %d, \"operations\": %d, \"elapsedNs\": %d, "
+                                + "\"opsPerSecond\": %.3f, \"mibPerSecond\": %.3f, \"meanNs\": %.1f, \"p50Ns\": %d, \"p99Ns\": %d, \"maxNs\": %d}%s\n",
+                        result.getName(), result.getParameters(), result.getBytesPerOperation(), result.getOperations(), result.getElapsedNanos(),
+                        result.getOperationsPerSecond(), result.getMegabytesPerSecond(), result.getMeanNanos(), result.getP50Nanos(),
+                        result.getP99Nanos(), result.getMaxNanos(), (i + 1 < results.size()) ? "," : ""));
+            }
+            writer.write("]\n");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * This class runs the library benchmark suite and writes machine-readable results.
+ * Arguments:
+ * <ul>
+ *     <li>--suite all|digest|file|cipher : The benchmarks to run (default all).</li>
+ *     <li>--max-size bytes : The largest payload size, payloads range from 16 B to 1 GB (default 16 MB).</li>
+ *     <li>--warmup ms : The warm up time per benchmark (default 500).</li>
+ *     <li>--time ms : The measurement time per benchmark (default 2000).</li>
+ *     <li>--json path : Writes the results as JSON.</li>
+ *     <li>--csv path : Writes the results as CSV.</li>
+ * </ul>
+ *
+ * @author Captain ALM
+ */
+public final class BenchmarkSuite {
+    /**
+     * The payload sizes in bytes.
+     */
+    public static final long[] sizes = new long[] {16, 256, 4096, 65536, 1048576, 16777216, 268435456, 1073741824};
+
+    public static void main(String[] args) throws Exception {
+        String suite = "all";
+        long maxSize = 16777216;
+        long warmup = 500;
+        long time = 2000;
+        String json = null;
+        String csv = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--suite": suite = args[i + 1]; break;
+                case "--max-size": maxSize = Long.parseLong(args[i + 1]); break;
+                case "--warmup": warmup = Long.parseLong(args[i + 1]); break;
+                case "--time": time = Long.parseLong(args[i + 1]); break;
+                case "--json": json = args[i + 1]; break;
+                case "--csv": csv = args[i + 1]; break;
+                default: throw new IllegalArgumentException("unknown argument: " + args[i]);
+            }
+        }
+        final long limit = maxSize;
+        long[] selected = Arrays.stream(sizes).filter(size -> size <= limit).toArray();
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, time, 3, System.out);
+        if (suite.equals("all") || suite.equals("digest")) DigestBenchmarks.run(runner, selected);
+        if (suite.equals("all") || suite.equals("file")) FileDigestBenchmarks.run(runner, selected);
+        if (suite.equals("all") || suite.equals("cipher")) CipherBenchmarks.run(runner, selected);
+
+        if (json != null) runner.writeJson(Paths.get(json));
+        if (csv != null) runner.writeCsv(Paths.get(csv));
+    }
+}
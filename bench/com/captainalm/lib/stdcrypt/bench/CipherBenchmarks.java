@@ -0,0 +1,61 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import com.captainalm.lib.stdcrypt.encryption.AESPasswordRfc2898CipherFactory;
+
+import javax.crypto.Cipher;
+import java.util.Random;
+
+/**
+ * This class contains the {@link AESPasswordRfc2898CipherFactory} benchmarks.
+ * Key derivation, cipher setup and bulk encryption are measured separately.
+ *
+ * @author Captain ALM
+ */
+public final class CipherBenchmarks {
+    private CipherBenchmarks() {
+    }
+
+    /**
+     * Runs the cipher benchmarks.
+     *
+     * @param runner The runner to use.
+     * @param sizes The payload sizes in bytes.
+     * @throws Exception An Exception has occurred.
+     */
+    public static void run(BenchmarkRunner runner, long[] sizes) throws Exception {
+        Random random = new Random(0);
+        byte[] salt = new byte[32];
+        byte[] iVector = new byte[16];
+        random.nextBytes(salt);
+        random.nextBytes(iVector);
+
+        AESPasswordRfc2898CipherFactory uncached = new AESPasswordRfc2898CipherFactory("benchmark", salt, iVector);
+        uncached.setKeyCache(null);
+        runner.run("cipher.getCipher.derive", "AES/CBC", 0, () -> uncached.getCipher(Cipher.ENCRYPT_MODE));
+
+        AESPasswordRfc2898CipherFactory cached = new AESPasswordRfc2898CipherFactory("benchmark", salt, iVector);
+        runner.run("cipher.getCipher.cached", "AES/CBC", 0, () -> cached.getCipher(Cipher.ENCRYPT_MODE));
+
+        AESPasswordRfc2898CipherFactory pooled = new AESPasswordRfc2898CipherFactory("benchmark", salt, iVector);
+        pooled.setPoolingCiphers(true);
+        runner.run("cipher.getCipher.pooled", "AES/CBC", 0, () -> pooled.getCipher(Cipher.ENCRYPT_MODE));
+
+        Cipher cipher = cached.getCipher(Cipher.ENCRYPT_MODE);
+        for (long size : sizes) {
+            if (size > DigestBenchmarks.maximumArraySize) {
+                byte[] chunk = new byte[DigestBenchmarks.maximumArraySize];
+                byte[] output = new byte[cipher.getOutputSize(chunk.length)];
+                random.nextBytes(chunk);
+                runner.run("cipher.encrypt.bulk", "AES/CBC " + size + "B", size, () -> {
+                    for (long written = 0; written < size; written += chunk.length) cipher.update(chunk, 0, (int) Math.min(chunk.length, size - written), output, 0);
+                    return cipher.doFinal(output, 0);
+                });
+            } else {
+                byte[] data = new byte[(int) size];
+                byte[] output = new byte[cipher.getOutputSize(data.length)];
+                random.nextBytes(data);
+                runner.run("cipher.encrypt.bulk", "AES/CBC " + size + "B", size, () -> cipher.doFinal(data, 0, data.length, output, 0));
+            }
+        }
+    }
+}
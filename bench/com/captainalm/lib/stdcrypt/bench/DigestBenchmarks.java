@@ -0,0 +1,73 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import com.captainalm.lib.stdcrypt.digest.DigestComparer;
+import com.captainalm.lib.stdcrypt.digest.DigestProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.Random;
+
+/**
+ * This class contains the {@link DigestProvider} and {@link DigestComparer} benchmarks.
+ *
+ * @author Captain ALM
+ */
+public final class DigestBenchmarks {
+    /**
+     * The digest algorithms benchmarked.
+     */
+    public static final String[] algorithms = new String[] {"MD5", "SHA-1", "SHA-256", "SHA-512"};
+    /**
+     * The largest payload hashed as a single array, larger payloads are streamed in chunks of this size.
+     */
+    public static final int maximumArraySize = 16 * 1024 * 1024;
+
+    private static final OutputStream nullStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private DigestBenchmarks() {
+    }
+
+    /**
+     * Runs the digest benchmarks.
+     *
+     * @param runner The runner to use.
+     * @param sizes The payload sizes in bytes.
+     * @throws Exception An Exception has occurred.
+     */
+    public static void run(BenchmarkRunner runner, long[] sizes) throws Exception {
+        Random random = new Random(0);
+        for (String algorithm : algorithms) {
+            DigestProvider provider = new DigestProvider(algorithm);
+            for (long size : sizes) {
+                String parameters = algorithm + " " + size + "B";
+                if (size <= maximumArraySize) {
+                    byte[] data = new byte[(int) size];
+                    random.nextBytes(data);
+                    runner.run("digest.getDigestOf", parameters, size, () -> provider.getDigestOf(data));
+                } else {
+                    byte[] chunk = new byte[maximumArraySize];
+                    random.nextBytes(chunk);
+                    runner.run("digest.getDigestOutputStream", parameters, size, () -> {
+                        DigestOutputStream stream = provider.getDigestOutputStream(nullStream);
+                        for (long written = 0; written < size; written += chunk.length) stream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                        return stream.getMessageDigest().digest();
+                    });
+                }
+            }
+
+            byte[] digest = provider.getDigestOf(new byte[0]);
+            byte[] other = digest.clone();
+            runner.run("digest.compareDigests.array", algorithm, digest.length, () -> DigestComparer.compareDigests(digest, other));
+            runner.run("digest.compareDigests.stream", algorithm, digest.length, () -> DigestComparer.compareDigests(new ByteArrayInputStream(other), digest));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import com.captainalm.lib.stdcrypt.digest.DigestProvider;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.util.Random;
+
+/**
+ * This class contains the file hashing benchmarks comparing {@link DigestProvider#digestFile(Path)}
+ * with hashing through {@link DigestProvider#getDigestInputStream(InputStream)}.
+ *
+ * @author Captain ALM
+ */
+public final class FileDigestBenchmarks {
+    private FileDigestBenchmarks() {
+    }
+
+    /**
+     * Runs the file digest benchmarks.
+     *
+     * @param runner The runner to use.
+     * @param sizes The file sizes in bytes.
+     * @throws Exception An Exception has occurred.
+     */
+    public static void run(BenchmarkRunner runner, long[] sizes) throws Exception {
+        DigestProvider provider = DigestProvider.getSHA256Instance(false);
+        byte[] chunk = new byte[1048576];
+        new Random(0).nextBytes(chunk);
+        for (long size : sizes) {
+            if (size < chunk.length) continue;
+            Path file = Files.createTempFile("calmstdcrypt-bench", ".bin");
+            try {
+                try (OutputStream stream = Files.newOutputStream(file)) {
+                    for (long written = 0; written < size; written += chunk.length) stream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+                String parameters = "SHA-256 " + size + "B";
+                runner.run("file.digestFile", parameters, size, () -> provider.digestFile(file));
+                runner.run("file.getDigestInputStream", parameters, size, () -> {
+                    byte[] buffer = new byte[65536];
+                    try (DigestInputStream stream = provider.getDigestInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+                        while (stream.read(buffer) != -1) ;
+                        return stream.getMessageDigest().digest();
+                    }
+                });
+                runner.run("file.getDigestInputStream.byte", parameters, size, () -> {
+                    try (DigestInputStream stream = provider.getDigestInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+                        while (stream.read() != -1) ;
+                        return stream.getMessageDigest().digest();
+                    }
+                });
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
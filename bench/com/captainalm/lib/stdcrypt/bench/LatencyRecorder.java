@@ -0,0 +1,89 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import java.util.Arrays;
+
+/**
+ * This class records operation latencies in nanoseconds and provides percentiles.
+ * Each recorder should only be written to by one thread, use {@link #merge(LatencyRecorder...)} to combine recorders.
+ *
+ * @author Captain ALM
+ */
+public final class LatencyRecorder {
+    private long[] samples;
+    private int count;
+    private boolean sorted;
+
+    /**
+     * Constructs a new latency recorder with the specified initial capacity.
+     *
+     * @param capacity The initial capacity.
+     */
+    public LatencyRecorder(int capacity) {
+        samples = new long[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (count == samples.length) samples = Arrays.copyOf(samples, samples.length * 2);
+        samples[count++] = nanos;
+        sorted = false;
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return The number of latencies.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the latency at the specified percentile.
+     *
+     * @param percentile The percentile between 0 and 100.
+     * @return The latency in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return samples[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The mean latency in nanoseconds or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        if (count == 0) return 0;
+        double total = 0;
+        for (int i = 0; i < count; i++) total += samples[i];
+        return total / count;
+    }
+
+    /**
+     * Merges the specified recorders into a new recorder.
+     *
+     * @param recorders The recorders to merge.
+     * @return The merged recorder.
+     */
+    public static LatencyRecorder merge(LatencyRecorder... recorders) {
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) total += recorder.count;
+        LatencyRecorder toret = new LatencyRecorder(total);
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, toret.samples, toret.count, recorder.count);
+            toret.count += recorder.count;
+        }
+        return toret;
+    }
+}
@@ -0,0 +1,64 @@
+package com.captainalm.lib.stdcrypt.bench;
+
+import com.captainalm.lib.stdcrypt.encryption.SecureRandomSource;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * This benchmark measures the latency of salt and initialization vector generation
+ * for each {@link SecureRandomSource} under concurrent load.
+ * Arguments: [threads] [operations per thread].
+ *
+ * @author Captain ALM
+ */
+public final class SecureRandomBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 4;
+        int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+        System.out.println("source,threads,operations,mean_ns,p50_ns,p99_ns,p999_ns,max_ns");
+        run("nonBlocking", SecureRandomSource.getNonBlockingInstance(), threads, operations);
+        run("threadLocal", SecureRandomSource.getThreadLocalInstance(), threads, operations);
+        try {
+            run("strong", SecureRandomSource.getStrongInstance(), threads, operations);
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("strong source unavailable: " + e.getMessage());
+        }
+    }
+
+    private static void run(String name, SecureRandomSource source, int threads, int operations) throws InterruptedException {
+        measure(source, threads, operations / 10); //Warm up
+        LatencyRecorder result = measure(source, threads, operations);
+        System.out.println(name + "," + threads + "," + result.getCount() + "," + (long) result.getMean() + "," + result.getPercentile(50) + ","
+                + result.getPercentile(99) + "," + result.getPercentile(99.9) + "," + result.getPercentile(100));
+    }
+
+    private static LatencyRecorder measure(SecureRandomSource source, int threads, int operations) throws InterruptedException {
+        LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        Thread[] workers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            LatencyRecorder recorder = recorders[i] = new LatencyRecorder(operations);
+            workers[i] = new Thread(() -> {
+                byte[] salt = new byte[32];
+                byte[] iVector = new byte[16];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < operations; j++) {
+                    long time = System.nanoTime();
+                    source.nextBytes(salt);
+                    source.nextBytes(iVector);
+                    recorder.record(System.nanoTime() - time);
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        return LatencyRecorder.merge(recorders);
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains the benchmarks for the library.
+ *
+ * @author Captain ALM
+ */
+package com.captainalm.lib.stdcrypt.bench;
\ No newline at end of file
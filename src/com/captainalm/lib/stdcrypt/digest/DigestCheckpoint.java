@@ -0,0 +1,64 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.security.MessageDigest;
+
+/**
+ * This class provides an in memory snapshot of the running state of a {@link MessageDigest} at a byte offset,
+ * such as the digest of a stream from {@link DigestProvider#getDigestInputStream(java.io.InputStream)}.
+ * The state of a {@link MessageDigest} cannot be stored outside the process,
+ * use an {@link IncrementalTreeDigest} for checkpoints that can be written to disk.
+ *
+ * @author Captain ALM
+ */
+public final class DigestCheckpoint {
+    private final MessageDigest digest;
+    private final long offset;
+
+    /**
+     * Constructs a new DigestCheckpoint of the specified digest, which is cloned, at the specified offset.
+     *
+     * @param digest The digest to snapshot.
+     * @param offset The number of bytes the digest has been updated with.
+     * @throws NullPointerException digest is null.
+     * @throws IllegalArgumentException offset is less than 0.
+     * @throws CloneNotSupportedException The digest cannot be cloned.
+     */
+    public DigestCheckpoint(MessageDigest digest, long offset) throws CloneNotSupportedException {
+        if (digest == null) throw new NullPointerException("digest is null");
+        if (offset < 0) throw new IllegalArgumentException("offset is less than 0");
+        this.digest = (MessageDigest) digest.clone();
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the algorithm of the digest.
+     *
+     * @return The algorithm.
+     */
+    public String getAlgorithm() {
+        return digest.getAlgorithm();
+    }
+
+    /**
+     * Gets the offset of the checkpoint.
+     *
+     * @return The number of bytes the digest had been updated with.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Restores the digest state of the checkpoint, the checkpoint can be restored again.
+     * Updating should continue from {@link #getOffset()} of the input.
+     *
+     * @return A new digest in the state of the checkpoint.
+     */
+    public MessageDigest restore() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,13 +2,19 @@ package com.captainalm.lib.stdcrypt.digest;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 
 /**
  * This class provides the ability to compare digests.
+ * Digests of equal length are compared in constant time, 8 bytes at a time, without exiting early on a mismatch.
  *
  * @author Captain ALM
  */
 public class DigestComparer {
+    private static final ThreadLocal<ByteBuffer> threadBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64));
+
     /**
      * Compares two digests.
      *
@@ -20,12 +26,69 @@ public class DigestComparer {
         if ((digest1 == null && digest2 != null) || (digest1 != null && digest2 == null)) return false;
         if (digest1 == digest2) return true;
         if (digest1.length != digest2.length) return false;
-        for (int i = 0; i < digest1.length; i++) if (digest1[i] != digest2[i]) return false;
-        return true;
+        return isEqual(ByteBuffer.wrap(digest1), 0, ByteBuffer.wrap(digest2), 0, digest1.length);
+    }
+
+    /**
+     * Compares two digests within arrays.
+     *
+     * @param digest1 The first digest array.
+     * @param offset1 The offset of the first digest.
+     * @param digest2 The second digest array.
+     * @param offset2 The offset of the second digest.
+     * @param length The length of the digests.
+     * @return If the digests are equivalent.
+     * @throws NullPointerException digest1 or digest2 is null.
+     * @throws IndexOutOfBoundsException A digest is out of the bounds of its array.
+     */
+    public static boolean compareDigests(byte[] digest1, int offset1, byte[] digest2, int offset2, int length) {
+        if (digest1 == null) throw new NullPointerException("digest1 is null");
+        if (digest2 == null) throw new NullPointerException("digest2 is null");
+        if (length < 0 || offset1 < 0 || offset2 < 0 || offset1 > digest1.length - length || offset2 > digest2.length - length)
+            throw new IndexOutOfBoundsException("digest out of bounds");
+        return isEqual(ByteBuffer.wrap(digest1), offset1, ByteBuffer.wrap(digest2), offset2, length);
+    }
+
+    /**
+     * Compares the remaining bytes of two buffers as digests.
+     * The positions of the buffers are not changed.
+     *
+     * @param digest1 The first digest buffer.
+     * @param digest2 The second digest buffer.
+     * @return If the digests are equivalent.
+     */
+    public static boolean compareDigests(ByteBuffer digest1, ByteBuffer digest2) {
+        if ((digest1 == null && digest2 != null) || (digest1 != null && digest2 == null)) return false;
+        if (digest1 == digest2) return true;
+        if (digest1.remaining() != digest2.remaining()) return false;
+        return isEqual(digest1.duplicate(), digest1.position(), digest2.duplicate(), digest2.position(), digest1.remaining());
+    }
+
+    /**
+     * Compares the digests in constant time for the length.
+     * The buffers must have the same byte order.
+     */
+    private static boolean isEqual(ByteBuffer digest1, int offset1, ByteBuffer digest2, int offset2, int length) {
+        long difference = 0;
+        int i = 0;
+        for (; i <= length - 8; i += 8) difference |= digest1.getLong(offset1 + i) ^ digest2.getLong(offset2 + i);
+        for (; i < length; i++) difference |= digest1.get(offset1 + i) ^ digest2.get(offset2 + i);
+        return difference == 0;
+    }
+
+    private static ByteBuffer getBuffer(int length) {
+        ByteBuffer toret = threadBuffer.get();
+        if (toret.capacity() < length) {
+            toret = ByteBuffer.allocate(Math.max(length, toret.capacity() * 2));
+            threadBuffer.set(toret);
+        }
+        toret.clear().limit(length);
+        return toret;
     }
 
     /**
      * Compares a digest from an {@link InputStream} with a digest array.
+     * The length of the digest array is read from the stream in bulk into a reusable per thread buffer.
      *
      * @param digest1Stream The input stream digest.
      * @param digest2 The digest array.
@@ -35,8 +98,31 @@ public class DigestComparer {
     public static boolean compareDigests(InputStream digest1Stream, byte[] digest2) throws IOException {
         if (digest1Stream == null || digest2 == null) return false;
         if (digest2.length == 0) return false;
-        int c;
-        for (byte b : digest2) if ((c = digest1Stream.read()) == -1 || (byte) c != b) return false;
-        return true;
+        ByteBuffer buffer = getBuffer(digest2.length);
+        byte[] bytes = buffer.array();
+        int read;
+        int total = 0;
+        while (total < digest2.length && (read = digest1Stream.read(bytes, total, digest2.length - total)) != -1) total += read;
+        return total == digest2.length && isEqual(buffer, 0, ByteBuffer.wrap(digest2), 0, digest2.length);
+    }
+
+    /**
+     * Compares a digest from a blocking {@link ReadableByteChannel} with a digest array.
+     * The length of the digest array is read from the channel in bulk into a reusable per thread buffer.
+     *
+     * @param digest1Channel The channel digest.
+     * @param digest2 The digest array.
+     * @return If the digests are equivalent.
+     * @throws IllegalArgumentException digest1Channel is non-blocking.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public static boolean compareDigests(ReadableByteChannel digest1Channel, byte[] digest2) throws IOException {
+        if (digest1Channel == null || digest2 == null) return false;
+        if (digest1Channel instanceof SelectableChannel && !((SelectableChannel) digest1Channel).isBlocking())
+            throw new IllegalArgumentException("digest1Channel is non-blocking");
+        if (digest2.length == 0) return false;
+        ByteBuffer buffer = getBuffer(digest2.length);
+        while (buffer.hasRemaining()) if (digest1Channel.read(buffer) == -1) return false;
+        return isEqual(buffer, 0, ByteBuffer.wrap(digest2), 0, digest2.length);
     }
 }
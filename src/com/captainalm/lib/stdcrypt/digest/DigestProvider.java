@@ -1,11 +1,19 @@
 package com.captainalm.lib.stdcrypt.digest;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.DigestInputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.stream.IntStream;
 
 /**
  * This class allows for obtaining {@link DigestInputStream} and {@link DigestOutputStream} using the specified algorithm.
@@ -13,8 +21,20 @@ import java.security.NoSuchAlgorithmException;
  * @author Captain ALM
  */
 public final class DigestProvider implements Cloneable {
-    private MessageDigest digest;
-    private boolean shouldClone;
+    /**
+     * The size of the windows files are memory mapped in by {@link #digestFile(Path)}.
+     */
+    public static final int fileMappingWindowSize = 64 * 1024 * 1024;
+    /**
+     * The minimum number of records for a parallel batch to be split across cores.
+     */
+    public static final int parallelBatchThreshold = 1024;
+    private static final int fileReadBufferSize = 1024 * 1024;
+    private static final int batchChunkSize = 256;
+
+    private final MessageDigest digest;
+    private final boolean shouldClone;
+    private final ThreadLocal<MessageDigest> threadDigest;
 
     /**
      * Constructs a new digest provider with the specified algorithm.
@@ -37,9 +57,55 @@ public final class DigestProvider implements Cloneable {
      * @throws NoSuchAlgorithmException The algorithm does not exist.
      */
     public DigestProvider(String algorithm, boolean shouldClone) throws NoSuchAlgorithmException {
+        this(algorithm, shouldClone, false);
+    }
+
+    /**
+     * Constructs a new digest provider with the specified algorithm,
+     * if the digest should be cloned for created streams and if the provider is concurrent.
+     * A concurrent provider uses a separate {@link MessageDigest} per thread and per created stream
+     * so it can be shared between threads without locking.
+     *
+     * @param algorithm The algorithm of the digest.
+     * @param shouldClone The digest should be cloned when creating streams (Always true when concurrent).
+     * @param concurrent The provider should be safe to use from multiple threads.
+     * @throws NullPointerException algorithm is null.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public DigestProvider(String algorithm, boolean shouldClone, boolean concurrent) throws NoSuchAlgorithmException {
         if (algorithm == null) throw new NullPointerException("algorithm is null");
         digest = MessageDigest.getInstance(algorithm);
-        this.shouldClone = shouldClone;
+        this.shouldClone = shouldClone || concurrent;
+        threadDigest = (concurrent) ? ThreadLocal.withInitial(this::newDigest) : null;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance(digest.getAlgorithm(), digest.getProvider());
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private MessageDigest getDigest() {
+        return (threadDigest == null) ? digest : threadDigest.get();
+    }
+
+    /**
+     * Gets a reset digest for a created stream, cloned if {@link #digestClonedForStreams()}.
+     */
+    MessageDigest getStreamDigest() {
+        if (threadDigest != null) return newDigest();
+        digest.reset();
+        try {
+            return (shouldClone) ? (MessageDigest) digest.clone() : digest;
+        } catch (CloneNotSupportedException e) {
+            return digest;
+        }
     }
 
     /**
@@ -52,12 +118,7 @@ public final class DigestProvider implements Cloneable {
      */
     public DigestInputStream getDigestInputStream(InputStream inputStream) {
         if (inputStream == null) throw new NullPointerException("inputStream is null");
-        digest.reset();
-        try {
-            return new DigestInputStream(inputStream, (shouldClone) ? (MessageDigest) digest.clone() : digest);
-        } catch (CloneNotSupportedException e) {
-            return new DigestInputStream(inputStream, digest);
-        }
+        return new DigestInputStream(inputStream, getStreamDigest());
     }
 
     /**
@@ -70,12 +131,7 @@ public final class DigestProvider implements Cloneable {
      */
     public DigestOutputStream getDigestOutputStream(OutputStream outputStream) {
         if (outputStream == null) throw new NullPointerException("outputStream is null");
-        digest.reset();
-        try {
-            return new DigestOutputStream(outputStream, (shouldClone) ? (MessageDigest) digest.clone() : digest);
-        } catch (CloneNotSupportedException e) {
-            return new DigestOutputStream(outputStream, digest);
-        }
+        return new DigestOutputStream(outputStream, getStreamDigest());
     }
 
     /**
@@ -105,6 +161,15 @@ public final class DigestProvider implements Cloneable {
         return shouldClone;
     }
 
+    /**
+     * Gets whether this provider is safe to use from multiple threads.
+     *
+     * @return If the provider is concurrent.
+     */
+    public boolean isConcurrent() {
+        return threadDigest != null;
+    }
+
     /**
      * Gets the digest of the specified array.
      * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
@@ -114,10 +179,238 @@ public final class DigestProvider implements Cloneable {
      * @return The digest array.
      */
     public byte[] getDigestOf(byte[] dataIn) {
+        MessageDigest digest = getDigest();
         digest.reset();
         return digest.digest(dataIn);
     }
 
+    /**
+     * Gets the digest of the remaining bytes of the specified buffer.
+     * Direct and mapped buffers are hashed in place, the buffer's position is advanced to its limit.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param dataIn The buffer to find the digest of.
+     * @return The digest array.
+     * @throws NullPointerException dataIn is null.
+     */
+    public byte[] getDigestOf(ByteBuffer dataIn) {
+        if (dataIn == null) throw new NullPointerException("dataIn is null");
+        MessageDigest digest = getDigest();
+        digest.reset();
+        digest.update(dataIn);
+        return digest.digest();
+    }
+
+    /**
+     * Writes the digest of the remaining bytes of the specified buffer into the specified array.
+     * Direct and mapped buffers are hashed in place, the buffer's position is advanced to its limit.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param src The buffer to find the digest of.
+     * @param out The array to write the digest to.
+     * @param off The offset in the array to write the digest at.
+     * @return The number of bytes written ({@link #getLength()}).
+     * @throws NullPointerException src or out is null.
+     * @throws IndexOutOfBoundsException The digest does not fit in out at off.
+     */
+    public int digestInto(ByteBuffer src, byte[] out, int off) {
+        if (src == null) throw new NullPointerException("src is null");
+        if (out == null) throw new NullPointerException("out is null");
+        MessageDigest digest = getDigest();
+        int length = digest.getDigestLength();
+        if (off < 0 || off > out.length - length) throw new IndexOutOfBoundsException("digest does not fit in out at off");
+        digest.reset();
+        digest.update(src);
+        try {
+            return digest.digest(out, off, length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the digests of the remaining bytes of each of the specified buffers contiguously into the specified array.
+     * The positions of the buffers are advanced to their limits.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param records The buffers to find the digests of.
+     * @param out The array to write the digests to.
+     * @param off The offset in the array to write the first digest at.
+     * @param parallel Whether batches of at least {@link #parallelBatchThreshold} records are split across cores.
+     * @return The number of bytes written ({@link #getLength()} multiplied by the number of records).
+     * @throws NullPointerException records, a record or out is null.
+     * @throws IndexOutOfBoundsException The digests do not fit in out at off.
+     */
+    public int digestAll(ByteBuffer[] records, byte[] out, int off, boolean parallel) {
+        if (records == null) throw new NullPointerException("records is null");
+        if (out == null) throw new NullPointerException("out is null");
+        for (ByteBuffer record : records) if (record == null) throw new NullPointerException("record is null");
+        int length = getLength();
+        if (off < 0 || off > out.length - (long) length * records.length) throw new IndexOutOfBoundsException("digests do not fit in out at off");
+        digestBatch(records.length, parallel, (digest, from, to) -> {
+            for (int i = from; i < to; i++) {
+                digest.update(records[i]);
+                digest.digest(out, off + i * length, length);
+            }
+        });
+        return length * records.length;
+    }
+
+    /**
+     * Writes the digests of the remaining bytes of each of the specified buffers contiguously into the specified buffer, advancing its position.
+     * The positions of the record buffers are advanced to their limits.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param records The buffers to find the digests of.
+     * @param out The buffer to write the digests to.
+     * @param parallel Whether batches of at least {@link #parallelBatchThreshold} records are split across cores.
+     * @return The number of bytes written ({@link #getLength()} multiplied by the number of records).
+     * @throws NullPointerException records, a record or out is null.
+     * @throws BufferOverflowException The digests do not fit in the remaining bytes of out, nothing is written.
+     */
+    public int digestAll(ByteBuffer[] records, ByteBuffer out, boolean parallel) {
+        if (records == null) throw new NullPointerException("records is null");
+        if (out == null) throw new NullPointerException("out is null");
+        int length = getLength();
+        if (out.remaining() < (long) length * records.length) throw new BufferOverflowException();
+        int written;
+        if (out.hasArray() && !out.isReadOnly()) {
+            written = digestAll(records, out.array(), out.arrayOffset() + out.position(), parallel);
+        } else {
+            for (ByteBuffer record : records) if (record == null) throw new NullPointerException("record is null");
+            int start = out.position();
+            digestBatch(records.length, parallel, (digest, from, to) -> {
+                byte[] scratch = new byte[length];
+                ByteBuffer chunkOut = out.duplicate();
+                chunkOut.position(start + from * length);
+                for (int i = from; i < to; i++) {
+                    digest.update(records[i]);
+                    digest.digest(scratch, 0, length);
+                    chunkOut.put(scratch);
+                }
+            });
+            written = length * records.length;
+        }
+        out.position(out.position() + written);
+        return written;
+    }
+
+    /**
+     * Writes the digests of records packed in an array contiguously into the specified array.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param data The array containing the records.
+     * @param offsets The offsets of the records in data.
+     * @param lengths The lengths of the records.
+     * @param out The array to write the digests to.
+     * @param off The offset in the array to write the first digest at.
+     * @param parallel Whether batches of at least {@link #parallelBatchThreshold} records are split across cores.
+     * @return The number of bytes written ({@link #getLength()} multiplied by the number of records).
+     * @throws NullPointerException data, offsets, lengths or out is null.
+     * @throws IllegalArgumentException offsets and lengths have different lengths.
+     * @throws IndexOutOfBoundsException A record is out of the bounds of data or the digests do not fit in out at off.
+     */
+    public int digestAll(byte[] data, int[] offsets, int[] lengths, byte[] out, int off, boolean parallel) {
+        if (data == null) throw new NullPointerException("data is null");
+        if (offsets == null) throw new NullPointerException("offsets is null");
+        if (lengths == null) throw new NullPointerException("lengths is null");
+        if (out == null) throw new NullPointerException("out is null");
+        if (offsets.length != lengths.length) throw new IllegalArgumentException("offsets and lengths have different lengths");
+        for (int i = 0; i < offsets.length; i++)
+            if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > data.length - lengths[i]) throw new IndexOutOfBoundsException("record " + i + " out of bounds");
+        int length = getLength();
+        if (off < 0 || off > out.length - (long) length * offsets.length) throw new IndexOutOfBoundsException("digests do not fit in out at off");
+        digestBatch(offsets.length, parallel, (digest, from, to) -> {
+            for (int i = from; i < to; i++) {
+                digest.update(data, offsets[i], lengths[i]);
+                digest.digest(out, off + i * length, length);
+            }
+        });
+        return length * offsets.length;
+    }
+
+    private void digestBatch(int count, boolean parallel, BatchDigester digester) {
+        if (!parallel || count < parallelBatchThreshold) {
+            MessageDigest digest = getDigest();
+            digest.reset();
+            runBatch(digester, digest, 0, count);
+            return;
+        }
+        IntStream.range(0, (count + batchChunkSize - 1) / batchChunkSize).parallel().forEach(chunk -> {
+            MessageDigest digest = (threadDigest == null) ? newDigest() : threadDigest.get();
+            digest.reset();
+            runBatch(digester, digest, chunk * batchChunkSize, Math.min(count, (chunk + 1) * batchChunkSize));
+        });
+    }
+
+    private static void runBatch(BatchDigester digester, MessageDigest digest, int from, int to) {
+        try {
+            digester.digest(digest, from, to);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchDigester {
+        void digest(MessageDigest digest, int from, int to) throws DigestException;
+    }
+
+    /**
+     * Gets the digest of the specified file.
+     * The file is memory mapped in sequential windows of {@link #fileMappingWindowSize} which are fed straight into the digest,
+     * the rest of a file that cannot be mapped being read through the channel.
+     * NOTE: A mapping is only released when it is garbage collected, no reference to a window is kept after it is digested.
+     * NOTE: If using any streams on this digest, and {@link #digestClonedForStreams()} is false,
+     * The current calculated digest for all these streams are reset.
+     *
+     * @param file The path of the file to find the digest of.
+     * @return The digest array.
+     * @throws NullPointerException file is null.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public byte[] digestFile(Path file) throws IOException {
+        return digestFile(file, fileMappingWindowSize);
+    }
+
+    /**
+     * Gets the digest of the specified file, mapped in windows of the specified size.
+     */
+    byte[] digestFile(Path file, int windowSize) throws IOException {
+        if (file == null) throw new NullPointerException("file is null");
+        MessageDigest digest = getDigest();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            try {
+                while (position < size) {
+                    long length = Math.min(windowSize, size - position);
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                    position += length;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                channel.position(position);
+            }
+            if (position < size || size == 0) readFile(digest, channel); //Files reporting no size may still have contents
+        }
+        return digest.digest();
+    }
+
+    private static void readFile(MessageDigest digest, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(fileReadBufferSize);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+    }
+
     /**
      * Clones this object.
      *
@@ -126,7 +419,7 @@ public final class DigestProvider implements Cloneable {
     @Override
     public Object clone() {
         try {
-            return new DigestProvider(digest.getAlgorithm(), shouldClone);
+            return new DigestProvider(digest.getAlgorithm(), shouldClone, threadDigest != null);
         } catch (NoSuchAlgorithmException e) {
             return this;
         }
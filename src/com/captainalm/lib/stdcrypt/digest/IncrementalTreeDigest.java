@@ -0,0 +1,193 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * This class computes the tree digest of a {@link TreeDigestProvider} from sequential updates,
+ * so that hashing an interrupted input can be resumed from a stored checkpoint.
+ * <p>
+ * Only the digests of the completed perfect subtrees are kept, one for each set bit of the number of completed chunks.
+ * A checkpoint holds these digests and resumes at the end of the last completed chunk,
+ * the bytes of an incomplete chunk are hashed again after resuming.
+ * </p>
+ * <p>
+ * Checkpoint Format: The algorithm (as written by {@link DataOutputStream#writeUTF(String)}), the chunk size (4 byte big endian),
+ * the number of completed chunks (8 byte big endian) and the subtree digests from the largest subtree to the smallest.
+ * </p>
+ * This class is not thread safe.
+ *
+ * @author Captain ALM
+ */
+public final class IncrementalTreeDigest {
+    private final MessageDigest leafDigest;
+    private final MessageDigest nodeDigest;
+    private final int chunkSize;
+    private final byte[][] subtrees = new byte[64][];
+    private long leaves;
+    private int chunkLength;
+
+    IncrementalTreeDigest(TreeDigestProvider provider) {
+        if (provider == null) throw new NullPointerException("provider is null");
+        leafDigest = provider.newDigest();
+        nodeDigest = provider.newDigest();
+        chunkSize = provider.getChunkSize();
+        startLeaf();
+    }
+
+    IncrementalTreeDigest(TreeDigestProvider provider, InputStream checkpoint) throws IOException {
+        this(provider);
+        if (checkpoint == null) throw new NullPointerException("checkpoint is null");
+        DataInputStream dataIn = new DataInputStream(checkpoint);
+        if (!dataIn.readUTF().equals(leafDigest.getAlgorithm())) throw new IOException("checkpoint algorithm mismatch");
+        if (dataIn.readInt() != chunkSize) throw new IOException("checkpoint chunk size mismatch");
+        long count = dataIn.readLong();
+        if (count < 0 || count > Long.MAX_VALUE / chunkSize) throw new IOException("invalid checkpoint chunk count");
+        for (int height = 63; height >= 0; height--) {
+            if ((count & (1L << height)) == 0) continue;
+            subtrees[height] = new byte[leafDigest.getDigestLength()];
+            dataIn.readFully(subtrees[height]);
+        }
+        leaves = count;
+    }
+
+    private void startLeaf() {
+        leafDigest.reset();
+        leafDigest.update((byte) 0);
+        chunkLength = 0;
+    }
+
+    private void completeLeaf() {
+        byte[] node = leafDigest.digest();
+        int height = 0;
+        for (; (leaves & (1L << height)) != 0; height++) {
+            node = getNodeDigest(subtrees[height], node);
+            subtrees[height] = null;
+        }
+        subtrees[height] = node;
+        leaves++;
+        startLeaf();
+    }
+
+    private byte[] getNodeDigest(byte[] left, byte[] right) {
+        nodeDigest.update((byte) 1);
+        nodeDigest.update(left);
+        nodeDigest.update(right);
+        return nodeDigest.digest();
+    }
+
+    /**
+     * Gets the number of bytes hashed.
+     *
+     * @return The offset of the next byte of the input.
+     */
+    public long getOffset() {
+        return leaves * chunkSize + chunkLength;
+    }
+
+    /**
+     * Gets the offset that hashing resumes from when using a checkpoint written now.
+     *
+     * @return The offset of the end of the last completed chunk.
+     */
+    public long getCheckpointOffset() {
+        return leaves * chunkSize;
+    }
+
+    /**
+     * Updates the digest with the specified byte.
+     *
+     * @param b The byte.
+     */
+    public void update(byte b) {
+        leafDigest.update(b);
+        if (++chunkLength == chunkSize) completeLeaf();
+    }
+
+    /**
+     * Updates the digest with the specified bytes of the array.
+     *
+     * @param b The array.
+     * @param off The offset of the bytes in the array.
+     * @param len The number of bytes.
+     * @throws NullPointerException b is null.
+     * @throws IndexOutOfBoundsException The bytes are out of the bounds of the array.
+     */
+    public void update(byte[] b, int off, int len) {
+        if (b == null) throw new NullPointerException("b is null");
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            int toUpdate = Math.min(len, chunkSize - chunkLength);
+            leafDigest.update(b, off, toUpdate);
+            off += toUpdate;
+            len -= toUpdate;
+            chunkLength += toUpdate;
+            if (chunkLength == chunkSize) completeLeaf();
+        }
+    }
+
+    /**
+     * Updates the digest with the remaining bytes of the specified buffer.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param b The buffer.
+     * @throws NullPointerException b is null.
+     */
+    public void update(ByteBuffer b) {
+        if (b == null) throw new NullPointerException("b is null");
+        int limit = b.limit();
+        while (b.hasRemaining()) {
+            b.limit(b.position() + Math.min(b.remaining(), chunkSize - chunkLength));
+            chunkLength += b.remaining();
+            leafDigest.update(b);
+            b.limit(limit);
+            if (chunkLength == chunkSize) completeLeaf();
+        }
+    }
+
+    /**
+     * Gets the tree digest of the bytes hashed, the same as {@link TreeDigestProvider#getDigestOf(byte[])} of those bytes.
+     * Hashing can continue afterwards.
+     *
+     * @return The tree digest array.
+     */
+    public byte[] digest() {
+        byte[] toret = null;
+        if (chunkLength > 0 || leaves == 0) {
+            try {
+                toret = ((MessageDigest) leafDigest.clone()).digest();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        for (int height = 0; height < 64; height++) {
+            if (subtrees[height] == null) continue;
+            toret = (toret == null) ? subtrees[height] : getNodeDigest(subtrees[height], toret);
+        }
+        return Arrays.copyOf(toret, toret.length);
+    }
+
+    /**
+     * Writes a checkpoint of the completed chunks to the specified stream.
+     * The checkpoint resumes from {@link #getCheckpointOffset()}.
+     *
+     * @param out The stream to write the checkpoint to.
+     * @throws NullPointerException out is null.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public void writeCheckpoint(OutputStream out) throws IOException {
+        if (out == null) throw new NullPointerException("out is null");
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeUTF(leafDigest.getAlgorithm());
+        dataOut.writeInt(chunkSize);
+        dataOut.writeLong(leaves);
+        for (int height = 63; height >= 0; height--) if (subtrees[height] != null) dataOut.write(subtrees[height]);
+        dataOut.flush();
+    }
+}
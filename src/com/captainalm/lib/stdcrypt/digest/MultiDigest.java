@@ -0,0 +1,46 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.security.MessageDigest;
+
+/**
+ * This class holds the digests of several {@link DigestProvider}s that are updated together.
+ *
+ * @author Captain ALM
+ */
+final class MultiDigest {
+    private final MessageDigest[] digests;
+
+    MultiDigest(DigestProvider[] providers) {
+        if (providers == null) throw new NullPointerException("providers is null");
+        if (providers.length < 1) throw new IllegalArgumentException("providers is empty");
+        digests = new MessageDigest[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            if (providers[i] == null) throw new NullPointerException("provider is null");
+            digests[i] = providers[i].getStreamDigest();
+        }
+    }
+
+    void update(byte b) {
+        for (MessageDigest digest : digests) digest.update(b);
+    }
+
+    void update(byte[] b, int off, int len) {
+        for (MessageDigest digest : digests) digest.update(b, off, len);
+    }
+
+    String[] getAlgorithms() {
+        String[] toret = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) toret[i] = digests[i].getAlgorithm();
+        return toret;
+    }
+
+    byte[][] digest() {
+        byte[][] toret = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) toret[i] = digests[i].digest();
+        return toret;
+    }
+
+    void reset() {
+        for (MessageDigest digest : digests) digest.reset();
+    }
+}
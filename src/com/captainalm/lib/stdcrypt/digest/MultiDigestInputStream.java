@@ -0,0 +1,84 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class provides an input stream that updates the digests of several {@link DigestProvider}s in a single pass.
+ * Each chunk read is passed to every digest once; skipped bytes are not digested and marking is not supported.
+ * NOTE: If using any other streams on a provider, and {@link DigestProvider#digestClonedForStreams()} is false,
+ * The current calculated digest for this stream changes for all the other streams.
+ *
+ * @author Captain ALM
+ */
+public class MultiDigestInputStream extends FilterInputStream {
+    private final MultiDigest digests;
+
+    /**
+     * Constructs a new MultiDigestInputStream with the specified stream and digest providers.
+     *
+     * @param in The stream to read from.
+     * @param providers The providers of the digests to update.
+     * @throws NullPointerException in, providers or a provider is null.
+     * @throws IllegalArgumentException providers is empty.
+     */
+    public MultiDigestInputStream(InputStream in, DigestProvider... providers) {
+        super(in);
+        if (in == null) throw new NullPointerException("in is null");
+        digests = new MultiDigest(providers);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int toret = in.read();
+        if (toret != -1) digests.update((byte) toret);
+        return toret;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int toret = in.read(b, off, len);
+        if (toret > 0) digests.update(b, off, toret);
+        return toret;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Gets the algorithms of the digests in the order of the providers.
+     *
+     * @return The algorithms.
+     */
+    public String[] getAlgorithms() {
+        return digests.getAlgorithms();
+    }
+
+    /**
+     * Completes the digests of the bytes read, in the order of the providers, and resets them.
+     *
+     * @return The digests.
+     */
+    public byte[][] getDigests() {
+        return digests.digest();
+    }
+
+    /**
+     * Resets the digests.
+     */
+    public void resetDigests() {
+        digests.reset();
+    }
+}
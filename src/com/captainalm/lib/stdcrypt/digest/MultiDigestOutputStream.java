@@ -0,0 +1,70 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class provides an output stream that updates the digests of several {@link DigestProvider}s in a single pass.
+ * Each chunk written is passed to every digest once.
+ * NOTE: If using any other streams on a provider, and {@link DigestProvider#digestClonedForStreams()} is false,
+ * The current calculated digest for this stream changes for all the other streams.
+ *
+ * @author Captain ALM
+ */
+public class MultiDigestOutputStream extends FilterOutputStream {
+    private final MultiDigest digests;
+
+    /**
+     * Constructs a new MultiDigestOutputStream with the specified stream and digest providers.
+     *
+     * @param out The stream to write to.
+     * @param providers The providers of the digests to update.
+     * @throws NullPointerException out, providers or a provider is null.
+     * @throws IllegalArgumentException providers is empty.
+     */
+    public MultiDigestOutputStream(OutputStream out, DigestProvider... providers) {
+        super(out);
+        if (out == null) throw new NullPointerException("out is null");
+        digests = new MultiDigest(providers);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digests.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (b == null) throw new NullPointerException("b is null");
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        out.write(b, off, len);
+        digests.update(b, off, len);
+    }
+
+    /**
+     * Gets the algorithms of the digests in the order of the providers.
+     *
+     * @return The algorithms.
+     */
+    public String[] getAlgorithms() {
+        return digests.getAlgorithms();
+    }
+
+    /**
+     * Completes the digests of the bytes written, in the order of the providers, and resets them.
+     *
+     * @return The digests.
+     */
+    public byte[][] getDigests() {
+        return digests.digest();
+    }
+
+    /**
+     * Resets the digests.
+     */
+    public void resetDigests() {
+        digests.reset();
+    }
+}
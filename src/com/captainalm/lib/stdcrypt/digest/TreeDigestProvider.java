@@ -0,0 +1,273 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class provides tree digests (hash trees) of large inputs computed in parallel using the specified algorithm.
+ * <p>
+ * Format: The input is split into chunks of {@link #getChunkSize()} bytes, the last chunk may be shorter
+ * and an empty input is a single empty chunk.
+ * Each chunk is a leaf with the digest H(0x00 || chunk).
+ * For n &gt; 1 leaves, with k the largest power of two less than n,
+ * the digest is H(0x01 || digest(leaves 0 to k-1) || digest(leaves k to n-1)), as used by RFC 6962.
+ * The tree digest therefore depends on the chunk size and differs from the plain digest of the input.
+ * The same tree digest can be computed from sequential updates, with checkpoints that can be stored,
+ * by an {@link IncrementalTreeDigest}.
+ * </p>
+ *
+ * @author Captain ALM
+ */
+public final class TreeDigestProvider {
+    /**
+     * The default chunk size in bytes.
+     */
+    public static final int defaultChunkSize = 1024 * 1024;
+
+    private final MessageDigest digest;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<MessageDigest> threadDigest = ThreadLocal.withInitial(this::newDigest);
+    private final ThreadLocal<ByteBuffer> threadBuffer;
+
+    /**
+     * Constructs a new tree digest provider with the specified algorithm and the default chunk size.
+     *
+     * @param algorithm The algorithm of the digest.
+     * @throws NullPointerException algorithm is null.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public TreeDigestProvider(String algorithm) throws NoSuchAlgorithmException {
+        this(algorithm, defaultChunkSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new tree digest provider with the specified algorithm and chunk size.
+     *
+     * @param algorithm The algorithm of the digest.
+     * @param chunkSize The size of the chunks in bytes.
+     * @throws NullPointerException algorithm is null.
+     * @throws IllegalArgumentException chunkSize is less than 1.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public TreeDigestProvider(String algorithm, int chunkSize) throws NoSuchAlgorithmException {
+        this(algorithm, chunkSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new tree digest provider with the specified algorithm, chunk size and pool.
+     *
+     * @param algorithm The algorithm of the digest.
+     * @param chunkSize The size of the chunks in bytes.
+     * @param pool The pool to hash the chunks on.
+     * @throws NullPointerException algorithm or pool is null.
+     * @throws IllegalArgumentException chunkSize is less than 1.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public TreeDigestProvider(String algorithm, int chunkSize, ForkJoinPool pool) throws NoSuchAlgorithmException {
+        if (algorithm == null) throw new NullPointerException("algorithm is null");
+        if (pool == null) throw new NullPointerException("pool is null");
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize is less than 1");
+        digest = MessageDigest.getInstance(algorithm);
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        threadBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(chunkSize));
+    }
+
+    /**
+     * Constructs a new tree digest provider with the algorithm of the specified {@link DigestProvider} and chunk size.
+     *
+     * @param provider The digest provider to use the algorithm of.
+     * @param chunkSize The size of the chunks in bytes.
+     * @throws NullPointerException provider is null.
+     * @throws IllegalArgumentException chunkSize is less than 1.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public TreeDigestProvider(DigestProvider provider, int chunkSize) throws NoSuchAlgorithmException {
+        this(provider.getAlgorithm(), chunkSize, ForkJoinPool.commonPool());
+    }
+
+    MessageDigest newDigest() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance(digest.getAlgorithm(), digest.getProvider());
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the algorithm of this provider.
+     *
+     * @return The algorithm.
+     */
+    public String getAlgorithm() {
+        return digest.getAlgorithm();
+    }
+
+    /**
+     * Gets the length of the algorithm in bytes.
+     *
+     * @return The length in bytes.
+     */
+    public int getLength() {
+        return digest.getDigestLength();
+    }
+
+    /**
+     * Gets the size of the chunks in bytes.
+     *
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets a new {@link IncrementalTreeDigest} to compute a tree digest of this provider from sequential updates.
+     *
+     * @return The incremental tree digest.
+     */
+    public IncrementalTreeDigest getIncrementalDigest() {
+        return new IncrementalTreeDigest(this);
+    }
+
+    /**
+     * Gets an {@link IncrementalTreeDigest} resumed from a checkpoint written by {@link IncrementalTreeDigest#writeCheckpoint(java.io.OutputStream)}.
+     * Updating should continue from {@link IncrementalTreeDigest#getOffset()} of the input.
+     *
+     * @param checkpoint The stream to read the checkpoint from.
+     * @return The incremental tree digest.
+     * @throws NullPointerException checkpoint is null.
+     * @throws IOException An I/O Exception has occurred or the checkpoint is not for this provider.
+     */
+    public IncrementalTreeDigest resumeIncrementalDigest(InputStream checkpoint) throws IOException {
+        return new IncrementalTreeDigest(this, checkpoint);
+    }
+
+    /**
+     * Gets the tree digest of the specified array.
+     *
+     * @param dataIn The byte array to find the tree digest of.
+     * @return The tree digest array.
+     * @throws NullPointerException dataIn is null.
+     */
+    public byte[] getDigestOf(byte[] dataIn) {
+        if (dataIn == null) throw new NullPointerException("dataIn is null");
+        return getDigestOf(ByteBuffer.wrap(dataIn));
+    }
+
+    /**
+     * Gets the tree digest of the remaining bytes of the specified buffer.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param dataIn The buffer to find the tree digest of.
+     * @return The tree digest array.
+     * @throws NullPointerException dataIn is null.
+     */
+    public byte[] getDigestOf(ByteBuffer dataIn) {
+        if (dataIn == null) throw new NullPointerException("dataIn is null");
+        ByteBuffer source = dataIn.slice();
+        dataIn.position(dataIn.limit());
+        try {
+            return digest(source.remaining(), (md, offset, length) -> {
+                ByteBuffer chunk = source.duplicate();
+                chunk.position((int) offset).limit((int) (offset + length));
+                md.update(chunk);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the tree digest of the specified file.
+     *
+     * @param file The path of the file to find the tree digest of.
+     * @return The tree digest array.
+     * @throws NullPointerException file is null.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    public byte[] digestFile(Path file) throws IOException {
+        if (file == null) throw new NullPointerException("file is null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return digest(channel.size(), (md, offset, length) -> {
+                ByteBuffer buffer = threadBuffer.get();
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining()) if (channel.read(buffer, offset + buffer.position()) == -1) throw new IOException("file truncated while hashing");
+                buffer.flip();
+                md.update(buffer);
+            });
+        }
+    }
+
+    private byte[] digest(long length, ChunkSource source) throws IOException {
+        long leaves = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        TreeTask task = new TreeTask(source, length, 0, leaves);
+        try {
+            return (leaves == 1) ? task.compute() : pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface ChunkSource {
+        void update(MessageDigest md, long offset, int length) throws IOException;
+    }
+
+    private final class TreeTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final ChunkSource source;
+        private final long length;
+        private final long start;
+        private final long end;
+
+        private TreeTask(ChunkSource source, long length, long start, long end) {
+            this.source = source;
+            this.length = length;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected byte[] compute() {
+            MessageDigest md;
+            if (end - start == 1) {
+                long offset = start * chunkSize;
+                md = threadDigest.get();
+                md.reset();
+                md.update((byte) 0);
+                try {
+                    source.update(md, offset, (int) Math.min(chunkSize, length - offset));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return md.digest();
+            }
+            long split = Long.highestOneBit(end - start - 1);
+            TreeTask left = new TreeTask(source, length, start, start + split);
+            left.fork();
+            byte[] right = new TreeTask(source, length, start + split, end).compute();
+            byte[] leftDigest = left.join();
+            md = threadDigest.get();
+            md.reset();
+            md.update((byte) 1);
+            md.update(leftDigest);
+            md.update(right);
+            return md.digest();
+        }
+    }
+}
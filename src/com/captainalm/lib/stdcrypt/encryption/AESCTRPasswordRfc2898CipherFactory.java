@@ -0,0 +1,164 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * This class provides an AES/CTR cipher that uses Rfc2898 for key generation and a string password.
+ * The settings are the same as {@link AESPasswordRfc2898CipherFactory}, the initialization vector being the initial counter block.
+ * <p>
+ * Every cipher obtained for {@link Cipher#ENCRYPT_MODE} or {@link Cipher#WRAP_MODE} uses a new random initialization vector,
+ * which replaces the initialization vector in the settings, so a counter block is not reused under a key.
+ * Cipher text can be decrypted from any offset using {@link #getCipher(int, long)}, {@link #getCipherFromHeader(int, byte[], long)}
+ * or {@link AESCTRSeekableByteChannel}.
+ * Ciphers from a header are only obtained for decryption, as encrypting with a received counter block would reuse its keystream.
+ * </p>
+ *
+ * @author Captain ALM
+ */
+public class AESCTRPasswordRfc2898CipherFactory extends AESPasswordRfc2898CipherFactory {
+    protected static final int blockSize = 16;
+
+    /**
+     * Constructs a new instance of AESCTRPasswordRfc2898CipherFactory with the specified password.
+     *
+     * @param password The password to use.
+     * @throws NullPointerException password is null.
+     */
+    public AESCTRPasswordRfc2898CipherFactory(String password) {
+        super(password);
+    }
+
+    /**
+     * Constructs a new instance of AESCTRPasswordRfc2898CipherFactory with the specified password, salt and initialization vector.
+     *
+     * @param password The password to use.
+     * @param salt The salt to use or null.
+     * @param initializationVector The initialization vector used for decryption or null.
+     * @throws NullPointerException password is null.
+     * @throws IllegalArgumentException salt or initializationVector is larger than 255.
+     */
+    public AESCTRPasswordRfc2898CipherFactory(String password, byte[] salt, byte[] initializationVector) {
+        super(password, salt, initializationVector);
+    }
+
+    @Override
+    protected String getTransformation() {
+        return "AES/CTR/NoPadding";
+    }
+
+    @Override
+    protected AlgorithmParameterSpec getParameterSpec(int opmode, SecretKeySpec secretSpec, Settings current) throws CipherException {
+        if (opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.WRAP_MODE) {
+            byte[] nVector = new byte[blockSize];
+            randomSource.nextBytes(nVector);
+            updateSettings(s -> s.withInitializationVector(nVector));
+            haveAttributesChanged.set(true);
+            return createParameterSpec(nVector);
+        }
+        byte[] cIVector = current.iVector;
+        if (cIVector == null || cIVector.length != blockSize) throw new CipherException("initializationVector not set");
+        return createParameterSpec(cIVector);
+    }
+
+    /**
+     * Gets a new decryption cipher instance using the settings of the specified header applied over the current settings
+     * and the specified initialization vector, if not null, instead of the one in the header.
+     * The settings are not modified.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#DECRYPT_MODE} or {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @param initializationVector The initialization vector to use or null.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws IllegalArgumentException opmode is not a decryption mode.
+     * @throws CipherException The header is invalid, the salt or initialization vector is not set or an Exception has occurred.
+     */
+    @Override
+    public Cipher getCipherFromHeader(int opmode, byte[] header, byte[] initializationVector) throws CipherException {
+        checkDecryptionMode(opmode);
+        return super.getCipherFromHeader(opmode, header, initializationVector);
+    }
+
+    /**
+     * Gets a new decryption cipher instance positioned at the specified offset of the cipher text, which is never pooled per thread.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#DECRYPT_MODE} or {@link Cipher#UNWRAP_MODE}).
+     * @param offset The offset in bytes into the cipher text.
+     * @return The new cipher instance.
+     * @throws IllegalArgumentException opmode is not a decryption mode or offset is less than 0.
+     * @throws CipherException An Exception has occurred.
+     */
+    public Cipher getCipher(int opmode, long offset) throws CipherException {
+        return getCipher(opmode, offset, settings.get());
+    }
+
+    /**
+     * Gets a new decryption cipher instance positioned at the specified offset of the cipher text,
+     * using the settings of the specified header applied over the current settings, which is never pooled per thread.
+     * The settings are not modified.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#DECRYPT_MODE} or {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @param offset The offset in bytes into the cipher text.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws IllegalArgumentException opmode is not a decryption mode or offset is less than 0.
+     * @throws CipherException The header is invalid or an Exception has occurred.
+     */
+    public Cipher getCipherFromHeader(int opmode, byte[] header, long offset) throws CipherException {
+        checkDecryptionMode(opmode);
+        return getCipher(opmode, offset, getHeaderSettings(header));
+    }
+
+    private Cipher getCipher(int opmode, long offset, Settings current) throws CipherException {
+        checkDecryptionMode(opmode);
+        if (offset < 0) throw new IllegalArgumentException("offset is less than 0");
+        if (current.salt == null || current.salt.length < 1) throw new CipherException("salt not set");
+        if (current.iVector == null || current.iVector.length != blockSize) throw new CipherException("initializationVector not set");
+        try {
+            Cipher toret = Cipher.getInstance(getTransformation());
+            toret.init(opmode, getSecretKey(current), createParameterSpec(getCounterBlock(current.iVector, offset / blockSize)));
+            int skip = (int) (offset % blockSize);
+            if (skip > 0) toret.update(new byte[skip]);
+            return toret;
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+            throw new CipherException(e);
+        }
+    }
+
+    /**
+     * Gets the counter block for the specified block index, adding the index to the initial counter block as a 128 bit big endian integer.
+     *
+     * @param initializationVector The initial counter block.
+     * @param block The index of the block.
+     * @return The counter block.
+     */
+    protected static byte[] getCounterBlock(byte[] initializationVector, long block) {
+        byte[] toret = initializationVector.clone();
+        int carry = 0;
+        for (int i = toret.length - 1; i >= 0; i--) {
+            int sum = (toret[i] & 0xff) + (int) (block & 0xff) + carry;
+            toret[i] = (byte) sum;
+            carry = sum >>> 8;
+            block >>>= 8;
+        }
+        return toret;
+    }
+
+    /**
+     * Gets the name of the cipher factory.
+     *
+     * @return The name of the cipher factory.
+     */
+    @Override
+    public String getName() {
+        return "AES CTR Password Rfc 2898";
+    }
+}
@@ -0,0 +1,148 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * This class provides a read only {@link SeekableByteChannel} of the plain text of AES/CTR cipher text
+ * from a {@link AESCTRPasswordRfc2898CipherFactory}, where any offset can be read without decrypting the preceding data.
+ * If the factory outputs the salt or initialization vector, the cipher text is expected in the framed format
+ * of {@link FramedCipherOutputStream} and the header is read on construction.
+ * The header is used with {@link AESCTRPasswordRfc2898CipherFactory#getCipherFromHeader(int, byte[], long)},
+ * so the settings of the factory are not modified.
+ * NOTE: The password and, without a header, the salt and initialization vector of the factory must not change while the channel is in use.
+ *
+ * @author Captain ALM
+ */
+public class AESCTRSeekableByteChannel implements SeekableByteChannel {
+    private static final int chunkSize = 64 * 1024;
+
+    private final SeekableByteChannel channel;
+    private final AESCTRPasswordRfc2898CipherFactory factory;
+    private final long dataOffset;
+    private final byte[] header;
+    private final ByteBuffer inBuffer = ByteBuffer.allocate(chunkSize);
+    private long position;
+    private Cipher cipher;
+    private long cipherPosition = -1;
+    private boolean closed;
+
+    /**
+     * Constructs a new AESCTRSeekableByteChannel with the specified cipher text channel and factory.
+     *
+     * @param channel The channel containing the cipher text.
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException channel or factory is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException The header is invalid.
+     */
+    public AESCTRSeekableByteChannel(SeekableByteChannel channel, AESCTRPasswordRfc2898CipherFactory factory) throws IOException, CipherException {
+        if (channel == null) throw new NullPointerException("channel is null");
+        if (factory == null) throw new NullPointerException("factory is null");
+        this.channel = channel;
+        this.factory = factory;
+        if (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector()) {
+            channel.position(0);
+            header = SettingsParser.getFramingParser(false).read(channel);
+            dataOffset = header.length;
+        } else {
+            header = null;
+            dataOffset = 0;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) throw new ClosedChannelException();
+        if (dst == null) throw new NullPointerException("dst is null");
+        long remaining = size() - position;
+        if (remaining <= 0) return -1;
+        int length = (int) Math.min(Math.min(dst.remaining(), chunkSize), remaining);
+        if (length == 0) return 0;
+        try {
+            if (cipher == null || cipherPosition != position) cipher = (header == null) ? factory.getCipher(Cipher.DECRYPT_MODE, position) : factory.getCipherFromHeader(Cipher.DECRYPT_MODE, header, position);
+            inBuffer.clear().limit(length);
+            channel.position(dataOffset + position);
+            int read = channel.read(inBuffer);
+            if (read < 1) {
+                cipherPosition = -1;
+                return read;
+            }
+            inBuffer.flip();
+            int toret = cipher.update(inBuffer, dst);
+            position += toret;
+            cipherPosition = position;
+            return toret;
+        } catch (CipherException | ShortBufferException e) {
+            cipherPosition = -1;
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * This channel is read only.
+     *
+     * @param src The buffer.
+     * @return Never returns.
+     * @throws NonWritableChannelException Always thrown.
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        if (closed) throw new ClosedChannelException();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (closed) throw new ClosedChannelException();
+        if (newPosition < 0) throw new IllegalArgumentException("newPosition is less than 0");
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * Gets the size of the plain text.
+     *
+     * @return The size in bytes.
+     * @throws IOException An I/O Exception has occurred.
+     */
+    @Override
+    public long size() throws IOException {
+        if (closed) throw new ClosedChannelException();
+        return Math.max(0, channel.size() - dataOffset);
+    }
+
+    /**
+     * This channel is read only.
+     *
+     * @param size The size.
+     * @return Never returns.
+     * @throws NonWritableChannelException Always thrown.
+     */
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        channel.close();
+    }
+}
@@ -6,36 +6,87 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
  * This class provides an AES cipher that uses Rfc2898 for key generation and a string password.
+ * The key derivation algorithm, iteration count and key size are configurable,
+ * being encoded in the settings when they differ from the defaults.
+ * <p>
+ * Key derivation parameters read from headers and settings are limited by {@link #setMaximumIterations(int)} and {@link #setMaximumKeySize(int)},
+ * parameters equal to the current settings always being accepted, so cipher text from an untrusted sender cannot demand an unbounded key derivation.
+ * Headers can also be required to use the current key derivation parameters with {@link #setRequireLocalKeyDerivation(boolean)}.
+ * </p>
+ * <p>
+ * The settings are held in an immutable {@link Settings} snapshot that is replaced atomically,
+ * so reads never block and a cipher is always created from a consistent password, salt and initialization vector.
+ * </p>
+ * <p>
+ * NOTE: Subclasses written against the mutable fields password, salt, iVector and passwordCache,
+ * which have been removed, should read a snapshot from {@link #settings} or use {@link #getPassword()}, {@link #getSalt()}
+ * and {@link #getInitializationVector()}, and should update the settings with {@link #updateSettings(UnaryOperator)}.
+ * </p>
  *
  * @author Captain ALM
  */
 public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
     protected static final int iVectorDefaultSize = 16;
     protected static final int saltDefaultSize = 32;
-    protected static final int iterations = 2000;
-    protected static final int keySize = 256;
+    protected static final int iterationsDefault = 2000;
+    protected static final int keySizeDefault = 256;
+    /**
+     * The default number of key derivation iterations.
+     *
+     * @deprecated Use {@link #iterationsDefault}, the iterations in use are given by {@link #getIterations()}.
+     */
+    @Deprecated
+    protected static final int iterations = iterationsDefault;
+    /**
+     * The default size of the derived key in bits.
+     *
+     * @deprecated Use {@link #keySizeDefault}, the key size in use is given by {@link #getKeySize()}.
+     */
+    @Deprecated
+    protected static final int keySize = keySizeDefault;
+    protected static final String keyDerivationAlgorithmDefault = "PBKDF2WithHmacSHA1";
+    protected static final String[] keyDerivationAlgorithms = new String[] {"PBKDF2WithHmacSHA1", "PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512"};
+    protected static final int keyDerivationSettingsSize = 7;
 
+    protected final AtomicReference<Settings> settings;
+    /**
+     * The lock that guarded the mutable settings.
+     *
+     * @deprecated The settings are replaced atomically and are not guarded by this lock, use {@link #updateSettings(UnaryOperator)}.
+     */
+    @Deprecated
     protected final Object slock = new Object();
+    protected final AtomicBoolean haveAttributesChanged = new AtomicBoolean();
 
-    protected String password; //Cannot be exported in settings
-    protected byte[] salt;
-    protected byte[] iVector;
-    protected byte[] passwordCache;
+    protected volatile boolean outputSalt;
+    protected volatile boolean outputIVector;
+    protected volatile boolean poolCiphers;
+    protected volatile int maxIterations = SettingsParser.defaultMaximumIterations;
+    protected volatile int maxKeySize = SettingsParser.defaultMaximumKeySize;
+    protected volatile boolean requireLocalKeyDerivation;
 
-    protected boolean outputSalt;
-    protected boolean outputIVector;
-
-    protected boolean haveAttributesChanged;
+    protected volatile DerivedKeyCache keyCache = new DerivedKeyCache();
+    protected volatile SecureRandomSource randomSource = SecureRandomSource.getNonBlockingInstance();
 
     /**
      * Constructs a new instance of AESPasswordRfc2898CipherFactory with the specified password.
@@ -57,14 +108,63 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      * @throws IllegalArgumentException salt or initializationVector is larger than 255.
      */
     public AESPasswordRfc2898CipherFactory(String password, byte[] salt, byte[] initializationVector) {
-        setPassword(password);
-        setSalt(salt);
-        setInitializationVector(initializationVector);
-        haveAttributesChanged = false;
+        if (password == null) throw new NullPointerException("password is null");
+        if (salt != null && salt.length > 255) throw new IllegalArgumentException("salt is larger than 255");
+        if (initializationVector != null && initializationVector.length > 255) throw new IllegalArgumentException("initializationVector is larger than 255");
+        settings = new AtomicReference<>(new Settings(password, (salt == null) ? null : salt.clone(), (initializationVector == null) ? null : initializationVector.clone(),
+                keyDerivationAlgorithmDefault, iterationsDefault, keySizeDefault));
     }
 
+    /**
+     * Processes the password cache.
+     *
+     * @deprecated The password cache is computed with each {@link Settings}, this method does nothing.
+     */
+    @Deprecated
     protected void processPasswordCache() {
-        if (passwordCache == null) passwordCache = password.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the UTF-8 bytes of the password from the current settings.
+     *
+     * @return The password bytes, which must not be modified.
+     * @deprecated Read {@link Settings#passwordCache} from a snapshot of {@link #settings} so it matches the other settings used.
+     */
+    @Deprecated
+    protected byte[] getPasswordCache() {
+        return settings.get().passwordCache;
+    }
+
+    /**
+     * Atomically replaces the settings with the result of the update,
+     * invalidating the cached key of the replaced settings if the key inputs changed.
+     * The update may be applied more than once under contention.
+     *
+     * @param update The update to apply to the current settings.
+     * @return The new settings.
+     */
+    protected Settings updateSettings(UnaryOperator<Settings> update) {
+        Settings previous;
+        Settings next;
+        do {
+            previous = settings.get();
+            next = update.apply(previous);
+        } while (previous != next && !settings.compareAndSet(previous, next));
+        if (!previous.hasSameKey(next)) invalidateCachedKey(previous);
+        return next;
+    }
+
+    /**
+     * Gets the current settings, generating a random salt first if none is set.
+     *
+     * @return The current settings with a salt.
+     */
+    protected Settings getSaltedSettings() {
+        Settings current = settings.get();
+        if (current.salt != null && current.salt.length > 0) return current;
+        byte[] nSalt = new byte[saltDefaultSize];
+        randomSource.nextBytes(nSalt);
+        return updateSettings(s -> (s.salt == null || s.salt.length < 1) ? s.withSalt(nSalt) : s);
     }
 
     /**
@@ -76,30 +176,445 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public Cipher getCipher(int opmode) throws CipherException {
+        return createCipher(opmode, getSaltedSettings(), poolCiphers);
+    }
+
+    /**
+     * Gets a new cipher instance that is never pooled per thread, for use across calls such as by streams and channels.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The new cipher instance.
+     * @throws CipherException An Exception has occurred.
+     */
+    @Override
+    public Cipher getUnpooledCipher(int opmode) throws CipherException {
+        return createCipher(opmode, getSaltedSettings(), false);
+    }
+
+    /**
+     * Gets a new cipher instance together with the header describing its settings.
+     * The header is built from the settings snapshot the cipher was created from and the initialization vector of the cipher,
+     * so it matches the cipher even if another thread obtains a cipher concurrently.
+     * NOTE: The returned cipher is never pooled per thread.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The new cipher instance and its header.
+     * @throws CipherException An Exception has occurred.
+     */
+    @Override
+    public CipherWithHeader getCipherWithHeader(int opmode) throws CipherException {
+        Settings current = getSaltedSettings();
+        Cipher cipher = createCipher(opmode, current, false);
+        byte[] cIVector = cipher.getIV();
+        return new CipherWithHeader(cipher, getHeader((cIVector == null) ? current : current.withInitializationVector(cIVector)));
+    }
+
+    private Cipher createCipher(int opmode, Settings current, boolean pooled) throws CipherException {
         try {
-            if (salt == null || salt.length < 1) {
-                salt = new byte[saltDefaultSize];
-                SecureRandom.getInstanceStrong().nextBytes(salt);
+            return createCipher(opmode, current, getSecretKey(current), pooled);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new CipherException(e);
+        }
+    }
+
+    /**
+     * Gets a new cipher instance asynchronously, deriving the key on the specified executor.
+     * Concurrent calls with the same password and salt share one derivation when a {@link DerivedKeyCache} is in use.
+     * Failures complete the future exceptionally with a {@link CompletionException} wrapping the {@link CipherException}
+     * or with the {@link RejectedExecutionException} if the executor rejected the derivation.
+     * NOTE: The returned cipher is never pooled per thread.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param executor The executor to derive the key on.
+     * @return The future of the new cipher instance.
+     * @throws NullPointerException executor is null.
+     */
+    @Override
+    public CompletableFuture<Cipher> getCipherAsync(int opmode, Executor executor) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        Settings current = getSaltedSettings();
+        DerivedKeyCache cache = keyCache;
+        CompletableFuture<SecretKeySpec> keyFuture;
+        if (cache == null) {
+            keyFuture = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        keyFuture.complete(deriveSecretKey(current));
+                    } catch (Exception e) {
+                        keyFuture.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                keyFuture.completeExceptionally(e);
             }
+        } else {
+            keyFuture = cache.getAsync(current.keyDerivationAlgorithm, current.iterations, current.keySize, current.password, current.salt, () -> deriveSecretKey(current), executor);
+        }
+        CompletableFuture<Cipher> toret = new CompletableFuture<>();
+        keyFuture.whenComplete((key, throwable) -> {
+            if (throwable == null) {
+                try {
+                    if (!key.getAlgorithm().equals(getKeyAlgorithm())) key = new SecretKeySpec(key.getEncoded(), getKeyAlgorithm()); //Cache shared with another key algorithm
+                    toret.complete(createCipher(opmode, current, key, false));
+                } catch (CipherException e) {
+                    toret.completeExceptionally(new CompletionException(e));
+                } catch (RuntimeException e) {
+                    toret.completeExceptionally(e);
+                }
+            } else if (throwable instanceof NoSuchAlgorithmException || throwable instanceof InvalidKeySpecException) {
+                toret.completeExceptionally(new CompletionException(new CipherException(throwable)));
+            } else {
+                toret.completeExceptionally(throwable);
+            }
+        });
+        return toret;
+    }
 
-            SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            PBEKeySpec pbeKeySpec = new PBEKeySpec(password.toCharArray(), salt, iterations, keySize);
-            SecretKeySpec secretSpec = new SecretKeySpec(keyFactory.generateSecret(pbeKeySpec).getEncoded(), "AES");
+    protected Cipher createCipher(int opmode, Settings current, SecretKeySpec secretSpec, boolean pooled) throws CipherException {
+        try {
+            AlgorithmParameterSpec parameterSpec = getParameterSpec(opmode, secretSpec, current);
 
-            if (iVector == null || iVector.length < 1) {
-                iVector = new byte[iVectorDefaultSize];
-                SecureRandom.getInstanceStrong().nextBytes(iVector);
-            }
-            AlgorithmParameterSpec ivSpec = new IvParameterSpec(iVector);
+            Cipher toret = (pooled) ? CryptoInstancePool.getCipher(getTransformation(), opmode) : Cipher.getInstance(getTransformation());
+            toret.init(opmode, secretSpec, parameterSpec);
+            return toret;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+            throw new CipherException(e);
+        }
+    }
+
+    /**
+     * Gets a new cipher instance using the specified initialization vector instead of the one in the settings.
+     * The settings are not modified.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param initializationVector The initialization vector to use.
+     * @return The new cipher instance.
+     * @throws NullPointerException initializationVector is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    @Override
+    public Cipher getCipher(int opmode, byte[] initializationVector) throws CipherException {
+        if (initializationVector == null) throw new NullPointerException("initializationVector is null");
+        return createCipher(opmode, getSecretKeySpec(getSaltedSettings()), initializationVector, false);
+    }
 
-            Cipher toret = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            toret.init(opmode, secretSpec, ivSpec);
+    /**
+     * Gets a new cipher instance using the settings of the specified header applied over the current settings
+     * and the specified initialization vector, if not null, instead of the one in the header.
+     * The settings are not modified, so cipher text from another sender can be decrypted while this factory is in use.
+     * The key derivation parameters of the header are limited as described by {@link #setMaximumIterations(int)},
+     * {@link #setMaximumKeySize(int)} and {@link #setRequireLocalKeyDerivation(boolean)}.
+     * NOTE: The caller is responsible for never reusing an initialization vector under the same key when encrypting.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @param initializationVector The initialization vector to use or null.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws CipherException The header is invalid, the salt or initialization vector is not set or an Exception has occurred.
+     */
+    @Override
+    public Cipher getCipherFromHeader(int opmode, byte[] header, byte[] initializationVector) throws CipherException {
+        Settings current = getHeaderSettings(header);
+        if (current.salt == null || current.salt.length < 1) throw new CipherException("salt not set");
+        byte[] cIVector = (initializationVector == null) ? current.iVector : initializationVector;
+        if (cIVector == null || cIVector.length < 1) throw new CipherException("initializationVector not set");
+        return createCipher(opmode, getSecretKeySpec(current), cIVector, false);
+    }
+
+    /**
+     * Gets the settings of the specified header applied over the current settings, without modifying the settings.
+     *
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @return The settings of the header.
+     * @throws NullPointerException header is null.
+     * @throws CipherException The header is invalid or its key derivation parameters are not accepted.
+     */
+    protected Settings getHeaderSettings(byte[] header) throws CipherException {
+        if (header == null) throw new NullPointerException("header is null");
+        if (header.length < 1) throw new CipherException("no data");
+        Settings current = settings.get();
+        Settings toret = parseSettings(ByteBuffer.wrap(header), current, maxIterations, maxKeySize);
+        if (requireLocalKeyDerivation && !toret.hasSameKeyDerivation(current)) throw new CipherException("key derivation parameters differ from the local settings");
+        return toret;
+    }
+
+    /**
+     * Gets whether ciphers can be obtained with a specified initialization vector, which is supported.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isSupportingInitializationVectors() {
+        return true;
+    }
+
+    /**
+     * Gets a source of ciphers using the key of the current settings, or of the settings of the specified header applied over the current settings,
+     * and a specified initialization vector. The settings are not modified.
+     * The header is parsed and the key obtained once, when the source is created,
+     * so ciphers are obtained from the source without deriving the key again even when no {@link DerivedKeyCache} is in use.
+     *
+     * @param header The header in the format of {@link #getSettingsNoSecrets()} or null to use the current settings.
+     * @return The cipher source.
+     * @throws CipherException The header is invalid, the salt is not set or an Exception has occurred.
+     */
+    @Override
+    public ICipherSource getCipherSource(byte[] header) throws CipherException {
+        Settings current = (header == null) ? getSaltedSettings() : getHeaderSettings(header);
+        if (current.salt == null || current.salt.length < 1) throw new CipherException("salt not set");
+        SecretKeySpec secretSpec = getSecretKeySpec(current);
+        return (opmode, initializationVector) -> {
+            if (initializationVector == null) throw new NullPointerException("initializationVector is null");
+            return createCipher(opmode, secretSpec, initializationVector, poolCiphers);
+        };
+    }
+
+    private Cipher createCipher(int opmode, SecretKeySpec secretSpec, byte[] initializationVector, boolean pooled) throws CipherException {
+        try {
+            Cipher toret = (pooled) ? CryptoInstancePool.getCipher(getTransformation(), opmode) : Cipher.getInstance(getTransformation());
+            toret.init(opmode, secretSpec, createParameterSpec(initializationVector));
             return toret;
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
             throw new CipherException(e);
         }
     }
 
+    private SecretKeySpec getSecretKeySpec(Settings current) throws CipherException {
+        try {
+            return getSecretKey(current);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new CipherException(e);
+        }
+    }
+
+    protected String getTransformation() {
+        return "AES/CBC/PKCS5Padding";
+    }
+
+    protected String getKeyAlgorithm() {
+        return "AES";
+    }
+
+    protected AlgorithmParameterSpec getParameterSpec(int opmode, SecretKeySpec secretSpec, Settings current) throws CipherException {
+        byte[] cIVector = current.iVector;
+        if (cIVector == null || cIVector.length < 1) {
+            byte[] nIVector = new byte[iVectorDefaultSize];
+            randomSource.nextBytes(nIVector);
+            cIVector = updateSettings(s -> (s.iVector == null || s.iVector.length < 1) ? s.withInitializationVector(nIVector) : s).iVector;
+        }
+        return createParameterSpec(cIVector);
+    }
+
+    protected AlgorithmParameterSpec createParameterSpec(byte[] initializationVector) {
+        return new IvParameterSpec(initializationVector);
+    }
+
+    protected SecretKeySpec getSecretKey(Settings current) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        DerivedKeyCache cache = keyCache;
+        if (cache == null) return deriveSecretKey(current);
+        SecretKeySpec toret = cache.get(current.keyDerivationAlgorithm, current.iterations, current.keySize, current.password, current.salt, () -> deriveSecretKey(current));
+        if (!toret.getAlgorithm().equals(getKeyAlgorithm())) toret = new SecretKeySpec(toret.getEncoded(), getKeyAlgorithm()); //Cache shared with another key algorithm
+        return toret;
+    }
+
+    protected SecretKeySpec deriveSecretKey(Settings current) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        SecretKeyFactory keyFactory = (poolCiphers) ? CryptoInstancePool.getSecretKeyFactory(current.keyDerivationAlgorithm) : SecretKeyFactory.getInstance(current.keyDerivationAlgorithm);
+        PBEKeySpec pbeKeySpec = new PBEKeySpec(current.password.toCharArray(), current.salt, current.iterations, current.keySize);
+        try {
+            return new SecretKeySpec(keyFactory.generateSecret(pbeKeySpec).getEncoded(), getKeyAlgorithm());
+        } finally {
+            pbeKeySpec.clearPassword();
+        }
+    }
+
+    protected static int getKeyDerivationAlgorithmID(String algorithm) {
+        for (int i = 0; i < keyDerivationAlgorithms.length; i++) if (keyDerivationAlgorithms[i].equals(algorithm)) return i + 1;
+        return 0;
+    }
+
+    /**
+     * Checks that the specified operation mode is a decryption mode,
+     * for factories that must not encrypt with an initialization vector they did not generate.
+     *
+     * @param opmode The Cipher Operation Mode.
+     * @throws IllegalArgumentException opmode is not a decryption mode.
+     */
+    protected static void checkDecryptionMode(int opmode) {
+        if (opmode != Cipher.DECRYPT_MODE && opmode != Cipher.UNWRAP_MODE) throw new IllegalArgumentException("opmode is not a decryption mode");
+    }
+
+    protected void invalidateCachedKey(Settings previous) {
+        DerivedKeyCache cache = keyCache;
+        if (cache != null && previous.salt != null) cache.invalidate(previous.keyDerivationAlgorithm, previous.iterations, previous.keySize, previous.password, previous.salt);
+    }
+
+    /**
+     * Gets the settings flags of the fields to write, fields that are not set are excluded.
+     *
+     * @param current The settings to write.
+     * @param includePassword Whether to include the password.
+     * @param includeSalt Whether to include the salt.
+     * @param includeIVector Whether to include the initialization vector.
+     * @param includeKeyDerivation Whether to include the key derivation parameters when they are not the defaults.
+     * @return The settings flags.
+     */
+    protected static int getSettingsFlags(Settings current, boolean includePassword, boolean includeSalt, boolean includeIVector, boolean includeKeyDerivation) {
+        return ((includePassword) ? 1 : 0) + ((includeSalt && current.salt != null) ? 2 : 0) + ((includeIVector && current.iVector != null) ? 4 : 0)
+                + ((includeKeyDerivation && !current.isKeyDerivationDefault()) ? 8 : 0);
+    }
+
+    protected static int getSettingsLength(Settings current, int flags) {
+        return 1 + (((flags & 1) == 1) ? current.passwordCache.length + 4 : 0) + (((flags & 2) == 2) ? current.salt.length + 1 : 0)
+                + (((flags & 4) == 4) ? current.iVector.length + 1 : 0) + (((flags & 8) == 8) ? keyDerivationSettingsSize : 0);
+    }
+
+    protected static void putSettings(ByteBuffer settingsOut, Settings current, int flags) {
+        settingsOut.put((byte) flags);
+        if ((flags & 1) == 1) {
+            settingsOut.putInt(current.passwordCache.length);
+            settingsOut.put(current.passwordCache);
+        }
+        if ((flags & 2) == 2) {
+            settingsOut.put((byte) current.salt.length);
+            settingsOut.put(current.salt);
+        }
+        if ((flags & 4) == 4) {
+            settingsOut.put((byte) current.iVector.length);
+            settingsOut.put(current.iVector);
+        }
+        if ((flags & 8) == 8) {
+            settingsOut.put((byte) getKeyDerivationAlgorithmID(current.keyDerivationAlgorithm));
+            settingsOut.putInt(current.iterations);
+            settingsOut.putShort((short) current.keySize);
+        }
+    }
+
+    protected static byte[] getSettingsBytes(Settings current, int flags) {
+        byte[] toret = new byte[getSettingsLength(current, flags)];
+        putSettings(ByteBuffer.wrap(toret), current, flags);
+        return toret;
+    }
+
+    /**
+     * Parses the settings from the position of the buffer over the specified settings, fields absent from the settings are kept.
+     * The position of the buffer is advanced past the settings.
+     *
+     * @param settingsIn The big endian buffer to load the settings from.
+     * @param current The settings to apply the settings from the buffer to.
+     * @return The new settings.
+     * @throws CipherException The settings are invalid.
+     */
+    protected static Settings parseSettings(ByteBuffer settingsIn, Settings current) throws CipherException {
+        return parseSettings(settingsIn, current, Integer.MAX_VALUE, 65528);
+    }
+
+    /**
+     * Parses the settings from the position of the buffer over the specified settings, fields absent from the settings are kept.
+     * The position of the buffer is advanced past the settings.
+     * Key derivation iterations and key sizes above the maximums are rejected unless they equal those of the specified settings.
+     *
+     * @param settingsIn The big endian buffer to load the settings from.
+     * @param current The settings to apply the settings from the buffer to.
+     * @param maximumIterations The maximum number of key derivation iterations.
+     * @param maximumKeySize The maximum size of the derived key in bits.
+     * @return The new settings.
+     * @throws CipherException The settings are invalid.
+     */
+    protected static Settings parseSettings(ByteBuffer settingsIn, Settings current, int maximumIterations, int maximumKeySize) throws CipherException {
+        try {
+            int flags = settingsIn.get() & 0xff;
+            if ((flags & ~15) != 0) throw new CipherException("invalid settings flags");
+            if ((flags & 1) == 1) {
+                int pwdLength = settingsIn.getInt();
+                if (pwdLength < 1) throw new CipherException("password length less than 1");
+                if (pwdLength > settingsIn.remaining()) throw new CipherException("settings truncated");
+                current = current.withPassword(getString(settingsIn, pwdLength));
+            }
+
+            if ((flags & 2) == 2) {
+                int length = settingsIn.get() & 0xff;
+                if (length < 1) throw new CipherException("salt length less than 1");
+                byte[] nSalt = new byte[length];
+                settingsIn.get(nSalt);
+                current = current.withSalt(nSalt);
+            }
+
+            if ((flags & 4) == 4) {
+                int length = settingsIn.get() & 0xff;
+                if (length < 1) throw new CipherException("initializationVector length less than 1");
+                byte[] nIVector = new byte[length];
+                settingsIn.get(nIVector);
+                current = current.withInitializationVector(nIVector);
+            }
+
+            if ((flags & 8) == 8) {
+                int algorithmID = settingsIn.get() & 0xff;
+                if (algorithmID < 1 || algorithmID > keyDerivationAlgorithms.length) throw new CipherException("invalid key derivation algorithm");
+                int nIterations = settingsIn.getInt();
+                if (nIterations < 1) throw new CipherException("iterations less than 1");
+                if (nIterations > maximumIterations && nIterations != current.iterations) throw new CipherException("iterations greater than " + maximumIterations);
+                int nKeySize = settingsIn.getShort() & 0xffff;
+                if (nKeySize < 8 || nKeySize % 8 != 0) throw new CipherException("invalid key size");
+                if (nKeySize > maximumKeySize && nKeySize != current.keySize) throw new CipherException("key size greater than " + maximumKeySize);
+                current = current.withKeyDerivation(keyDerivationAlgorithms[algorithmID - 1], nIterations, nKeySize);
+            }
+            return current;
+        } catch (BufferUnderflowException e) {
+            throw new CipherException("settings truncated", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        String toret;
+        if (buffer.hasArray()) {
+            toret = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            toret = StandardCharsets.UTF_8.decode(slice).toString();
+        }
+        buffer.position(buffer.position() + length);
+        return toret;
+    }
+
+    private int writeSettings(ByteBuffer settingsOut, boolean includePassword) {
+        if (settingsOut == null) throw new NullPointerException("settingsOut is null");
+        Settings current = settings.get();
+        int flags = getSettingsFlags(current, includePassword, true, true, true);
+        int length = getSettingsLength(current, flags);
+        if (settingsOut.remaining() < length) throw new BufferOverflowException();
+        ByteBuffer out = settingsOut.duplicate();
+        putSettings(out, current, flags);
+        settingsOut.position(out.position());
+        return length;
+    }
+
+    /**
+     * Gets whether {@link Cipher} and {@link SecretKeyFactory} instances are pooled per thread.
+     *
+     * @return If ciphers are pooled.
+     */
+    @Override
+    public boolean isPoolingCiphers() {
+        return poolCiphers;
+    }
+
+    /**
+     * Sets whether {@link Cipher} and {@link SecretKeyFactory} instances are pooled per thread using {@link CryptoInstancePool}.
+     * NOTE: When pooling, {@link #getCipher(int)} and the sources from {@link #getCipherSource(byte[])} return the same instance
+     * for calls on the same thread with the same operation mode, re-initialized with the current key and initialization vector;
+     * a cipher must not be used after the next call. The other methods never return pooled ciphers,
+     * so the ciphers held by streams and channels are not re-initialized under them.
+     *
+     * @param poolCiphers Should ciphers be pooled.
+     */
+    @Override
+    public void setPoolingCiphers(boolean poolCiphers) {
+        this.poolCiphers = poolCiphers;
+    }
+
     /**
      * Gets the name of the cipher factory.
      *
@@ -118,11 +633,7 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public boolean cipherAttributesModified() {
-        synchronized (slock) {
-            boolean toret = haveAttributesChanged;
-            haveAttributesChanged = false;
-            return toret;
-        }
+        return haveAttributesChanged.getAndSet(false);
     }
 
     /**
@@ -132,38 +643,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public byte[] getSettings() {
-        synchronized (slock) {
-            processPasswordCache();
-            byte[] toret = new byte[1 + ((passwordCache == null) ? 0 : passwordCache.length + 4) + ((salt == null) ? 0 : salt.length + 1) + ((iVector == null) ? 0 : iVector.length + 1)];
-            toret[0] = (byte) (((passwordCache == null) ? 0 : 1) + ((salt == null) ? 0 : 2) + ((iVector == null) ? 0 : 4));
-
-            int index = 1;
-            if (passwordCache != null) {
-                int length = passwordCache.length;
-
-                toret[index++] = (byte) (length / 16777216);
-                length %= 16777216;
-                toret[index++] = (byte) (length / 65536);
-                length %= 65536;
-                toret[index++] = (byte) (length / 256);
-                length %= 256;
-                toret[index++] = (byte) (length);
-
-                System.arraycopy(passwordCache, 0, toret, index, passwordCache.length); index += passwordCache.length;
-            }
-
-            if (salt != null) {
-                toret[index++] = (byte) salt.length;
-                System.arraycopy(salt, 0, toret, index, salt.length); index += salt.length;
-            }
-
-            if (iVector != null) {
-                toret[index++] = (byte) iVector.length;
-                System.arraycopy(iVector, 0, toret, index, iVector.length);
-            }
-
-            return toret;
-        }
+        Settings current = settings.get();
+        return getSettingsBytes(current, getSettingsFlags(current, true, true, true, true));
     }
 
     /**
@@ -173,10 +654,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public int getSettingsLength() {
-        synchronized (slock) {
-            processPasswordCache();
-            return 1 + ((passwordCache == null) ? 0 : passwordCache.length + 4) + ((salt == null) ? 0 : salt.length + 1) + ((iVector == null) ? 0 : iVector.length + 1);
-        }
+        Settings current = settings.get();
+        return getSettingsLength(current, getSettingsFlags(current, true, true, true, true));
     }
 
     /**
@@ -186,23 +665,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public byte[] getSettingsNoSecrets() {
-        synchronized (slock) {
-            byte[] toret = new byte[1 + ((salt == null) ? 0 : salt.length + 1) + ((iVector == null) ? 0 : iVector.length + 1)];
-            toret[0] = (byte) (((salt == null) ? 0 : 2) + ((iVector == null) ? 0 : 4));
-
-            int index = 1;
-            if (salt != null) {
-                toret[index++] = (byte) salt.length;
-                System.arraycopy(salt, 0, toret, index, salt.length); index += salt.length;
-            }
-
-            if (iVector != null) {
-                toret[index++] = (byte) iVector.length;
-                System.arraycopy(iVector, 0, toret, index, iVector.length);
-            }
-
-            return toret;
-        }
+        Settings current = settings.get();
+        return getSettingsBytes(current, getSettingsFlags(current, false, true, true, true));
     }
 
     /**
@@ -212,13 +676,61 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     @Override
     public int getSettingsNoSecretsLength() {
-        synchronized (slock) {
-            return 1 + ((salt == null) ? 0 : salt.length + 1) + ((iVector == null) ? 0 : iVector.length + 1);
-        }
+        Settings current = settings.get();
+        return getSettingsLength(current, getSettingsFlags(current, false, true, true, true));
+    }
+
+    /**
+     * Writes the cipher settings at the position of the buffer, advancing the position.
+     * No intermediate array is allocated, heap and direct buffers are supported.
+     *
+     * @param settingsOut The buffer to write the settings to.
+     * @return The number of bytes written.
+     * @throws NullPointerException settingsOut is null.
+     * @throws BufferOverflowException The buffer does not have enough space remaining, nothing is written.
+     */
+    @Override
+    public int writeSettings(ByteBuffer settingsOut) {
+        return writeSettings(settingsOut, true);
+    }
+
+    /**
+     * Writes the cipher settings without secrets at the position of the buffer, advancing the position.
+     * No intermediate array is allocated, heap and direct buffers are supported.
+     *
+     * @param settingsOut The buffer to write the settings to.
+     * @return The number of bytes written.
+     * @throws NullPointerException settingsOut is null.
+     * @throws BufferOverflowException The buffer does not have enough space remaining, nothing is written.
+     */
+    @Override
+    public int writeSettingsNoSecrets(ByteBuffer settingsOut) {
+        return writeSettings(settingsOut, false);
+    }
+
+    /**
+     * Gets the header to write before cipher text as a byte array,
+     * containing the salt and initialization vector if they are being output.
+     * The key derivation parameters are included with the salt when they differ from the defaults.
+     * The header uses the same format as {@link #getSettingsNoSecrets()}.
+     * NOTE: Use {@link #getCipherWithHeader(int)} to get a header matching a cipher,
+     * the initialization vector may change after {@link #getCipher(int)} returns.
+     *
+     * @return The byte array of the header.
+     */
+    @Override
+    public byte[] getHeader() {
+        return getHeader(settings.get());
+    }
+
+    protected byte[] getHeader(Settings current) {
+        boolean hSalt = outputSalt;
+        return getSettingsBytes(current, getSettingsFlags(current, false, hSalt, outputIVector, hSalt && current.salt != null));
     }
 
     /**
      * Sets the cipher settings using a byte array.
+     * The settings are replaced atomically, invalid settings leave the settings unchanged.
      *
      * @param settingsIn The byte array to load the settings from.
      * @throws NullPointerException settingsIn is null.
@@ -228,35 +740,31 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
     public void setSettings(byte[] settingsIn) throws CipherException {
         if (settingsIn == null) throw new NullPointerException("settingsIn is null");
         if (settingsIn.length < 1) throw new CipherException("no data");
-        synchronized (slock) {
-            int index = 1;
-            if (((settingsIn[0] & 4) == 4)) {
-                int pwdLength = (settingsIn[index++] & 0xff) * 16777216;
-                pwdLength += (settingsIn[index++] & 0xff) * 65536;
-                pwdLength += (settingsIn[index++] & 0xff) * 256;
-                pwdLength += (settingsIn[index++] & 0xff);
-                if (pwdLength < 1) throw new CipherException("password length less than 1");
-
-                passwordCache = new byte[pwdLength];
-                System.arraycopy(settingsIn, index, passwordCache, 0, pwdLength); index += pwdLength;
-
-                password = new String(passwordCache, StandardCharsets.UTF_8);
-            }
-
-            if (((settingsIn[0] & 8) == 8)) {
-                int length = settingsIn[index++] & 0xff;
-                if (length < 1) throw new CipherException("salt length less than 1");
-                salt = new byte[length];
-                System.arraycopy(settingsIn, index, salt, 0, length); index += length;
-            }
+        readSettings(ByteBuffer.wrap(settingsIn));
+    }
 
-            if (((settingsIn[0] & 16) == 16)) {
-                int length = settingsIn[index++] & 0xff;
-                if (length < 1) throw new CipherException("initializationVector length less than 1");
-                iVector = new byte[length];
-                System.arraycopy(settingsIn, index, iVector, 0, length);
-            }
-        }
+    /**
+     * Reads the cipher settings from the position of the buffer, advancing the position past the settings.
+     * The settings are replaced atomically, invalid settings leave the settings and the position unchanged.
+     * The key derivation parameters are limited as described by {@link #setMaximumIterations(int)} and {@link #setMaximumKeySize(int)}.
+     *
+     * @param settingsIn The buffer to load the settings from.
+     * @throws NullPointerException settingsIn is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    @Override
+    public void readSettings(ByteBuffer settingsIn) throws CipherException {
+        if (settingsIn == null) throw new NullPointerException("settingsIn is null");
+        Settings previous;
+        Settings next;
+        ByteBuffer in;
+        do {
+            previous = settings.get();
+            in = settingsIn.duplicate();
+            next = parseSettings(in, previous, maxIterations, maxKeySize);
+        } while (!settings.compareAndSet(previous, next));
+        settingsIn.position(in.position());
+        if (!previous.hasSameKey(next)) invalidateCachedKey(previous);
     }
 
     /**
@@ -265,7 +773,7 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      * @return The password.
      */
     public String getPassword() {
-        return password;
+        return settings.get().password;
     }
 
     /**
@@ -276,11 +784,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     public void setPassword(String password) {
         if (password == null) throw new NullPointerException("password is null");
-        synchronized (slock) {
-            haveAttributesChanged = true;
-            this.password = password;
-            passwordCache = null;
-        }
+        updateSettings(s -> s.withPassword(password));
+        haveAttributesChanged.set(true);
     }
 
     /**
@@ -289,7 +794,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      * @return The salt.
      */
     public byte[] getSalt() {
-        return salt;
+        byte[] toret = settings.get().salt;
+        return (toret == null) ? null : toret.clone();
     }
 
     /**
@@ -300,10 +806,9 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     public void setSalt(byte[] salt) {
         if (salt != null && salt.length > 255) throw new IllegalArgumentException("salt is larger than 255");
-        synchronized (slock) {
-            haveAttributesChanged = true;
-            this.salt = salt;
-        }
+        byte[] nSalt = (salt == null) ? null : salt.clone();
+        updateSettings(s -> s.withSalt(nSalt));
+        haveAttributesChanged.set(true);
     }
 
     /**
@@ -312,7 +817,8 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      * @return The initialization vector.
      */
     public byte[] getInitializationVector() {
-        return iVector;
+        byte[] toret = settings.get().iVector;
+        return (toret == null) ? null : toret.clone();
     }
 
     /**
@@ -323,17 +829,249 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      */
     public void setInitializationVector(byte[] initializationVector) {
         if (initializationVector != null && initializationVector.length > 255) throw new IllegalArgumentException("initializationVector is larger than 255");
-        synchronized (slock) {
-            haveAttributesChanged = true;
-            iVector = initializationVector;
+        byte[] nIVector = (initializationVector == null) ? null : initializationVector.clone();
+        updateSettings(s -> s.withInitializationVector(nIVector));
+        haveAttributesChanged.set(true);
+    }
+
+    /**
+     * Gets the key derivation algorithm.
+     *
+     * @return The key derivation algorithm.
+     */
+    public String getKeyDerivationAlgorithm() {
+        return settings.get().keyDerivationAlgorithm;
+    }
+
+    /**
+     * Sets the key derivation algorithm,
+     * one of PBKDF2WithHmacSHA1 (The default), PBKDF2WithHmacSHA256 or PBKDF2WithHmacSHA512.
+     *
+     * @param keyDerivationAlgorithm The new key derivation algorithm.
+     * @throws NullPointerException keyDerivationAlgorithm is null.
+     * @throws IllegalArgumentException keyDerivationAlgorithm is not supported.
+     */
+    public void setKeyDerivationAlgorithm(String keyDerivationAlgorithm) {
+        if (keyDerivationAlgorithm == null) throw new NullPointerException("keyDerivationAlgorithm is null");
+        if (getKeyDerivationAlgorithmID(keyDerivationAlgorithm) == 0) throw new IllegalArgumentException("keyDerivationAlgorithm is not supported");
+        updateSettings(s -> s.withKeyDerivation(keyDerivationAlgorithm, s.iterations, s.keySize));
+        haveAttributesChanged.set(true);
+    }
+
+    /**
+     * Gets the number of key derivation iterations.
+     *
+     * @return The number of iterations.
+     */
+    public int getIterations() {
+        return settings.get().iterations;
+    }
+
+    /**
+     * Sets the number of key derivation iterations, the default being 2000.
+     *
+     * @param iterations The new number of iterations.
+     * @throws IllegalArgumentException iterations is less than 1.
+     */
+    public void setIterations(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations is less than 1");
+        updateSettings(s -> s.withKeyDerivation(s.keyDerivationAlgorithm, iterations, s.keySize));
+        haveAttributesChanged.set(true);
+    }
+
+    /**
+     * Gets the size of the derived key in bits.
+     *
+     * @return The key size in bits.
+     */
+    public int getKeySize() {
+        return settings.get().keySize;
+    }
+
+    /**
+     * Sets the size of the derived key in bits, the default being 256.
+     * The size must be supported by the cipher (128, 192 or 256 for AES).
+     *
+     * @param keySize The new key size in bits.
+     * @throws IllegalArgumentException keySize is not a multiple of 8 between 8 and 65528.
+     */
+    public void setKeySize(int keySize) {
+        if (keySize < 8 || keySize > 65528 || keySize % 8 != 0) throw new IllegalArgumentException("keySize is not a multiple of 8 between 8 and 65528");
+        updateSettings(s -> s.withKeyDerivation(s.keyDerivationAlgorithm, s.iterations, keySize));
+        haveAttributesChanged.set(true);
+    }
+
+    /**
+     * Gets the maximum number of key derivation iterations accepted from headers and settings.
+     *
+     * @return The maximum number of iterations.
+     */
+    public int getMaximumIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the maximum number of key derivation iterations accepted from headers and settings,
+     * the default being {@link SettingsParser#defaultMaximumIterations}.
+     * Iterations equal to those of the current settings are always accepted.
+     *
+     * @param maximumIterations The new maximum number of iterations.
+     * @throws IllegalArgumentException maximumIterations is less than 1.
+     */
+    public void setMaximumIterations(int maximumIterations) {
+        if (maximumIterations < 1) throw new IllegalArgumentException("maximumIterations is less than 1");
+        maxIterations = maximumIterations;
+    }
+
+    /**
+     * Gets the maximum size of the derived key in bits accepted from headers and settings.
+     *
+     * @return The maximum key size in bits.
+     */
+    public int getMaximumKeySize() {
+        return maxKeySize;
+    }
+
+    /**
+     * Sets the maximum size of the derived key in bits accepted from headers and settings,
+     * the default being {@link SettingsParser#defaultMaximumKeySize}.
+     * A key size equal to that of the current settings is always accepted.
+     *
+     * @param maximumKeySize The new maximum key size in bits.
+     * @throws IllegalArgumentException maximumKeySize is less than 8.
+     */
+    public void setMaximumKeySize(int maximumKeySize) {
+        if (maximumKeySize < 8) throw new IllegalArgumentException("maximumKeySize is less than 8");
+        maxKeySize = maximumKeySize;
+    }
+
+    /**
+     * Gets whether headers must use the key derivation parameters of the current settings.
+     *
+     * @return If the local key derivation parameters are required.
+     */
+    public boolean isRequiringLocalKeyDerivation() {
+        return requireLocalKeyDerivation;
+    }
+
+    /**
+     * Sets whether headers must use the key derivation parameters of the current settings,
+     * headers with other key derivation parameters being rejected before any key is derived.
+     *
+     * @param requireLocalKeyDerivation Should the local key derivation parameters be required.
+     */
+    public void setRequireLocalKeyDerivation(boolean requireLocalKeyDerivation) {
+        this.requireLocalKeyDerivation = requireLocalKeyDerivation;
+    }
+
+    /**
+     * Calibrates and sets the number of key derivation iterations
+     * so that a key derivation with the current algorithm and key size takes the target time on this host.
+     * NOTE: Receivers reject headers with more iterations than their maximum, see {@link #setMaximumIterations(int)}.
+     *
+     * @param targetMillis The target derivation time in milliseconds.
+     * @return The new number of iterations.
+     * @throws IllegalArgumentException targetMillis is less than 1.
+     * @throws CipherException The key derivation algorithm is not available.
+     */
+    public int calibrateIterations(long targetMillis) throws CipherException {
+        Settings current = settings.get();
+        int nIterations = calibrateIterations(current.keyDerivationAlgorithm, current.keySize, targetMillis);
+        setIterations(nIterations);
+        return nIterations;
+    }
+
+    /**
+     * Gets the number of key derivation iterations
+     * so that a key derivation with the specified algorithm and key size takes the target time on this host.
+     * After a warmup, the derivation time is measured with an increasing number of iterations until it is long enough to be timed reliably,
+     * the iterations then being scaled to the target.
+     *
+     * @param keyDerivationAlgorithm The key derivation algorithm.
+     * @param keySize The size of the derived key in bits.
+     * @param targetMillis The target derivation time in milliseconds.
+     * @return The number of iterations, at least 1.
+     * @throws NullPointerException keyDerivationAlgorithm is null.
+     * @throws IllegalArgumentException targetMillis or keySize is less than 1.
+     * @throws CipherException The key derivation algorithm is not available.
+     */
+    public static int calibrateIterations(String keyDerivationAlgorithm, int keySize, long targetMillis) throws CipherException {
+        if (keyDerivationAlgorithm == null) throw new NullPointerException("keyDerivationAlgorithm is null");
+        if (keySize < 1) throw new IllegalArgumentException("keySize is less than 1");
+        if (targetMillis < 1) throw new IllegalArgumentException("targetMillis is less than 1");
+        long minimumNanos = Math.min(targetMillis * 1000000L, 20000000L);
+        char[] cPassword = "calibration".toCharArray();
+        byte[] cSalt = new byte[saltDefaultSize];
+        try {
+            SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(keyDerivationAlgorithm);
+            long warmupEnd = System.nanoTime() + 100000000L;
+            do {
+                keyFactory.generateSecret(new PBEKeySpec(cPassword, cSalt, 1000, keySize));
+            } while (System.nanoTime() - warmupEnd < 0);
+            int probe = 256;
+            long best;
+            while (true) {
+                best = Long.MAX_VALUE;
+                for (int i = 0; i < 3; i++) {
+                    long start = System.nanoTime();
+                    keyFactory.generateSecret(new PBEKeySpec(cPassword, cSalt, probe, keySize));
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                if (best >= minimumNanos || probe >= Integer.MAX_VALUE / 2) break;
+                probe *= 2;
+            }
+            double toret = (double) probe * targetMillis * 1000000.0 / Math.max(best, 1);
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, toret));
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new CipherException(e);
         }
     }
 
+    /**
+     * Gets the derived key cache in use.
+     *
+     * @return The derived key cache or null if caching is disabled.
+     */
+    public DerivedKeyCache getKeyCache() {
+        return keyCache;
+    }
+
+    /**
+     * Sets the derived key cache in use, set to null to disable caching.
+     * A cache can be shared between multiple factories.
+     *
+     * @param keyCache The new derived key cache or null.
+     */
+    public void setKeyCache(DerivedKeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Gets the source of randomness used to generate salts and initialization vectors.
+     *
+     * @return The random source.
+     */
+    public SecureRandomSource getRandomSource() {
+        return randomSource;
+    }
+
+    /**
+     * Sets the source of randomness used to generate salts and initialization vectors.
+     *
+     * @param randomSource The new random source.
+     * @throws NullPointerException randomSource is null.
+     */
+    public void setRandomSource(SecureRandomSource randomSource) {
+        if (randomSource == null) throw new NullPointerException("randomSource is null");
+        this.randomSource = randomSource;
+    }
+
     /**
      * Gets whether the salt is output.
      *
      * @return Is the salt output.
      */
+    @Override
     public boolean isOutputtingSalt() {
         return outputSalt;
     }
@@ -343,6 +1081,7 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      *
      * @param outputSalt Should the salt be output.
      */
+    @Override
     public void setOutputSalt(boolean outputSalt) {
         this.outputSalt = outputSalt;
     }
@@ -352,6 +1091,7 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      *
      * @return Is the InitializationVector output.
      */
+    @Override
     public boolean isOutputtingInitializationVector() {
         return outputIVector;
     }
@@ -361,7 +1101,87 @@ public class AESPasswordRfc2898CipherFactory implements ICipherFactory {
      *
      * @param outputInitializationVector Should the InitializationVector be output.
      */
+    @Override
     public void setOutputInitializationVector(boolean outputInitializationVector) {
         outputIVector = outputInitializationVector;
     }
+
+    /**
+     * This class provides an immutable snapshot of the settings of the factory.
+     * The arrays must not be modified.
+     */
+    protected static final class Settings {
+        public final String password; //Cannot be exported in settings
+        public final byte[] passwordCache;
+        public final byte[] salt;
+        public final byte[] iVector;
+        public final String keyDerivationAlgorithm;
+        public final int iterations;
+        public final int keySize;
+
+        /**
+         * Constructs a new settings snapshot, the arrays are not copied.
+         *
+         * @param password The password.
+         * @param salt The salt or null.
+         * @param iVector The initialization vector or null.
+         * @param keyDerivationAlgorithm The key derivation algorithm.
+         * @param iterations The number of key derivation iterations.
+         * @param keySize The size of the derived key in bits.
+         */
+        public Settings(String password, byte[] salt, byte[] iVector, String keyDerivationAlgorithm, int iterations, int keySize) {
+            this(password, password.getBytes(StandardCharsets.UTF_8), salt, iVector, keyDerivationAlgorithm, iterations, keySize);
+        }
+
+        private Settings(String password, byte[] passwordCache, byte[] salt, byte[] iVector, String keyDerivationAlgorithm, int iterations, int keySize) {
+            this.password = password;
+            this.passwordCache = passwordCache;
+            this.salt = salt;
+            this.iVector = iVector;
+            this.keyDerivationAlgorithm = keyDerivationAlgorithm;
+            this.iterations = iterations;
+            this.keySize = keySize;
+        }
+
+        public Settings withPassword(String password) {
+            return new Settings(password, salt, iVector, keyDerivationAlgorithm, iterations, keySize);
+        }
+
+        public Settings withSalt(byte[] salt) {
+            return new Settings(password, passwordCache, salt, iVector, keyDerivationAlgorithm, iterations, keySize);
+        }
+
+        public Settings withInitializationVector(byte[] iVector) {
+            return new Settings(password, passwordCache, salt, iVector, keyDerivationAlgorithm, iterations, keySize);
+        }
+
+        public Settings withKeyDerivation(String keyDerivationAlgorithm, int iterations, int keySize) {
+            return new Settings(password, passwordCache, salt, iVector, keyDerivationAlgorithm, iterations, keySize);
+        }
+
+        public boolean isKeyDerivationDefault() {
+            return iterations == iterationsDefault && keySize == keySizeDefault && keyDerivationAlgorithm.equals(keyDerivationAlgorithmDefault);
+        }
+
+        /**
+         * Gets whether the specified settings have the same key derivation parameters as these settings.
+         *
+         * @param other The other settings.
+         * @return If the key derivation algorithm, iterations and key size are equal.
+         */
+        public boolean hasSameKeyDerivation(Settings other) {
+            return iterations == other.iterations && keySize == other.keySize && keyDerivationAlgorithm.equals(other.keyDerivationAlgorithm);
+        }
+
+        /**
+         * Gets whether the specified settings derive the same key as these settings.
+         *
+         * @param other The other settings.
+         * @return If the key inputs are equal.
+         */
+        public boolean hasSameKey(Settings other) {
+            return this == other || (iterations == other.iterations && keySize == other.keySize && keyDerivationAlgorithm.equals(other.keyDerivationAlgorithm)
+                    && password.equals(other.password) && Arrays.equals(salt, other.salt));
+        }
+    }
 }
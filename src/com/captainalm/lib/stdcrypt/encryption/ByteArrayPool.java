@@ -0,0 +1,127 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides a bounded, thread-safe pool of byte arrays in power of two size classes.
+ * Arrays are zeroed when returned, so plain text or key material held in them is not handed to the next user.
+ * Both the number of arrays retained per size class and the total number of bytes retained are limited.
+ *
+ * @author Captain ALM
+ */
+public final class ByteArrayPool {
+    private static final int minimumShift = 10;
+    private static final int maximumShift = 24;
+    /**
+     * The maximum number of bytes retained by the shared pool.
+     */
+    public static final long sharedMaximumRetainedBytes = 32L * 1024 * 1024;
+    private static final ByteArrayPool sharedInstance = new ByteArrayPool(16, sharedMaximumRetainedBytes);
+
+    private final int maximumPerClass;
+    private final long maximumRetainedBytes;
+    private final ConcurrentLinkedQueue<byte[]>[] classes;
+    private final AtomicInteger[] counts;
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    /**
+     * Constructs a new byte array pool with the maximum number of retained arrays per size class
+     * and no limit on the total number of bytes retained.
+     *
+     * @param maximumPerClass The maximum number of arrays retained per size class.
+     * @throws IllegalArgumentException maximumPerClass is less than 0.
+     */
+    public ByteArrayPool(int maximumPerClass) {
+        this(maximumPerClass, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new byte array pool with the maximum number of retained arrays per size class
+     * and the maximum total number of bytes retained.
+     *
+     * @param maximumPerClass The maximum number of arrays retained per size class.
+     * @param maximumRetainedBytes The maximum total number of bytes retained.
+     * @throws IllegalArgumentException maximumPerClass or maximumRetainedBytes is less than 0.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteArrayPool(int maximumPerClass, long maximumRetainedBytes) {
+        if (maximumPerClass < 0) throw new IllegalArgumentException("maximumPerClass is less than 0");
+        if (maximumRetainedBytes < 0) throw new IllegalArgumentException("maximumRetainedBytes is less than 0");
+        this.maximumPerClass = maximumPerClass;
+        this.maximumRetainedBytes = maximumRetainedBytes;
+        classes = new ConcurrentLinkedQueue[maximumShift - minimumShift + 1];
+        counts = new AtomicInteger[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            counts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Gets an array with at least the specified size.
+     * Sizes above 16 MiB are not pooled.
+     *
+     * @param minimumSize The minimum size of the array.
+     * @return The array.
+     * @throws IllegalArgumentException minimumSize is less than 0.
+     */
+    public byte[] acquire(int minimumSize) {
+        if (minimumSize < 0) throw new IllegalArgumentException("minimumSize is less than 0");
+        int index = getClassIndex(minimumSize);
+        if (index >= classes.length) return new byte[minimumSize];
+        byte[] toret = classes[index].poll();
+        if (toret == null) return new byte[1 << (index + minimumShift)];
+        counts[index].decrementAndGet();
+        retainedBytes.addAndGet(-toret.length);
+        return toret;
+    }
+
+    /**
+     * Returns an array to the pool, zeroing it.
+     * Arrays that are not a pooled size or exceed the size class or retained bytes limit are discarded.
+     *
+     * @param array The array to return or null.
+     */
+    public void release(byte[] array) {
+        if (array == null || Integer.bitCount(array.length) != 1) return;
+        int index = getClassIndex(array.length);
+        if (index < 0 || index >= classes.length || (1 << (index + minimumShift)) != array.length) return;
+        Arrays.fill(array, (byte) 0);
+        if (retainedBytes.addAndGet(array.length) > maximumRetainedBytes) {
+            retainedBytes.addAndGet(-array.length);
+            return;
+        }
+        if (counts[index].incrementAndGet() > maximumPerClass) {
+            counts[index].decrementAndGet();
+            retainedBytes.addAndGet(-array.length);
+            return;
+        }
+        classes[index].offer(array);
+    }
+
+    /**
+     * Gets the total number of bytes retained by the pool.
+     *
+     * @return The number of bytes retained.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    private static int getClassIndex(int size) {
+        if (size <= (1 << minimumShift)) return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - minimumShift;
+    }
+
+    /**
+     * Gets the shared pool instance.
+     *
+     * @return The shared ByteArrayPool.
+     */
+    public static ByteArrayPool getSharedInstance() {
+        return sharedInstance;
+    }
+}
@@ -0,0 +1,135 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * This class provides an authenticated ChaCha20-Poly1305 cipher that uses Rfc2898 for key generation and a string password.
+ * The settings are the same as {@link AESPasswordRfc2898CipherFactory}, the initialization vector being the nonce.
+ * <p>
+ * Every cipher obtained for {@link Cipher#ENCRYPT_MODE} or {@link Cipher#WRAP_MODE} uses a new nonce from a {@link NonceGenerator},
+ * which replaces the initialization vector in the settings, so a nonce is never reused under a key by this factory.
+ * Set the initialization vector to decrypt, or output it with {@link #setOutputInitializationVector(boolean)}
+ * and get the header with {@link #getCipherWithHeader(int)}, which holds the nonce of its cipher even under concurrent use,
+ * as the nonce in the settings changes with every cipher obtained for encryption.
+ * Ciphers with a specified or received nonce are only obtained for decryption, except from {@link #getCipherSource(byte[])}
+ * whose caller is responsible for the nonces.
+ * </p>
+ * ChaCha20-Poly1305 is provided by Java 11 and later, see {@link #isSupported()}.
+ *
+ * @author Captain ALM
+ */
+public class ChaCha20Poly1305PasswordRfc2898CipherFactory extends AESPasswordRfc2898CipherFactory {
+    protected static final int nonceSize = 12;
+
+    protected final NonceGenerator nonceGenerator = new NonceGenerator(nonceSize);
+
+    /**
+     * Constructs a new instance of ChaCha20Poly1305PasswordRfc2898CipherFactory with the specified password.
+     *
+     * @param password The password to use.
+     * @throws NullPointerException password is null.
+     */
+    public ChaCha20Poly1305PasswordRfc2898CipherFactory(String password) {
+        super(password);
+    }
+
+    /**
+     * Constructs a new instance of ChaCha20Poly1305PasswordRfc2898CipherFactory with the specified password, salt and initialization vector.
+     *
+     * @param password The password to use.
+     * @param salt The salt to use or null.
+     * @param initializationVector The initialization vector used for decryption or null.
+     * @throws NullPointerException password is null.
+     * @throws IllegalArgumentException salt or initializationVector is larger than 255.
+     */
+    public ChaCha20Poly1305PasswordRfc2898CipherFactory(String password, byte[] salt, byte[] initializationVector) {
+        super(password, salt, initializationVector);
+    }
+
+    /**
+     * Gets if ChaCha20-Poly1305 is available on this runtime.
+     *
+     * @return If the cipher is supported.
+     */
+    public static boolean isSupported() {
+        try {
+            Cipher.getInstance("ChaCha20-Poly1305");
+            return true;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets a new decryption cipher instance using the specified nonce instead of the one in the settings.
+     * The settings are not modified.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#DECRYPT_MODE} or {@link Cipher#UNWRAP_MODE}).
+     * @param initializationVector The nonce to use.
+     * @return The new cipher instance.
+     * @throws NullPointerException initializationVector is null.
+     * @throws IllegalArgumentException opmode is not a decryption mode.
+     * @throws CipherException An Exception has occurred.
+     */
+    @Override
+    public Cipher getCipher(int opmode, byte[] initializationVector) throws CipherException {
+        checkDecryptionMode(opmode);
+        return super.getCipher(opmode, initializationVector);
+    }
+
+    /**
+     * Gets a new decryption cipher instance using the settings of the specified header applied over the current settings
+     * and the specified nonce, if not null, instead of the one in the header.
+     * The settings are not modified.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#DECRYPT_MODE} or {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @param initializationVector The nonce to use or null.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws IllegalArgumentException opmode is not a decryption mode.
+     * @throws CipherException The header is invalid, the salt or nonce is not set or an Exception has occurred.
+     */
+    @Override
+    public Cipher getCipherFromHeader(int opmode, byte[] header, byte[] initializationVector) throws CipherException {
+        checkDecryptionMode(opmode);
+        return super.getCipherFromHeader(opmode, header, initializationVector);
+    }
+
+    @Override
+    protected String getTransformation() {
+        return "ChaCha20-Poly1305";
+    }
+
+    @Override
+    protected String getKeyAlgorithm() {
+        return "ChaCha20";
+    }
+
+    @Override
+    protected AlgorithmParameterSpec getParameterSpec(int opmode, SecretKeySpec secretSpec, Settings current) throws CipherException {
+        if (opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.WRAP_MODE) {
+            byte[] nonce = nonceGenerator.next(secretSpec, randomSource);
+            updateSettings(s -> s.withInitializationVector(nonce));
+            haveAttributesChanged.set(true);
+            return createParameterSpec(nonce);
+        }
+        byte[] cIVector = current.iVector;
+        if (cIVector == null || cIVector.length != nonceSize) throw new CipherException("initializationVector not set");
+        return createParameterSpec(cIVector);
+    }
+
+    /**
+     * Gets the name of the cipher factory.
+     *
+     * @return The name of the cipher factory.
+     */
+    @Override
+    public String getName() {
+        return "ChaCha20 Poly1305 Password Rfc 2898";
+    }
+}
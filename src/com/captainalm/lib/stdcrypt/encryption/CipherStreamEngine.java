@@ -0,0 +1,264 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class provides streaming encryption and decryption using a {@link ICipherFactory}.
+ * When the factory outputs the salt or initialization vector, the header from {@link ICipherFactory#getCipherWithHeader(int)} is written before the cipher text
+ * and is read back when decrypting, making the output self-describing.
+ * The header read is used with {@link ICipherFactory#getCipherFromHeader(int, byte[])}, so the settings of the factory are not modified.
+ * The output uses the framed cipher text format of {@link FramedCipherOutputStream}.
+ * The buffer size is picked from the size of the input and buffers are reused from a {@link ByteArrayPool}.
+ *
+ * @author Captain ALM
+ */
+public final class CipherStreamEngine {
+    /**
+     * The minimum buffer size in bytes.
+     */
+    public static final int minimumBufferSize = 8 * 1024;
+    /**
+     * The maximum buffer size in bytes.
+     */
+    public static final int maximumBufferSize = 1024 * 1024;
+    /**
+     * The buffer size in bytes used when the size of the input is unknown.
+     */
+    public static final int defaultBufferSize = 64 * 1024;
+
+    private final ICipherFactory factory;
+    private final ByteArrayPool pool;
+
+    /**
+     * Constructs a new CipherStreamEngine with the specified factory using the shared {@link ByteArrayPool}.
+     *
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException factory is null.
+     */
+    public CipherStreamEngine(ICipherFactory factory) {
+        this(factory, ByteArrayPool.getSharedInstance());
+    }
+
+    /**
+     * Constructs a new CipherStreamEngine with the specified factory and buffer pool.
+     *
+     * @param factory The cipher factory to use.
+     * @param pool The buffer pool to use.
+     * @throws NullPointerException factory or pool is null.
+     */
+    public CipherStreamEngine(ICipherFactory factory, ByteArrayPool pool) {
+        if (factory == null) throw new NullPointerException("factory is null");
+        if (pool == null) throw new NullPointerException("pool is null");
+        this.factory = factory;
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the cipher factory in use.
+     *
+     * @return The cipher factory.
+     */
+    public ICipherFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Encrypts the input stream to the output stream, writing the header first if the factory outputs one.
+     *
+     * @param in The stream to read the plain text from.
+     * @param out The stream to write the cipher text to.
+     * @return The number of bytes written.
+     * @throws NullPointerException in or out is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public long encrypt(InputStream in, OutputStream out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        CipherWithHeader cipherWithHeader = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+        byte[] header = (hasHeader()) ? cipherWithHeader.getHeader() : null;
+        long toret = 0;
+        if (header != null) {
+            out.write(header);
+            toret += header.length;
+        }
+        return toret + process(cipherWithHeader.getCipher(), in, out);
+    }
+
+    /**
+     * Decrypts the input stream to the output stream, reading the header first if the factory outputs one.
+     *
+     * @param in The stream to read the cipher text from.
+     * @param out The stream to write the plain text to.
+     * @return The number of bytes written.
+     * @throws NullPointerException in or out is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public long decrypt(InputStream in, OutputStream out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        Cipher cipher = (hasHeader()) ? factory.getCipherFromHeader(Cipher.DECRYPT_MODE, SettingsParser.getFramingParser(false).read(in)) : factory.getUnpooledCipher(Cipher.DECRYPT_MODE);
+        return process(cipher, in, out);
+    }
+
+    /**
+     * Encrypts the input channel to the output channel, writing the header first if the factory outputs one.
+     * Both channels must be blocking.
+     *
+     * @param in The channel to read the plain text from.
+     * @param out The channel to write the cipher text to.
+     * @return The number of bytes written.
+     * @throws NullPointerException in or out is null.
+     * @throws IllegalArgumentException in or out is a non-blocking {@link SelectableChannel}.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public long encrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        checkBlocking(in, out);
+        CipherWithHeader cipherWithHeader = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+        byte[] header = (hasHeader()) ? cipherWithHeader.getHeader() : null;
+        long toret = 0;
+        if (header != null) {
+            writeFully(out, ByteBuffer.wrap(header));
+            toret += header.length;
+        }
+        return toret + process(cipherWithHeader.getCipher(), in, out);
+    }
+
+    /**
+     * Decrypts the input channel to the output channel, reading the header first if the factory outputs one.
+     * Both channels must be blocking.
+     *
+     * @param in The channel to read the cipher text from.
+     * @param out The channel to write the plain text to.
+     * @return The number of bytes written.
+     * @throws NullPointerException in or out is null.
+     * @throws IllegalArgumentException in or out is a non-blocking {@link SelectableChannel}.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public long decrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        checkBlocking(in, out);
+        Cipher cipher = (hasHeader()) ? factory.getCipherFromHeader(Cipher.DECRYPT_MODE, SettingsParser.getFramingParser(false).read(in)) : factory.getUnpooledCipher(Cipher.DECRYPT_MODE);
+        return process(cipher, in, out);
+    }
+
+    private static void checkBlocking(Channel in, Channel out) {
+        if (in instanceof SelectableChannel && !((SelectableChannel) in).isBlocking()) throw new IllegalArgumentException("in is non-blocking");
+        if (out instanceof SelectableChannel && !((SelectableChannel) out).isBlocking()) throw new IllegalArgumentException("out is non-blocking");
+    }
+
+    private boolean hasHeader() {
+        return factory.isOutputtingSalt() || factory.isOutputtingInitializationVector();
+    }
+
+    private long process(Cipher cipher, InputStream in, OutputStream out) throws IOException, CipherException {
+        int size = getBufferSize(in.available());
+        byte[] inBuffer = pool.acquire(size);
+        byte[] outBuffer = pool.acquire(getUpdateOutputSize(cipher, size));
+        try {
+            long toret = 0;
+            int read;
+            while ((read = in.read(inBuffer)) != -1) {
+                outBuffer = ensureCapacity(outBuffer, getUpdateOutputSize(cipher, read));
+                int length;
+                try {
+                    length = cipher.update(inBuffer, 0, read, outBuffer, 0);
+                } catch (ShortBufferException e) {
+                    outBuffer = ensureCapacity(outBuffer, cipher.getOutputSize(read));
+                    length = cipher.update(inBuffer, 0, read, outBuffer, 0);
+                }
+                out.write(outBuffer, 0, length);
+                toret += length;
+            }
+            outBuffer = ensureCapacity(outBuffer, cipher.getOutputSize(0));
+            int length = cipher.doFinal(outBuffer, 0);
+            out.write(outBuffer, 0, length);
+            return toret + length;
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new CipherException(e);
+        } finally {
+            pool.release(inBuffer);
+            pool.release(outBuffer);
+        }
+    }
+
+    private long process(Cipher cipher, ReadableByteChannel in, WritableByteChannel out) throws IOException, CipherException {
+        int size = (in instanceof FileChannel) ? getBufferSize(((FileChannel) in).size() - ((FileChannel) in).position()) : defaultBufferSize;
+        byte[] inArray = pool.acquire(size);
+        byte[] outArray = pool.acquire(getUpdateOutputSize(cipher, size));
+        try {
+            ByteBuffer inBuffer = ByteBuffer.wrap(inArray);
+            long toret = 0;
+            int read;
+            while ((read = in.read(inBuffer)) != -1) {
+                inBuffer.clear();
+                outArray = ensureCapacity(outArray, getUpdateOutputSize(cipher, read));
+                int length;
+                try {
+                    length = cipher.update(inArray, 0, read, outArray, 0);
+                } catch (ShortBufferException e) {
+                    outArray = ensureCapacity(outArray, cipher.getOutputSize(read));
+                    length = cipher.update(inArray, 0, read, outArray, 0);
+                }
+                toret += writeFully(out, ByteBuffer.wrap(outArray, 0, length));
+            }
+            outArray = ensureCapacity(outArray, cipher.getOutputSize(0));
+            return toret + writeFully(out, ByteBuffer.wrap(outArray, 0, cipher.doFinal(outArray, 0)));
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new CipherException(e);
+        } finally {
+            pool.release(inArray);
+            pool.release(outArray);
+        }
+    }
+
+    private byte[] ensureCapacity(byte[] array, int size) {
+        if (array.length >= size) return array;
+        pool.release(array);
+        return pool.acquire(size);
+    }
+
+    /**
+     * Gets the output size to allow for {@link Cipher#update(byte[], int, int, byte[], int)} with the specified input length.
+     * Unlike {@link Cipher#getOutputSize(int)} this excludes the cipher text an authenticated cipher buffers until
+     * {@link Cipher#doFinal()} when decrypting, so it does not grow with the length of the stream;
+     * callers should retry with {@link Cipher#getOutputSize(int)} if a provider still throws a {@link ShortBufferException}.
+     *
+     * @param cipher The cipher.
+     * @param length The input length.
+     * @return The output size to allow.
+     */
+    static int getUpdateOutputSize(Cipher cipher, int length) {
+        return length + Math.max(cipher.getBlockSize(), 16);
+    }
+
+    private static int writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        int toret = buffer.remaining();
+        while (buffer.hasRemaining()) out.write(buffer);
+        return toret;
+    }
+
+    private static int getBufferSize(long expected) {
+        if (expected <= 0) return defaultBufferSize;
+        if (expected >= maximumBufferSize) return maximumBufferSize;
+        return Math.max(minimumBufferSize, Integer.highestOneBit((int) expected - 1) << 1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class holds a {@link Cipher} and the header describing its settings,
+ * both obtained from the same settings by {@link ICipherFactory#getCipherWithHeader(int)}.
+ *
+ * @author Captain ALM
+ */
+public final class CipherWithHeader {
+    private final Cipher cipher;
+    private final byte[] header;
+
+    /**
+     * Constructs a new CipherWithHeader with the specified cipher and header.
+     *
+     * @param cipher The cipher.
+     * @param header The header of the cipher.
+     * @throws NullPointerException cipher or header is null.
+     */
+    public CipherWithHeader(Cipher cipher, byte[] header) {
+        if (cipher == null) throw new NullPointerException("cipher is null");
+        if (header == null) throw new NullPointerException("header is null");
+        this.cipher = cipher;
+        this.header = header;
+    }
+
+    /**
+     * Gets the cipher.
+     *
+     * @return The cipher.
+     */
+    public Cipher getCipher() {
+        return cipher;
+    }
+
+    /**
+     * Gets the header of the cipher, in the same format as {@link ICipherFactory#getHeader()}.
+     *
+     * @return The byte array of the header.
+     */
+    public byte[] getHeader() {
+        return header.clone();
+    }
+}
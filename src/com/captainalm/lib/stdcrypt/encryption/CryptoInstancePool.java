@@ -0,0 +1,73 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * This class provides per-thread pooling of {@link Cipher} and {@link SecretKeyFactory} instances
+ * so that provider lookup only occurs once per thread for each algorithm.
+ *
+ * @author Captain ALM
+ */
+public final class CryptoInstancePool {
+    private static final ThreadLocal<HashMap<String, Cipher[]>> ciphers = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<HashMap<String, SecretKeyFactory>> keyFactories = ThreadLocal.withInitial(HashMap::new);
+
+    private CryptoInstancePool() {
+    }
+
+    /**
+     * Gets the pooled cipher for the current thread with the specified transformation and operation mode.
+     * NOTE: The same instance is returned for subsequent calls on the same thread with the same transformation and operation mode,
+     * the cipher must be initialized before use.
+     *
+     * @param transformation The transformation of the cipher.
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The pooled cipher.
+     * @throws NullPointerException transformation is null.
+     * @throws NoSuchAlgorithmException The transformation does not exist.
+     * @throws NoSuchPaddingException The padding does not exist.
+     */
+    public static Cipher getCipher(String transformation, int opmode) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        if (transformation == null) throw new NullPointerException("transformation is null");
+        HashMap<String, Cipher[]> pool = ciphers.get();
+        Cipher[] modes = pool.get(transformation);
+        if (modes == null) {
+            modes = new Cipher[5];
+            pool.put(transformation, modes);
+        }
+        int slot = (opmode < 0 || opmode >= modes.length) ? 0 : opmode;
+        if (modes[slot] == null) modes[slot] = Cipher.getInstance(transformation);
+        return modes[slot];
+    }
+
+    /**
+     * Gets the pooled secret key factory for the current thread with the specified algorithm.
+     *
+     * @param algorithm The algorithm of the secret key factory.
+     * @return The pooled secret key factory.
+     * @throws NullPointerException algorithm is null.
+     * @throws NoSuchAlgorithmException The algorithm does not exist.
+     */
+    public static SecretKeyFactory getSecretKeyFactory(String algorithm) throws NoSuchAlgorithmException {
+        if (algorithm == null) throw new NullPointerException("algorithm is null");
+        HashMap<String, SecretKeyFactory> pool = keyFactories.get();
+        SecretKeyFactory toret = pool.get(algorithm);
+        if (toret == null) {
+            toret = SecretKeyFactory.getInstance(algorithm);
+            pool.put(algorithm, toret);
+        }
+        return toret;
+    }
+
+    /**
+     * Removes all the pooled instances for the current thread.
+     */
+    public static void clear() {
+        ciphers.remove();
+        keyFactories.remove();
+    }
+}
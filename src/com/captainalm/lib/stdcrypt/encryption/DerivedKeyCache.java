@@ -0,0 +1,407 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class provides a bounded, thread-safe cache of derived keys.
+ * Entries are keyed by the derivation algorithm, iteration count, key size, password and salt.
+ * Entries are evicted once the maximum size is exceeded (least recently used first) or once they are older than the maximum age.
+ * Lookups of cached keys are lock free and concurrent derivations of the same key are coalesced into one derivation.
+ *
+ * @author Captain ALM
+ */
+public final class DerivedKeyCache {
+    /**
+     * The default maximum number of entries.
+     */
+    public static final int defaultMaximumSize = 16;
+    /**
+     * The default maximum age of entries in milliseconds.
+     */
+    public static final long defaultMaximumAge = 600000;
+
+    private final Object slock = new Object();
+    private final int maximumSize;
+    private final long maximumAge;
+    private final ConcurrentHashMap<Key, CachedKey> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<SecretKeySpec>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new instance of DerivedKeyCache with the default maximum size and age.
+     */
+    public DerivedKeyCache() {
+        this(defaultMaximumSize, defaultMaximumAge);
+    }
+
+    /**
+     * Constructs a new instance of DerivedKeyCache with the specified maximum size and age.
+     *
+     * @param maximumSize The maximum number of entries.
+     * @param maximumAge The maximum age of entries in milliseconds or less than 1 for no age limit.
+     * @throws IllegalArgumentException maximumSize is less than 1.
+     */
+    public DerivedKeyCache(int maximumSize, long maximumAge) {
+        if (maximumSize < 1) throw new IllegalArgumentException("maximumSize is less than 1");
+        this.maximumSize = maximumSize;
+        this.maximumAge = maximumAge;
+    }
+
+    /**
+     * Gets a cached key.
+     *
+     * @param algorithm The key derivation algorithm.
+     * @param iterations The number of iterations.
+     * @param keySize The size of the key in bits.
+     * @param password The password.
+     * @param salt The salt.
+     * @return The cached key or null.
+     * @throws NullPointerException algorithm, password or salt is null.
+     */
+    public SecretKeySpec get(String algorithm, int iterations, int keySize, String password, byte[] salt) {
+        return get(new Key(algorithm, iterations, keySize, password, salt));
+    }
+
+    private SecretKeySpec get(Key key) {
+        CachedKey cached = entries.get(key);
+        if (cached != null && isExpired(cached, System.currentTimeMillis())) {
+            if (entries.remove(key, cached)) evictions.increment();
+            cached = null;
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        cached.lastAccess = System.nanoTime();
+        hits.increment();
+        return cached.key;
+    }
+
+    /**
+     * Gets a cached key without counting a hit or miss, used to check the cache again
+     * once a derivation has been registered as pending, as another derivation may have completed in between.
+     */
+    private SecretKeySpec peek(Key key) {
+        CachedKey cached = entries.get(key);
+        if (cached == null || isExpired(cached, System.currentTimeMillis())) return null;
+        cached.lastAccess = System.nanoTime();
+        return cached.key;
+    }
+
+    /**
+     * Caches a key.
+     *
+     * @param algorithm The key derivation algorithm.
+     * @param iterations The number of iterations.
+     * @param keySize The size of the key in bits.
+     * @param password The password.
+     * @param salt The salt.
+     * @param secretKey The derived key.
+     * @throws NullPointerException algorithm, password, salt or secretKey is null.
+     */
+    public void put(String algorithm, int iterations, int keySize, String password, byte[] salt, SecretKeySpec secretKey) {
+        if (secretKey == null) throw new NullPointerException("secretKey is null");
+        put(new Key(algorithm, iterations, keySize, password, salt), secretKey);
+    }
+
+    private void put(Key key, SecretKeySpec secretKey) {
+        entries.put(key, new CachedKey(secretKey, System.currentTimeMillis()));
+        if (entries.size() > maximumSize) {
+            synchronized (slock) {
+                while (entries.size() > maximumSize) {
+                    Map.Entry<Key, CachedKey> eldest = null;
+                    for (Map.Entry<Key, CachedKey> entry : entries.entrySet())
+                        if (eldest == null || entry.getValue().lastAccess - eldest.getValue().lastAccess < 0) eldest = entry;
+                    if (eldest == null) break;
+                    if (entries.remove(eldest.getKey(), eldest.getValue())) evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a cached key or derives it on the calling thread, caching the result.
+     * Calls for the same key while a derivation is in progress wait for that derivation instead of deriving the key again.
+     *
+     * @param algorithm The key derivation algorithm.
+     * @param iterations The number of iterations.
+     * @param keySize The size of the key in bits.
+     * @param password The password.
+     * @param salt The salt.
+     * @param deriver The derivation of the key.
+     * @return The key.
+     * @throws NullPointerException algorithm, password, salt or deriver is null.
+     * @throws NoSuchAlgorithmException The key derivation algorithm is not available.
+     * @throws InvalidKeySpecException The key derivation parameters are invalid.
+     */
+    public SecretKeySpec get(String algorithm, int iterations, int keySize, String password, byte[] salt, Deriver deriver) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        if (deriver == null) throw new NullPointerException("deriver is null");
+        Key key = new Key(algorithm, iterations, keySize, password, salt);
+        SecretKeySpec toret = get(key);
+        if (toret != null) return toret;
+        CompletableFuture<SecretKeySpec> derivation = new CompletableFuture<>();
+        CompletableFuture<SecretKeySpec> existing = pending.putIfAbsent(key, derivation);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return deriver.derive();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) e.getCause();
+                if (e.getCause() instanceof InvalidKeySpecException) throw (InvalidKeySpecException) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                return deriver.derive();
+            }
+        }
+        toret = peek(key);
+        if (toret != null) {
+            pending.remove(key, derivation);
+            derivation.complete(toret);
+            return toret;
+        }
+        try {
+            toret = derive(deriver);
+            put(key, toret);
+            derivation.complete(toret);
+            return toret;
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | RuntimeException e) {
+            derivation.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(key, derivation);
+        }
+    }
+
+    /**
+     * Gets a cached key or derives it asynchronously on the specified executor, caching the result.
+     * Calls for the same key while a derivation is in progress share that derivation.
+     * A failed derivation completes the future exceptionally with the thrown exception
+     * and a rejected derivation with the {@link RejectedExecutionException}.
+     *
+     * @param algorithm The key derivation algorithm.
+     * @param iterations The number of iterations.
+     * @param keySize The size of the key in bits.
+     * @param password The password.
+     * @param salt The salt.
+     * @param deriver The derivation of the key.
+     * @param executor The executor to derive the key on.
+     * @return The future of the key.
+     * @throws NullPointerException algorithm, password, salt, deriver or executor is null.
+     */
+    public CompletableFuture<SecretKeySpec> getAsync(String algorithm, int iterations, int keySize, String password, byte[] salt, Deriver deriver, Executor executor) {
+        if (deriver == null) throw new NullPointerException("deriver is null");
+        if (executor == null) throw new NullPointerException("executor is null");
+        Key key = new Key(algorithm, iterations, keySize, password, salt);
+        SecretKeySpec cached = get(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        CompletableFuture<SecretKeySpec> toret = new CompletableFuture<>();
+        CompletableFuture<SecretKeySpec> existing = pending.putIfAbsent(key, toret);
+        if (existing != null) return existing;
+        cached = peek(key);
+        if (cached != null) {
+            pending.remove(key, toret);
+            toret.complete(cached);
+            return toret;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    SecretKeySpec derived = derive(deriver);
+                    put(key, derived);
+                    toret.complete(derived);
+                } catch (NoSuchAlgorithmException | InvalidKeySpecException | RuntimeException e) {
+                    toret.completeExceptionally(e);
+                } finally {
+                    pending.remove(key, toret);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, toret);
+            toret.completeExceptionally(e);
+        }
+        return toret;
+    }
+
+    /**
+     * Removes a cached key.
+     *
+     * @param algorithm The key derivation algorithm.
+     * @param iterations The number of iterations.
+     * @param keySize The size of the key in bits.
+     * @param password The password.
+     * @param salt The salt.
+     * @throws NullPointerException algorithm, password or salt is null.
+     */
+    public void invalidate(String algorithm, int iterations, int keySize, String password, byte[] salt) {
+        entries.remove(new Key(algorithm, iterations, keySize, password, salt));
+    }
+
+    /**
+     * Removes all the cached keys.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes all the cached keys that are older than the maximum age.
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<CachedKey> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private boolean isExpired(CachedKey cached, long now) {
+        return maximumAge > 0 && now - cached.created > maximumAge;
+    }
+
+    /**
+     * Gets the number of cached keys.
+     *
+     * @return The number of cached keys.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the maximum number of cached keys.
+     *
+     * @return The maximum number of cached keys.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the maximum age of cached keys in milliseconds.
+     *
+     * @return The maximum age in milliseconds or less than 1 for no age limit.
+     */
+    public long getMaximumAge() {
+        return maximumAge;
+    }
+
+    /**
+     * Gets the number of cache hits.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of cache misses.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of cache evictions due to size or age.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private static SecretKeySpec derive(Deriver deriver) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        SecretKeySpec toret = deriver.derive();
+        if (toret == null) throw new NullPointerException("derived key is null");
+        return toret;
+    }
+
+    /**
+     * This interface provides the derivation of a key for the cache.
+     */
+    @FunctionalInterface
+    public interface Deriver {
+        /**
+         * Derives the key.
+         *
+         * @return The derived key.
+         * @throws NoSuchAlgorithmException The key derivation algorithm is not available.
+         * @throws InvalidKeySpecException The key derivation parameters are invalid.
+         */
+        SecretKeySpec derive() throws NoSuchAlgorithmException, InvalidKeySpecException;
+    }
+
+    private static final class Key {
+        private final String algorithm;
+        private final int iterations;
+        private final int keySize;
+        private final String password;
+        private final byte[] salt;
+        private final int hash;
+
+        private Key(String algorithm, int iterations, int keySize, String password, byte[] salt) {
+            if (algorithm == null) throw new NullPointerException("algorithm is null");
+            if (password == null) throw new NullPointerException("password is null");
+            if (salt == null) throw new NullPointerException("salt is null");
+            this.algorithm = algorithm;
+            this.iterations = iterations;
+            this.keySize = keySize;
+            this.password = password;
+            this.salt = salt.clone();
+            hash = ((algorithm.hashCode() * 31 + iterations) * 31 + keySize) * 31 + password.hashCode() * 31 + Arrays.hashCode(this.salt);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return iterations == key.iterations && keySize == key.keySize && algorithm.equals(key.algorithm) && password.equals(key.password) && Arrays.equals(salt, key.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedKey {
+        private final SecretKeySpec key;
+        private final long created;
+        private volatile long lastAccess = System.nanoTime();
+
+        private CachedKey(SecretKeySpec key, long created) {
+            this.key = key;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class provides a decrypting input stream for the framed cipher text format written by {@link FramedCipherOutputStream}.
+ * If the factory outputs the salt or initialization vector, the header is parsed from the stream on the first read
+ * and used with {@link ICipherFactory#getCipherFromHeader(int, byte[])}, so the settings of the factory are not modified.
+ * Plain text is decrypted straight into the caller's array where it fits.
+ *
+ * @author Captain ALM
+ */
+public class FramedCipherInputStream extends FilterInputStream {
+    private static final int chunkSize = 64 * 1024;
+
+    private final ICipherFactory factory;
+    private Cipher cipher;
+    private byte[] inBuffer;
+    private byte[] outBuffer;
+    private int outIndex;
+    private int outLength;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Constructs a new FramedCipherInputStream with the specified stream and factory.
+     *
+     * @param in The stream to read the framed cipher text from.
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException in or factory is null.
+     */
+    public FramedCipherInputStream(InputStream in, ICipherFactory factory) {
+        super(in);
+        if (in == null) throw new NullPointerException("in is null");
+        if (factory == null) throw new NullPointerException("factory is null");
+        this.factory = factory;
+    }
+
+    private void ensureCipher() throws IOException {
+        if (closed) throw new IOException("stream closed");
+        if (cipher != null) return;
+        try {
+            cipher = (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector())
+                    ? factory.getCipherFromHeader(Cipher.DECRYPT_MODE, SettingsParser.getFramingParser(false).read(in)) : factory.getUnpooledCipher(Cipher.DECRYPT_MODE);
+        } catch (CipherException e) {
+            throw new IOException(e);
+        }
+        inBuffer = ByteArrayPool.getSharedInstance().acquire(chunkSize);
+    }
+
+    private byte[] getOutBuffer(int size) {
+        if (outBuffer == null || outBuffer.length < size) {
+            ByteArrayPool.getSharedInstance().release(outBuffer);
+            outBuffer = ByteArrayPool.getSharedInstance().acquire(size);
+        }
+        return outBuffer;
+    }
+
+    private int update(int read, byte[] b, int off, int len) throws ShortBufferException {
+        int size = CipherStreamEngine.getUpdateOutputSize(cipher, read);
+        if (size <= len) {
+            try {
+                return cipher.update(inBuffer, 0, read, b, off);
+            } catch (ShortBufferException e) {
+                size = cipher.getOutputSize(read);
+            }
+        }
+        try {
+            outLength = cipher.update(inBuffer, 0, read, getOutBuffer(size), 0);
+        } catch (ShortBufferException e) {
+            outLength = cipher.update(inBuffer, 0, read, getOutBuffer(cipher.getOutputSize(read)), 0);
+        }
+        return 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read;
+        while ((read = read(b, 0, 1)) == 0) ;
+        return (read == -1) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) throw new NullPointerException("b is null");
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        ensureCipher();
+        try {
+            while (true) {
+                if (outIndex < outLength) {
+                    int length = Math.min(len, outLength - outIndex);
+                    System.arraycopy(outBuffer, outIndex, b, off, length);
+                    outIndex += length;
+                    return length;
+                }
+                if (finished) return -1;
+                int read = in.read(inBuffer, 0, Math.min(inBuffer.length, Math.max(len - CipherStreamEngine.getUpdateOutputSize(cipher, 0), 16)));
+                outIndex = 0;
+                outLength = 0;
+                if (read == -1) {
+                    outLength = cipher.doFinal(getOutBuffer(cipher.getOutputSize(0)), 0);
+                    finished = true;
+                } else {
+                    int length = update(read, b, off, len);
+                    if (length > 0) return length;
+                }
+            }
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(new CipherException(e));
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long toret = 0;
+        int read;
+        while (toret < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - toret))) != -1) toret += read;
+        return toret;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) throw new IOException("stream closed");
+        return outLength - outIndex;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        ByteArrayPool.getSharedInstance().release(inBuffer);
+        ByteArrayPool.getSharedInstance().release(outBuffer);
+        inBuffer = null;
+        outBuffer = null;
+        in.close();
+    }
+}
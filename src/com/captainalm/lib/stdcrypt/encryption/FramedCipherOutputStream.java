@@ -0,0 +1,111 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class provides an encrypting output stream that writes the framed cipher text format:
+ * the header from {@link ICipherFactory#getCipherWithHeader(int)}, if the factory outputs the salt or initialization vector, followed by the cipher text.
+ * The framed cipher text can be read back in a single pass using {@link FramedCipherInputStream} or {@link FramedCipherReadableByteChannel}.
+ * The cipher is finished when the stream is closed.
+ *
+ * @author Captain ALM
+ */
+public class FramedCipherOutputStream extends FilterOutputStream {
+    private static final int chunkSize = 64 * 1024;
+
+    private final Cipher cipher;
+    private byte[] header;
+    private byte[] outBuffer;
+    private boolean closed;
+
+    /**
+     * Constructs a new FramedCipherOutputStream with the specified stream and factory.
+     *
+     * @param out The stream to write the framed cipher text to.
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException out or factory is null.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public FramedCipherOutputStream(OutputStream out, ICipherFactory factory) throws CipherException {
+        super(out);
+        if (out == null) throw new NullPointerException("out is null");
+        if (factory == null) throw new NullPointerException("factory is null");
+        CipherWithHeader cipherWithHeader = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+        cipher = cipherWithHeader.getCipher();
+        if (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector()) header = cipherWithHeader.getHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        if (closed) throw new IOException("stream closed");
+        if (header != null) {
+            out.write(header);
+            header = null;
+        }
+    }
+
+    private byte[] getOutBuffer(int size) {
+        if (outBuffer == null || outBuffer.length < size) {
+            ByteArrayPool.getSharedInstance().release(outBuffer);
+            outBuffer = ByteArrayPool.getSharedInstance().acquire(size);
+        }
+        return outBuffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (b == null) throw new NullPointerException("b is null");
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        writeHeader();
+        try {
+            while (len > 0) {
+                int length = Math.min(len, chunkSize);
+                byte[] buffer = getOutBuffer(cipher.getOutputSize(length));
+                out.write(buffer, 0, cipher.update(b, off, length, buffer, 0));
+                off += length;
+                len -= length;
+            }
+        } catch (ShortBufferException e) {
+            throw new IOException(new CipherException(e));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeHeader();
+        out.flush();
+    }
+
+    /**
+     * Finishes the cipher, writing the remaining cipher text, and closes the stream.
+     *
+     * @throws IOException An I/O Exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            writeHeader();
+            byte[] buffer = getOutBuffer(cipher.getOutputSize(0));
+            out.write(buffer, 0, cipher.doFinal(buffer, 0));
+            out.flush();
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(new CipherException(e));
+        } finally {
+            closed = true;
+            ByteArrayPool.getSharedInstance().release(outBuffer);
+            outBuffer = null;
+            out.close();
+        }
+    }
+}
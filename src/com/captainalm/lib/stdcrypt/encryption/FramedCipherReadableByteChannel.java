@@ -0,0 +1,150 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class provides a decrypting channel for the framed cipher text format written by {@link FramedCipherOutputStream}.
+ * If the factory outputs the salt or initialization vector, the header is parsed incrementally as it arrives,
+ * so the underlying channel may be non-blocking; {@link #read(ByteBuffer)} returns 0 until the header is complete.
+ * The header is then used with {@link ICipherFactory#getCipherFromHeader(int, byte[])}, so the settings of the factory are not modified.
+ * Plain text is decrypted straight into the caller's buffer where it fits.
+ *
+ * @author Captain ALM
+ */
+public class FramedCipherReadableByteChannel implements ReadableByteChannel {
+    private static final int chunkSize = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ICipherFactory factory;
+    private final SettingsParser parser;
+    private final ByteBuffer headerBuffer;
+    private Cipher cipher;
+    private ByteBuffer inBuffer;
+    private ByteBuffer outBuffer;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Constructs a new FramedCipherReadableByteChannel with the specified channel and factory.
+     *
+     * @param channel The channel to read the framed cipher text from.
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException channel or factory is null.
+     */
+    public FramedCipherReadableByteChannel(ReadableByteChannel channel, ICipherFactory factory) {
+        if (channel == null) throw new NullPointerException("channel is null");
+        if (factory == null) throw new NullPointerException("factory is null");
+        this.channel = channel;
+        this.factory = factory;
+        parser = (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector()) ? SettingsParser.getFramingParser(false) : null;
+        headerBuffer = (parser == null) ? null : ByteBuffer.allocate(256);
+    }
+
+    private boolean ensureCipher() throws IOException {
+        if (cipher != null) return true;
+        try {
+            if (parser != null) {
+                while (!parser.isComplete()) {
+                    headerBuffer.clear().limit(parser.getBytesNeeded());
+                    int read = channel.read(headerBuffer);
+                    if (read == -1) throw new EOFException("end of stream in header");
+                    if (read == 0) return false;
+                    headerBuffer.flip();
+                    parser.offer(headerBuffer);
+                }
+            }
+            cipher = (parser == null) ? factory.getUnpooledCipher(Cipher.DECRYPT_MODE) : factory.getCipherFromHeader(Cipher.DECRYPT_MODE, parser.getSettings());
+        } catch (CipherException e) {
+            throw new IOException(e);
+        }
+        inBuffer = ByteBuffer.wrap(ByteArrayPool.getSharedInstance().acquire(chunkSize));
+        outBuffer = ByteBuffer.allocate(0);
+        return true;
+    }
+
+    private ByteBuffer getOutBuffer(int size) {
+        if (outBuffer.capacity() < size) {
+            ByteArrayPool.getSharedInstance().release(outBuffer.array());
+            outBuffer = ByteBuffer.wrap(ByteArrayPool.getSharedInstance().acquire(size));
+        }
+        outBuffer.clear();
+        return outBuffer;
+    }
+
+    private int update(ByteBuffer dst) throws ShortBufferException {
+        int size = CipherStreamEngine.getUpdateOutputSize(cipher, inBuffer.remaining());
+        if (size <= dst.remaining()) {
+            try {
+                return cipher.update(inBuffer, dst);
+            } catch (ShortBufferException e) {
+                size = cipher.getOutputSize(inBuffer.remaining());
+            }
+        }
+        try {
+            cipher.update(inBuffer, getOutBuffer(size));
+        } catch (ShortBufferException e) {
+            cipher.update(inBuffer, getOutBuffer(cipher.getOutputSize(inBuffer.remaining())));
+        }
+        outBuffer.flip();
+        return 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) throw new ClosedChannelException();
+        if (dst == null) throw new NullPointerException("dst is null");
+        if (!ensureCipher()) return 0;
+        if (!dst.hasRemaining()) return 0;
+        try {
+            while (true) {
+                if (outBuffer.hasRemaining()) {
+                    int length = Math.min(dst.remaining(), outBuffer.remaining());
+                    int limit = outBuffer.limit();
+                    outBuffer.limit(outBuffer.position() + length);
+                    dst.put(outBuffer);
+                    outBuffer.limit(limit);
+                    return length;
+                }
+                if (finished) return -1;
+                inBuffer.clear().limit(Math.min(inBuffer.capacity(), Math.max(dst.remaining() - CipherStreamEngine.getUpdateOutputSize(cipher, 0), 16)));
+                int read = channel.read(inBuffer);
+                if (read == 0) return 0;
+                inBuffer.flip();
+                if (read == -1) {
+                    cipher.doFinal(inBuffer, getOutBuffer(cipher.getOutputSize(0)));
+                    outBuffer.flip();
+                    finished = true;
+                } else {
+                    int length = update(dst);
+                    if (length > 0) return length;
+                }
+            }
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(new CipherException(e));
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (inBuffer != null) ByteArrayPool.getSharedInstance().release(inBuffer.array());
+        if (outBuffer != null) ByteArrayPool.getSharedInstance().release(outBuffer.array());
+        inBuffer = null;
+        outBuffer = null;
+        channel.close();
+    }
+}
@@ -1,6 +1,15 @@
 package com.captainalm.lib.stdcrypt.encryption;
 
 import javax.crypto.Cipher;
+import java.nio.BufferOverflowException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This interface provides the ability to obtain a {@link Cipher} and get and set its settings.
@@ -17,6 +26,181 @@ public interface ICipherFactory {
      */
     Cipher getCipher(int opmode) throws CipherException;
 
+    /**
+     * Gets a new cipher instance that is never pooled per thread, for use across calls such as by streams and channels.
+     * NOTE: Implementations pooling ciphers must override this method,
+     * the default implementation calls {@link #getCipher(int)}.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The new cipher instance.
+     * @throws CipherException An Exception has occurred.
+     */
+    default Cipher getUnpooledCipher(int opmode) throws CipherException {
+        return getCipher(opmode);
+    }
+
+    /**
+     * Gets a new cipher instance together with the header describing its settings, both from the same settings.
+     * Use this instead of {@link #getCipher(int)} followed by {@link #getHeader()}
+     * as the settings may change between the calls, such as when a nonce is generated for each cipher.
+     * The default implementation calls {@link #getUnpooledCipher(int)} and {@link #getHeader()} while locked on this factory.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The new cipher instance and its header.
+     * @throws CipherException An Exception has occurred.
+     */
+    default CipherWithHeader getCipherWithHeader(int opmode) throws CipherException {
+        synchronized (this) {
+            return new CipherWithHeader(getUnpooledCipher(opmode), getHeader());
+        }
+    }
+
+    /**
+     * Gets a new cipher instance using the specified initialization vector instead of the one in the settings.
+     * The settings are not modified.
+     * NOTE: The caller is responsible for never reusing an initialization vector under the same key when encrypting.
+     * The default implementation throws a {@link CipherException}.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param initializationVector The initialization vector to use.
+     * @return The new cipher instance.
+     * @throws NullPointerException initializationVector is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    default Cipher getCipher(int opmode, byte[] initializationVector) throws CipherException {
+        if (initializationVector == null) throw new NullPointerException("initializationVector is null");
+        throw new CipherException("not supported");
+    }
+
+    /**
+     * Gets a new cipher instance using the settings of the specified header, such as one read from before cipher text,
+     * applied over the current settings. The settings are not modified.
+     * The default implementation calls {@link #getCipherFromHeader(int, byte[], byte[])} with a null initialization vector.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    default Cipher getCipherFromHeader(int opmode, byte[] header) throws CipherException {
+        return getCipherFromHeader(opmode, header, null);
+    }
+
+    /**
+     * Gets a new cipher instance using the settings of the specified header applied over the current settings
+     * and the specified initialization vector, if not null, instead of the one in the header.
+     * The settings are not modified.
+     * NOTE: The caller is responsible for never reusing an initialization vector under the same key when encrypting.
+     * The default implementation throws a {@link CipherException}.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param header The header in the format of {@link #getSettingsNoSecrets()}.
+     * @param initializationVector The initialization vector to use or null.
+     * @return The new cipher instance.
+     * @throws NullPointerException header is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    default Cipher getCipherFromHeader(int opmode, byte[] header, byte[] initializationVector) throws CipherException {
+        if (header == null) throw new NullPointerException("header is null");
+        throw new CipherException("not supported");
+    }
+
+    /**
+     * Gets whether ciphers can be obtained with a specified initialization vector,
+     * using {@link #getCipher(int, byte[])}, {@link #getCipherFromHeader(int, byte[], byte[])} and {@link #getCipherSource(byte[])}.
+     * The default implementation returns false.
+     *
+     * @return If initialization vectors can be specified.
+     */
+    default boolean isSupportingInitializationVectors() {
+        return false;
+    }
+
+    /**
+     * Gets a source of ciphers using the key of the current settings, or of the settings of the specified header applied over the current settings,
+     * and a specified initialization vector. The settings are not modified.
+     * Implementations should parse the header and obtain the key once, when the source is created,
+     * so many ciphers can be obtained without deriving the key again.
+     * The default implementation returns a source calling {@link #getCipher(int, byte[])} or {@link #getCipherFromHeader(int, byte[], byte[])} for each cipher.
+     *
+     * @param header The header in the format of {@link #getSettingsNoSecrets()} or null to use the current settings.
+     * @return The cipher source.
+     * @throws CipherException The header is invalid or an Exception has occurred.
+     */
+    default ICipherSource getCipherSource(byte[] header) throws CipherException {
+        if (header == null) return this::getCipher;
+        byte[] cHeader = header.clone();
+        return (opmode, initializationVector) -> {
+            if (initializationVector == null) throw new NullPointerException("initializationVector is null");
+            return getCipherFromHeader(opmode, cHeader, initializationVector);
+        };
+    }
+
+    /**
+     * Gets a new cipher instance asynchronously, obtaining it on the specified executor.
+     * Failures complete the future exceptionally with a {@link CompletionException} wrapping the {@link CipherException}
+     * or with the {@link RejectedExecutionException} if the executor rejected the task.
+     * NOTE: Implementations should not return ciphers pooled per thread from this method,
+     * the default implementation calls {@link #getCipher(int)} on the executor.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param executor The executor to obtain the cipher on.
+     * @return The future of the new cipher instance.
+     * @throws NullPointerException executor is null.
+     */
+    default CompletableFuture<Cipher> getCipherAsync(int opmode, Executor executor) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        CompletableFuture<Cipher> toret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    toret.complete(getCipher(opmode));
+                } catch (CipherException e) {
+                    toret.completeExceptionally(new CompletionException(e));
+                } catch (RuntimeException e) {
+                    toret.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            toret.completeExceptionally(e);
+        }
+        return toret;
+    }
+
+    /**
+     * Gets a new cipher instance asynchronously, obtaining it on the shared {@link KeyDerivationExecutor}.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @return The future of the new cipher instance.
+     */
+    default CompletableFuture<Cipher> getCipherAsync(int opmode) {
+        return getCipherAsync(opmode, KeyDerivationExecutor.getSharedInstance());
+    }
+
+    /**
+     * Gets whether {@link Cipher} instances are pooled per thread.
+     * The default implementation does not pool ciphers and returns false.
+     *
+     * @return If ciphers are pooled.
+     */
+    default boolean isPoolingCiphers() {
+        return false;
+    }
+
+    /**
+     * Sets whether {@link Cipher} instances are pooled per thread.
+     * NOTE: When pooling, {@link #getCipher(int)} and the sources from {@link #getCipherSource(byte[])} return the same instance
+     * for calls on the same thread with the same operation mode, re-initialized with the current key and initialization vector;
+     * a cipher must not be used after the next call. The other methods should never return pooled ciphers,
+     * so the ciphers held by streams and channels are not re-initialized under them.
+     * The default implementation does not pool ciphers and ignores the setting.
+     *
+     * @param poolCiphers Should ciphers be pooled.
+     */
+    default void setPoolingCiphers(boolean poolCiphers) {
+    }
+
     /**
      * Gets the name of the cipher factory.
      *
@@ -68,4 +252,126 @@ public interface ICipherFactory {
      * @throws CipherException An Exception has occurred.
      */
     void setSettings(byte[] settingsIn) throws CipherException;
+
+    /**
+     * Writes the cipher settings at the position of the buffer, advancing the position.
+     *
+     * @param settingsOut The buffer to write the settings to.
+     * @return The number of bytes written.
+     * @throws NullPointerException settingsOut is null.
+     * @throws BufferOverflowException The buffer does not have enough space remaining, nothing is written.
+     */
+    default int writeSettings(ByteBuffer settingsOut) {
+        if (settingsOut == null) throw new NullPointerException("settingsOut is null");
+        byte[] settings = getSettings();
+        settingsOut.put(settings);
+        return settings.length;
+    }
+
+    /**
+     * Writes the cipher settings without secrets at the position of the buffer, advancing the position.
+     *
+     * @param settingsOut The buffer to write the settings to.
+     * @return The number of bytes written.
+     * @throws NullPointerException settingsOut is null.
+     * @throws BufferOverflowException The buffer does not have enough space remaining, nothing is written.
+     */
+    default int writeSettingsNoSecrets(ByteBuffer settingsOut) {
+        if (settingsOut == null) throw new NullPointerException("settingsOut is null");
+        byte[] settings = getSettingsNoSecrets();
+        settingsOut.put(settings);
+        return settings.length;
+    }
+
+    /**
+     * Reads the cipher settings from the position of the buffer, advancing the position past the settings.
+     * Invalid settings leave the position unchanged.
+     *
+     * @param settingsIn The buffer to load the settings from.
+     * @throws NullPointerException settingsIn is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    default void readSettings(ByteBuffer settingsIn) throws CipherException {
+        if (settingsIn == null) throw new NullPointerException("settingsIn is null");
+        SettingsParser parser = SettingsParser.getFramingParser(true);
+        ByteBuffer in = settingsIn.duplicate();
+        if (!parser.offer(in)) throw new CipherException("settings truncated");
+        setSettings(parser.getSettings());
+        settingsIn.position(in.position());
+    }
+
+    /**
+     * Reads the cipher settings from the stream, parsing them incrementally without reading past their end.
+     *
+     * @param in The stream to read the settings from.
+     * @throws NullPointerException in is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException An Exception has occurred.
+     */
+    default void readSettings(InputStream in) throws IOException, CipherException {
+        readSettings(SettingsParser.getFramingParser(true).readBuffer(in));
+    }
+
+    /**
+     * Reads the cipher settings from the blocking channel, parsing them incrementally without reading past their end.
+     *
+     * @param in The channel to read the settings from.
+     * @throws NullPointerException in is null.
+     * @throws IllegalArgumentException in is non-blocking.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException An Exception has occurred.
+     */
+    default void readSettings(ReadableByteChannel in) throws IOException, CipherException {
+        readSettings(SettingsParser.getFramingParser(true).readBuffer(in));
+    }
+
+    /**
+     * Gets the header to write before cipher text as a byte array,
+     * containing the salt and initialization vector if they are being output.
+     * The header uses the same format as {@link #getSettingsNoSecrets()}.
+     * The default implementation returns {@link #getSettingsNoSecrets()}.
+     *
+     * @return The byte array of the header.
+     */
+    default byte[] getHeader() {
+        return getSettingsNoSecrets();
+    }
+
+    /**
+     * Gets whether the salt is output.
+     * The default implementation does not output the salt and returns false.
+     *
+     * @return Is the salt output.
+     */
+    default boolean isOutputtingSalt() {
+        return false;
+    }
+
+    /**
+     * Sets if the salt is output.
+     * The default implementation does not output the salt and ignores the setting.
+     *
+     * @param outputSalt Should the salt be output.
+     */
+    default void setOutputSalt(boolean outputSalt) {
+    }
+
+    /**
+     * Gets whether the InitializationVector is output.
+     * The default implementation does not output the InitializationVector and returns false.
+     *
+     * @return Is the InitializationVector output.
+     */
+    default boolean isOutputtingInitializationVector() {
+        return false;
+    }
+
+    /**
+     * Sets if the InitializationVector is output.
+     * The default implementation does not output the InitializationVector and ignores the setting.
+     *
+     * @param outputInitializationVector Should the InitializationVector be output.
+     */
+    default void setOutputInitializationVector(boolean outputInitializationVector) {
+    }
 }
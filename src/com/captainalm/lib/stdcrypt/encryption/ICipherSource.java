@@ -0,0 +1,24 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+
+/**
+ * This interface provides ciphers with a fixed key and a specified initialization vector,
+ * as obtained from {@link ICipherFactory#getCipherSource(byte[])}.
+ *
+ * @author Captain ALM
+ */
+@FunctionalInterface
+public interface ICipherSource {
+    /**
+     * Gets a new cipher instance using the specified initialization vector.
+     * NOTE: The caller is responsible for never reusing an initialization vector under the same key when encrypting.
+     *
+     * @param opmode The Cipher Operation Mode ({@link Cipher#ENCRYPT_MODE}, {@link Cipher#DECRYPT_MODE}, {@link Cipher#WRAP_MODE} and {@link Cipher#UNWRAP_MODE}).
+     * @param initializationVector The initialization vector to use.
+     * @return The new cipher instance.
+     * @throws NullPointerException initializationVector is null.
+     * @throws CipherException An Exception has occurred.
+     */
+    Cipher getCipher(int opmode, byte[] initializationVector) throws CipherException;
+}
@@ -0,0 +1,54 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides the shared bounded executor used for asynchronous key derivation,
+ * so key derivation is kept off event loop threads and cannot exhaust the host with threads.
+ * The executor has one daemon thread per processor and a bounded queue, tasks submitted while the queue is full are rejected.
+ *
+ * @author Captain ALM
+ */
+public final class KeyDerivationExecutor {
+    /**
+     * The maximum number of queued derivations of the shared executor.
+     */
+    public static final int queueSize = 1024;
+    private static final Object slock = new Object();
+    private static ThreadPoolExecutor sharedInstance;
+
+    private KeyDerivationExecutor() {
+    }
+
+    /**
+     * Gets the shared key derivation executor.
+     *
+     * @return The shared executor.
+     */
+    public static Executor getSharedInstance() {
+        synchronized (slock) {
+            if (sharedInstance == null) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                sharedInstance = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new DaemonThreadFactory());
+                sharedInstance.allowCoreThreadTimeOut(true);
+            }
+            return sharedInstance;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread toret = new Thread(r, "KeyDerivation-" + count.incrementAndGet());
+            toret.setDaemon(true);
+            return toret;
+        }
+    }
+}
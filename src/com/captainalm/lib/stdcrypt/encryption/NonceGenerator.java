@@ -0,0 +1,67 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class provides nonces that are never reused under a key.
+ * Nonces are a random base XORed with a 64 bit counter in their last bytes,
+ * the base being regenerated and the counter reset whenever the key changes.
+ * This class is thread safe.
+ *
+ * @author Captain ALM
+ */
+public final class NonceGenerator {
+    private final int nonceSize;
+    private SecretKeySpec key;
+    private byte[] base;
+    private long counter;
+
+    /**
+     * Constructs a new NonceGenerator for nonces of the specified size.
+     *
+     * @param nonceSize The size of the nonces in bytes.
+     * @throws IllegalArgumentException nonceSize is less than 8.
+     */
+    public NonceGenerator(int nonceSize) {
+        if (nonceSize < 8) throw new IllegalArgumentException("nonceSize is less than 8");
+        this.nonceSize = nonceSize;
+    }
+
+    /**
+     * Gets the size of the nonces in bytes.
+     *
+     * @return The nonce size.
+     */
+    public int getNonceSize() {
+        return nonceSize;
+    }
+
+    /**
+     * Gets the next nonce for the specified key.
+     *
+     * @param key The key the nonce is used with.
+     * @param randomSource The source of randomness for a new base.
+     * @return The nonce.
+     * @throws NullPointerException key or randomSource is null.
+     * @throws CipherException The nonces for the key are exhausted.
+     */
+    public synchronized byte[] next(SecretKeySpec key, SecureRandomSource randomSource) throws CipherException {
+        if (key == null) throw new NullPointerException("key is null");
+        if (randomSource == null) throw new NullPointerException("randomSource is null");
+        if (base == null || !key.equals(this.key)) {
+            base = new byte[nonceSize];
+            randomSource.nextBytes(base);
+            this.key = key;
+            counter = 0;
+        } else if (counter == -1) {
+            throw new CipherException("nonces exhausted for key");
+        }
+        byte[] toret = base.clone();
+        long value = counter++;
+        for (int i = nonceSize - 1; i >= nonceSize - 8; i--) {
+            toret[i] ^= (byte) value;
+            value >>>= 8;
+        }
+        return toret;
+    }
+}
@@ -0,0 +1,258 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class provides parallel chunked encryption and decryption using a {@link ICipherFactory}
+ * that supports specified initialization vectors, see {@link ICipherFactory#isSupportingInitializationVectors()}.
+ * <p>
+ * Format: The {@link ICipherFactory#getHeader()} if the factory outputs the salt or initialization vector,
+ * the base initialization vector (1 byte length followed by the bytes) and the chunk size (4 byte big endian).
+ * Each chunk of plain text, except the final chunk, is the chunk size and is written as its cipher text length (4 byte big endian)
+ * followed by the cipher text. The final chunk is shorter than the chunk size, being empty if the plain text is a multiple of the chunk size,
+ * and is written as the bitwise complement of its cipher text length (so negative) followed by the cipher text, ending the chunks.
+ * Each chunk is encrypted independently with the initialization vector given by the leftmost bytes of
+ * SHA-256(base initialization vector || chunk index as 8 byte big endian || 1 for the final chunk otherwise 0).
+ * </p>
+ * As the final chunk flag is part of the initialization vector, with an authenticated cipher the removal of trailing chunks,
+ * or marking another chunk as final, fails authentication; a container missing its final chunk is always rejected.
+ * The base initialization vector is random, generated for every call to encrypt with the length of the initialization vector of the factory's cipher,
+ * so the chunk initialization vectors are not reused between containers even when the factory reuses its initialization vector.
+ * The chunk ciphers of a container are obtained from one {@link ICipherFactory#getCipherSource(byte[])},
+ * so the header is parsed and the key derived once per container; decrypting does not modify the settings of the factory
+ * and all chunks use the key described by the header.
+ * Chunks are processed in batches across a {@link ForkJoinPool}.
+ * When decrypting, the chunk size read from the container must not exceed the chunk size of the engine,
+ * so a forged or truncated container cannot claim chunks larger than the engine would allocate for itself.
+ *
+ * @author Captain ALM
+ */
+public final class ParallelCipherEngine {
+    /**
+     * The default chunk size in bytes.
+     */
+    public static final int defaultChunkSize = 1024 * 1024;
+    private static final int maximumOverhead = 1024;
+
+    private final ICipherFactory factory;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new ParallelCipherEngine with the specified factory and the default chunk size.
+     *
+     * @param factory The cipher factory to use.
+     * @throws NullPointerException factory is null.
+     * @throws IllegalArgumentException factory does not support specified initialization vectors.
+     */
+    public ParallelCipherEngine(ICipherFactory factory) {
+        this(factory, defaultChunkSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new ParallelCipherEngine with the specified factory, chunk size and pool.
+     *
+     * @param factory The cipher factory to use.
+     * @param chunkSize The size of the plain text chunks in bytes, also the largest chunk size accepted when decrypting.
+     * @param pool The pool to process the chunks on.
+     * @throws NullPointerException factory or pool is null.
+     * @throws IllegalArgumentException chunkSize is less than 1 or factory does not support specified initialization vectors.
+     */
+    public ParallelCipherEngine(ICipherFactory factory, int chunkSize, ForkJoinPool pool) {
+        if (factory == null) throw new NullPointerException("factory is null");
+        if (pool == null) throw new NullPointerException("pool is null");
+        if (!factory.isSupportingInitializationVectors()) throw new IllegalArgumentException("factory does not support specified initialization vectors");
+        if (chunkSize < 1 || chunkSize > Integer.MAX_VALUE - maximumOverhead) throw new IllegalArgumentException("chunkSize is out of range");
+        this.factory = factory;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the size of the plain text chunks in bytes.
+     *
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Encrypts the specified array.
+     *
+     * @param data The plain text.
+     * @return The chunked cipher text.
+     * @throws NullPointerException data is null.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public byte[] encrypt(byte[] data) throws CipherException {
+        if (data == null) throw new NullPointerException("data is null");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + data.length / Math.max(chunkSize / 64, 1) + 1024);
+        try {
+            encrypt(new ByteArrayInputStream(data), out);
+        } catch (IOException e) {
+            throw new CipherException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decrypts the specified array.
+     * Containers with a chunk size larger than the chunk size of this engine are rejected.
+     *
+     * @param data The chunked cipher text.
+     * @return The plain text.
+     * @throws NullPointerException data is null.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public byte[] decrypt(byte[] data) throws CipherException {
+        if (data == null) throw new NullPointerException("data is null");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        try {
+            decrypt(new ByteArrayInputStream(data), out);
+        } catch (IOException e) {
+            throw new CipherException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encrypts the input stream to the output stream.
+     *
+     * @param in The stream to read the plain text from.
+     * @param out The stream to write the chunked cipher text to.
+     * @throws NullPointerException in or out is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public void encrypt(InputStream in, OutputStream out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        CipherWithHeader cipherWithHeader = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+        byte[] cIVector = cipherWithHeader.getCipher().getIV();
+        byte[] header = (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector()) ? cipherWithHeader.getHeader() : null;
+        if (cIVector == null || cIVector.length < 1 || cIVector.length > 32) throw new CipherException("cipher initialization vector is not supported");
+        ICipherSource source = factory.getCipherSource(header);
+        byte[] base = new byte[cIVector.length];
+        SecureRandomSource.getNonBlockingInstance().nextBytes(base);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        if (header != null) dataOut.write(header);
+        dataOut.writeByte(base.length);
+        dataOut.write(base);
+        dataOut.writeInt(chunkSize);
+
+        int batchSize = pool.getParallelism() * 2;
+        long index = 0;
+        boolean finished = false;
+        while (!finished) {
+            List<Callable<byte[]>> batch = new ArrayList<>(batchSize);
+            while (!finished && batch.size() < batchSize) {
+                byte[] chunk = new byte[chunkSize];
+                int length = readFully(in, chunk);
+                finished = length < chunkSize;
+                batch.add(getTask(Cipher.ENCRYPT_MODE, source, base, index++, finished, chunk, length));
+            }
+            List<byte[]> results = process(batch);
+            for (int i = 0; i < results.size(); i++) {
+                byte[] result = results.get(i);
+                dataOut.writeInt((finished && i == results.size() - 1) ? ~result.length : result.length);
+                dataOut.write(result);
+            }
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * Decrypts the input stream to the output stream.
+     * Containers with a chunk size larger than the chunk size of this engine are rejected before any chunk is allocated.
+     *
+     * @param in The stream to read the chunked cipher text from.
+     * @param out The stream to write the plain text to.
+     * @throws NullPointerException in or out is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException A Cipher Exception has occurred.
+     */
+    public void decrypt(InputStream in, OutputStream out) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (out == null) throw new NullPointerException("out is null");
+        byte[] header = (factory.isOutputtingSalt() || factory.isOutputtingInitializationVector()) ? SettingsParser.getFramingParser(false).read(in) : null;
+        DataInputStream dataIn = new DataInputStream(in);
+        byte[] base = new byte[dataIn.readUnsignedByte()];
+        if (base.length < 1 || base.length > 32) throw new CipherException("invalid base initialization vector length");
+        dataIn.readFully(base);
+        int sourceChunkSize = dataIn.readInt();
+        if (sourceChunkSize < 1 || sourceChunkSize > chunkSize) throw new CipherException("invalid chunk size");
+        ICipherSource source = factory.getCipherSource(header);
+
+        int batchSize = pool.getParallelism() * 2;
+        long index = 0;
+        boolean finished = false;
+        while (!finished) {
+            List<Callable<byte[]>> batch = new ArrayList<>(batchSize);
+            while (!finished && batch.size() < batchSize) {
+                int length = dataIn.readInt();
+                finished = length < 0;
+                if (finished) length = ~length;
+                if ((length < 1 && !finished) || length > sourceChunkSize + maximumOverhead) throw new CipherException("invalid chunk length");
+                byte[] chunk = new byte[length];
+                dataIn.readFully(chunk);
+                batch.add(getTask(Cipher.DECRYPT_MODE, source, base, index++, finished, chunk, length));
+            }
+            for (byte[] result : process(batch)) out.write(result);
+        }
+        out.flush();
+    }
+
+    private static Callable<byte[]> getTask(int opmode, ICipherSource source, byte[] base, long index, boolean last, byte[] chunk, int length) {
+        return () -> source.getCipher(opmode, getChunkInitializationVector(base, index, last)).doFinal(chunk, 0, length);
+    }
+
+    private List<byte[]> process(List<Callable<byte[]>> batch) throws CipherException {
+        List<byte[]> toret = new ArrayList<>(batch.size());
+        if (batch.isEmpty()) return toret;
+        try {
+            for (Future<byte[]> future : pool.invokeAll(batch)) toret.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CipherException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CipherException) throw (CipherException) e.getCause();
+            if (e.getCause() instanceof IllegalBlockSizeException || e.getCause() instanceof BadPaddingException) throw new CipherException(e.getCause());
+            throw new CipherException(e);
+        }
+        return toret;
+    }
+
+    private static byte[] getChunkInitializationVector(byte[] base, long index, boolean last) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(base);
+        for (int i = 56; i >= 0; i -= 8) digest.update((byte) (index >>> i));
+        digest.update((byte) ((last) ? 1 : 0));
+        return Arrays.copyOf(digest.digest(), base.length);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int toret = 0;
+        int read;
+        while (toret < buffer.length && (read = in.read(buffer, toret, buffer.length - toret)) != -1) toret += read;
+        return toret;
+    }
+}
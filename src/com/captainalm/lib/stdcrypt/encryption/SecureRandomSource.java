@@ -0,0 +1,116 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * This class provides a source of {@link SecureRandom} instances used for salt and initialization vector generation.
+ * Instances are created once per source (or once per thread for thread local sources) instead of once per use.
+ *
+ * @author Captain ALM
+ */
+public final class SecureRandomSource {
+    private static final Object slock = new Object();
+    private static SecureRandomSource strongInstance;
+    private static SecureRandomSource nonBlockingInstance;
+    private static SecureRandomSource threadLocalInstance;
+
+    private final SecureRandom random;
+    private final ThreadLocal<SecureRandom> threadRandom;
+
+    private SecureRandomSource(SecureRandom random, ThreadLocal<SecureRandom> threadRandom) {
+        this.random = random;
+        this.threadRandom = threadRandom;
+    }
+
+    /**
+     * Gets the {@link SecureRandom} for the current thread.
+     *
+     * @return The secure random.
+     */
+    public SecureRandom getSecureRandom() {
+        return (threadRandom == null) ? random : threadRandom.get();
+    }
+
+    /**
+     * Fills the specified array with random bytes.
+     *
+     * @param bytes The array to fill.
+     * @throws NullPointerException bytes is null.
+     */
+    public void nextBytes(byte[] bytes) {
+        if (bytes == null) throw new NullPointerException("bytes is null");
+        getSecureRandom().nextBytes(bytes);
+    }
+
+    /**
+     * Gets whether a separate {@link SecureRandom} is used per thread.
+     *
+     * @return If the source is thread local.
+     */
+    public boolean isThreadLocal() {
+        return threadRandom != null;
+    }
+
+    /**
+     * Creates a source that uses the specified {@link SecureRandom}.
+     *
+     * @param random The secure random to use.
+     * @return The SecureRandomSource.
+     * @throws NullPointerException random is null.
+     */
+    public static SecureRandomSource of(SecureRandom random) {
+        if (random == null) throw new NullPointerException("random is null");
+        return new SecureRandomSource(random, null);
+    }
+
+    /**
+     * Gets the shared source that uses {@link SecureRandom#getInstanceStrong()}.
+     * NOTE: This can block when the system entropy pool is exhausted.
+     *
+     * @return The SecureRandomSource.
+     * @throws NoSuchAlgorithmException No strong algorithm is available.
+     */
+    public static SecureRandomSource getStrongInstance() throws NoSuchAlgorithmException {
+        synchronized (slock) {
+            if (strongInstance == null) strongInstance = new SecureRandomSource(SecureRandom.getInstanceStrong(), null);
+            return strongInstance;
+        }
+    }
+
+    /**
+     * Gets the shared source that uses a non-blocking {@link SecureRandom}.
+     *
+     * @return The SecureRandomSource.
+     */
+    public static SecureRandomSource getNonBlockingInstance() {
+        synchronized (slock) {
+            if (nonBlockingInstance == null) nonBlockingInstance = new SecureRandomSource(createNonBlocking(), null);
+            return nonBlockingInstance;
+        }
+    }
+
+    /**
+     * Gets the shared source that uses a non-blocking {@link SecureRandom} per thread.
+     *
+     * @return The SecureRandomSource.
+     */
+    public static SecureRandomSource getThreadLocalInstance() {
+        synchronized (slock) {
+            if (threadLocalInstance == null) threadLocalInstance = new SecureRandomSource(null, ThreadLocal.withInitial(SecureRandomSource::createNonBlocking));
+            return threadLocalInstance;
+        }
+    }
+
+    private static SecureRandom createNonBlocking() {
+        try {
+            return SecureRandom.getInstance("NativePRNGNonBlocking");
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException ex) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.Arrays;
+
+/**
+ * This class provides an incremental parser for the settings format used by {@link ICipherFactory#getSettings()},
+ * {@link ICipherFactory#getSettingsNoSecrets()} and {@link ICipherFactory#getHeader()}.
+ * The format is a flag byte followed by, for each flag set, a length prefixed field:
+ * 1 - the password (4 byte big endian length), 2 - the salt (1 byte length), 4 - the initialization vector (1 byte length)
+ * and 8 - the key derivation parameters (fixed 7 bytes: algorithm ID, 4 byte big endian iterations and 2 byte big endian key size in bits).
+ * Bytes can be offered as they arrive, so the parser can be fed from non-blocking channels;
+ * only the bytes belonging to the settings are ever consumed.
+ * As the settings may come from untrusted cipher text, the key derivation iterations and key size are limited,
+ * so a forged header cannot make the receiver run an unbounded key derivation.
+ * The factories and streams of this package only use the parser to frame settings,
+ * the limits configured on the factory being applied when it parses them.
+ *
+ * @author Captain ALM
+ */
+public final class SettingsParser {
+    /**
+     * The default maximum password length in bytes.
+     */
+    public static final int defaultMaximumPasswordLength = 65536;
+    /**
+     * The default maximum number of key derivation iterations.
+     */
+    public static final int defaultMaximumIterations = 10000000;
+    /**
+     * The default maximum size of the derived key in bits.
+     */
+    public static final int defaultMaximumKeySize = 512;
+
+    private static final int stateFlags = 0;
+    private static final int statePasswordLength = 1;
+    private static final int statePassword = 2;
+    private static final int stateSaltLength = 3;
+    private static final int stateSalt = 4;
+    private static final int stateIVectorLength = 5;
+    private static final int stateIVector = 6;
+    private static final int stateKeyDerivation = 7;
+    private static final int stateComplete = 8;
+
+    private final boolean allowSecrets;
+    private final int maximumPasswordLength;
+    private final int maximumIterations;
+    private final int maximumKeySize;
+
+    private byte[] settings = new byte[64];
+    private int index;
+    private int state;
+    private int needed;
+
+    /**
+     * Constructs a new SettingsParser.
+     *
+     * @param allowSecrets Whether settings containing the password are accepted.
+     */
+    public SettingsParser(boolean allowSecrets) {
+        this(allowSecrets, defaultMaximumPasswordLength);
+    }
+
+    /**
+     * Constructs a new SettingsParser with the specified maximum password length.
+     *
+     * @param allowSecrets Whether settings containing the password are accepted.
+     * @param maximumPasswordLength The maximum password length in bytes.
+     * @throws IllegalArgumentException maximumPasswordLength is less than 1.
+     */
+    public SettingsParser(boolean allowSecrets, int maximumPasswordLength) {
+        this(allowSecrets, maximumPasswordLength, defaultMaximumIterations, defaultMaximumKeySize);
+    }
+
+    /**
+     * Constructs a new SettingsParser with the specified maximum password length, key derivation iterations and key size.
+     *
+     * @param allowSecrets Whether settings containing the password are accepted.
+     * @param maximumPasswordLength The maximum password length in bytes.
+     * @param maximumIterations The maximum number of key derivation iterations.
+     * @param maximumKeySize The maximum size of the derived key in bits.
+     * @throws IllegalArgumentException maximumPasswordLength or maximumIterations is less than 1 or maximumKeySize is less than 8.
+     */
+    public SettingsParser(boolean allowSecrets, int maximumPasswordLength, int maximumIterations, int maximumKeySize) {
+        if (maximumPasswordLength < 1) throw new IllegalArgumentException("maximumPasswordLength is less than 1");
+        if (maximumIterations < 1) throw new IllegalArgumentException("maximumIterations is less than 1");
+        if (maximumKeySize < 8) throw new IllegalArgumentException("maximumKeySize is less than 8");
+        this.allowSecrets = allowSecrets;
+        this.maximumPasswordLength = maximumPasswordLength;
+        this.maximumIterations = maximumIterations;
+        this.maximumKeySize = maximumKeySize;
+        reset();
+    }
+
+    /**
+     * Gets a new SettingsParser that only frames the settings for a factory,
+     * the key derivation parameters being limited by the factory when the settings are parsed,
+     * so the limits configured on the factory and its own key derivation parameters are accepted.
+     *
+     * @param allowSecrets Whether settings containing the password are accepted.
+     * @return The new parser.
+     */
+    static SettingsParser getFramingParser(boolean allowSecrets) {
+        return new SettingsParser(allowSecrets, defaultMaximumPasswordLength, Integer.MAX_VALUE, 65528);
+    }
+
+    /**
+     * Resets the parser so another settings byte array can be parsed.
+     */
+    public void reset() {
+        index = 0;
+        state = stateFlags;
+        needed = 1;
+    }
+
+    /**
+     * Gets whether the settings have been completely parsed.
+     *
+     * @return If the settings are complete.
+     */
+    public boolean isComplete() {
+        return state == stateComplete;
+    }
+
+    /**
+     * Gets the number of bytes the parser needs before it can advance.
+     * Reading exactly this many bytes never reads past the end of the settings.
+     *
+     * @return The number of bytes needed or 0 if complete.
+     */
+    public int getBytesNeeded() {
+        return needed;
+    }
+
+    /**
+     * Offers bytes to the parser, only the bytes belonging to the settings are consumed.
+     *
+     * @param buffer The buffer containing the bytes.
+     * @return If the settings are complete.
+     * @throws NullPointerException buffer is null.
+     * @throws CipherException The settings are invalid.
+     */
+    public boolean offer(ByteBuffer buffer) throws CipherException {
+        if (buffer == null) throw new NullPointerException("buffer is null");
+        while (state != stateComplete && buffer.hasRemaining()) {
+            int length = Math.min(needed, buffer.remaining());
+            ensureCapacity(index + length);
+            buffer.get(settings, index, length);
+            index += length;
+            needed -= length;
+            if (needed == 0) advance();
+        }
+        return state == stateComplete;
+    }
+
+    /**
+     * Offers bytes to the parser, only the bytes belonging to the settings are consumed.
+     *
+     * @param bytes The array containing the bytes.
+     * @param offset The offset of the bytes.
+     * @param length The number of bytes.
+     * @return The number of bytes consumed.
+     * @throws NullPointerException bytes is null.
+     * @throws CipherException The settings are invalid.
+     */
+    public int offer(byte[] bytes, int offset, int length) throws CipherException {
+        if (bytes == null) throw new NullPointerException("bytes is null");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        offer(buffer);
+        return buffer.position() - offset;
+    }
+
+    private void advance() throws CipherException {
+        int flags = settings[0] & 0xff;
+        switch (state) {
+            case stateFlags:
+                if ((flags & ~15) != 0) throw new CipherException("invalid settings flags");
+                if ((flags & 1) == 1 && !allowSecrets) throw new CipherException("settings contain secrets");
+                next(statePasswordLength, flags);
+                break;
+            case statePasswordLength:
+                int pwdLength = ((settings[index - 4] & 0xff) << 24) | ((settings[index - 3] & 0xff) << 16) | ((settings[index - 2] & 0xff) << 8) | (settings[index - 1] & 0xff);
+                if (pwdLength < 1) throw new CipherException("password length less than 1");
+                if (pwdLength > maximumPasswordLength) throw new CipherException("password length greater than " + maximumPasswordLength);
+                state = statePassword;
+                needed = pwdLength;
+                break;
+            case statePassword:
+                next(stateSaltLength, flags);
+                break;
+            case stateSaltLength:
+                if ((settings[index - 1] & 0xff) < 1) throw new CipherException("salt length less than 1");
+                state = stateSalt;
+                needed = settings[index - 1] & 0xff;
+                break;
+            case stateSalt:
+                next(stateIVectorLength, flags);
+                break;
+            case stateIVectorLength:
+                if ((settings[index - 1] & 0xff) < 1) throw new CipherException("initializationVector length less than 1");
+                state = stateIVector;
+                needed = settings[index - 1] & 0xff;
+                break;
+            case stateIVector:
+                next(stateKeyDerivation, flags);
+                break;
+            case stateKeyDerivation:
+                int algorithmID = settings[index - 7] & 0xff;
+                if (algorithmID < 1 || algorithmID > AESPasswordRfc2898CipherFactory.keyDerivationAlgorithms.length) throw new CipherException("invalid key derivation algorithm");
+                int iterations = ((settings[index - 6] & 0xff) << 24) | ((settings[index - 5] & 0xff) << 16) | ((settings[index - 4] & 0xff) << 8) | (settings[index - 3] & 0xff);
+                if (iterations < 1) throw new CipherException("iterations less than 1");
+                if (iterations > maximumIterations) throw new CipherException("iterations greater than " + maximumIterations);
+                int keySize = ((settings[index - 2] & 0xff) << 8) | (settings[index - 1] & 0xff);
+                if (keySize < 8 || keySize % 8 != 0) throw new CipherException("invalid key size");
+                if (keySize > maximumKeySize) throw new CipherException("key size greater than " + maximumKeySize);
+                next(stateComplete, flags);
+                break;
+        }
+    }
+
+    private void next(int from, int flags) {
+        state = from;
+        while (state != stateComplete) {
+            if (state == statePasswordLength && (flags & 1) == 1) {
+                needed = 4;
+                return;
+            }
+            if (state == stateSaltLength && (flags & 2) == 2) {
+                needed = 1;
+                return;
+            }
+            if (state == stateIVectorLength && (flags & 4) == 4) {
+                needed = 1;
+                return;
+            }
+            if (state == stateKeyDerivation && (flags & 8) == 8) {
+                needed = AESPasswordRfc2898CipherFactory.keyDerivationSettingsSize;
+                return;
+            }
+            state = (state == stateKeyDerivation) ? stateComplete : (state == stateIVectorLength) ? stateKeyDerivation : state + 2;
+        }
+        needed = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > settings.length) settings = Arrays.copyOf(settings, Math.max(capacity, settings.length * 2));
+    }
+
+    /**
+     * Gets the parsed settings byte array.
+     *
+     * @return The settings byte array.
+     * @throws IllegalStateException The settings are not complete.
+     */
+    public byte[] getSettings() {
+        if (state != stateComplete) throw new IllegalStateException("settings are not complete");
+        return Arrays.copyOf(settings, index);
+    }
+
+    /**
+     * Gets a read only buffer of the parsed settings without copying them.
+     * The buffer is only valid until the parser is reset.
+     *
+     * @return The buffer of the settings.
+     * @throws IllegalStateException The settings are not complete.
+     */
+    public ByteBuffer getSettingsBuffer() {
+        if (state != stateComplete) throw new IllegalStateException("settings are not complete");
+        return ByteBuffer.wrap(settings, 0, index).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads the settings from the specified stream without reading past their end.
+     *
+     * @param in The stream to read from.
+     * @return The settings byte array.
+     * @throws NullPointerException in is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException The settings are invalid.
+     */
+    public byte[] read(InputStream in) throws IOException, CipherException {
+        readBuffer(in);
+        return getSettings();
+    }
+
+    /**
+     * Reads the settings from the specified stream without reading past their end.
+     * The settings are not copied, see {@link #getSettingsBuffer()}.
+     *
+     * @param in The stream to read from.
+     * @return The read only buffer of the settings.
+     * @throws NullPointerException in is null.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException The settings are invalid.
+     */
+    public ByteBuffer readBuffer(InputStream in) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        while (state != stateComplete) {
+            ensureCapacity(index + needed);
+            int read = in.read(settings, index, needed);
+            if (read == -1) throw new EOFException("end of stream in settings");
+            index += read;
+            needed -= read;
+            if (needed == 0) advance();
+        }
+        return getSettingsBuffer();
+    }
+
+    /**
+     * Reads the settings from the specified blocking channel without reading past their end.
+     * Use {@link #offer(ByteBuffer)} to parse the settings from a non-blocking channel as bytes arrive.
+     *
+     * @param in The channel to read from.
+     * @return The settings byte array.
+     * @throws NullPointerException in is null.
+     * @throws IllegalArgumentException in is non-blocking.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException The settings are invalid.
+     */
+    public byte[] read(ReadableByteChannel in) throws IOException, CipherException {
+        readBuffer(in);
+        return getSettings();
+    }
+
+    /**
+     * Reads the settings from the specified blocking channel without reading past their end.
+     * The settings are not copied, see {@link #getSettingsBuffer()}.
+     * Use {@link #offer(ByteBuffer)} to parse the settings from a non-blocking channel as bytes arrive.
+     *
+     * @param in The channel to read from.
+     * @return The read only buffer of the settings.
+     * @throws NullPointerException in is null.
+     * @throws IllegalArgumentException in is non-blocking.
+     * @throws IOException An I/O Exception has occurred.
+     * @throws CipherException The settings are invalid.
+     */
+    public ByteBuffer readBuffer(ReadableByteChannel in) throws IOException, CipherException {
+        if (in == null) throw new NullPointerException("in is null");
+        if (in instanceof SelectableChannel && !((SelectableChannel) in).isBlocking()) throw new IllegalArgumentException("in is non-blocking");
+        while (state != stateComplete) {
+            ensureCapacity(index + needed);
+            int read = in.read(ByteBuffer.wrap(settings, index, needed));
+            if (read == -1) throw new EOFException("end of stream in settings");
+            index += read;
+            needed -= read;
+            if (needed == 0) advance();
+        }
+        return getSettingsBuffer();
+    }
+}
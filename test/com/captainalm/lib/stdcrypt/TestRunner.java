@@ -0,0 +1,149 @@
+package com.captainalm.lib.stdcrypt;
+
+import com.captainalm.lib.stdcrypt.digest.DigestComparerTest;
+import com.captainalm.lib.stdcrypt.digest.DigestProviderTest;
+import com.captainalm.lib.stdcrypt.digest.MultiDigestStreamTest;
+import com.captainalm.lib.stdcrypt.digest.ResumableDigestTest;
+import com.captainalm.lib.stdcrypt.digest.TreeDigestProviderTest;
+import com.captainalm.lib.stdcrypt.encryption.AESCTRRandomAccessTest;
+import com.captainalm.lib.stdcrypt.encryption.AsyncCipherTest;
+import com.captainalm.lib.stdcrypt.encryption.AuthenticatedCipherTest;
+import com.captainalm.lib.stdcrypt.encryption.ChaCha20Poly1305Test;
+import com.captainalm.lib.stdcrypt.encryption.CipherStreamEngineTest;
+import com.captainalm.lib.stdcrypt.encryption.CryptoInstancePoolTest;
+import com.captainalm.lib.stdcrypt.encryption.DerivedKeyCacheTest;
+import com.captainalm.lib.stdcrypt.encryption.FramedCipherStreamTest;
+import com.captainalm.lib.stdcrypt.encryption.KeyDerivationTest;
+import com.captainalm.lib.stdcrypt.encryption.ParallelCipherEngineTest;
+import com.captainalm.lib.stdcrypt.encryption.SecureRandomSourceTest;
+import com.captainalm.lib.stdcrypt.encryption.SettingsBufferTest;
+import com.captainalm.lib.stdcrypt.encryption.SettingsParserTest;
+import com.captainalm.lib.stdcrypt.encryption.SettingsSnapshotTest;
+
+import java.io.PrintStream;
+
+/**
+ * This class runs the library behaviour tests without an external test framework.
+ * The process exits with status 1 if any test fails.
+ *
+ * @author Captain ALM
+ */
+public final class TestRunner {
+    private final PrintStream progress;
+    private int passed;
+    private int failed;
+
+    /**
+     * This interface represents a test or an action expected to throw.
+     */
+    public interface Test {
+        /**
+         * Runs the test.
+         *
+         * @throws Exception An Exception has occurred.
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Constructs a new test runner.
+     *
+     * @param progress The stream to report results to.
+     * @throws NullPointerException progress is null.
+     */
+    public TestRunner(PrintStream progress) {
+        if (progress == null) throw new NullPointerException("progress is null");
+        this.progress = progress;
+    }
+
+    /**
+     * Runs a test and records whether it passed.
+     *
+     * @param name The name of the test.
+     * @param test The test to run.
+     */
+    public void test(String name, Test test) {
+        try {
+            test.run();
+            passed++;
+            progress.println("PASS " + name);
+        } catch (Throwable e) {
+            failed++;
+            progress.println("FAIL " + name + ": " + e);
+            e.printStackTrace(progress);
+        }
+    }
+
+    /**
+     * Gets the number of passed tests.
+     *
+     * @return The number of passed tests.
+     */
+    public int getPassed() {
+        return passed;
+    }
+
+    /**
+     * Gets the number of failed tests.
+     *
+     * @return The number of failed tests.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Checks that a condition holds.
+     *
+     * @param condition The condition.
+     * @param message The failure message.
+     * @throws AssertionError The condition does not hold.
+     */
+    public static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    /**
+     * Checks that an action throws the specified type of exception.
+     *
+     * @param type The expected exception type.
+     * @param action The action to run.
+     * @param <T> The expected exception type.
+     * @return The thrown exception.
+     * @throws AssertionError Nothing or another type of exception was thrown.
+     */
+    public static <T extends Throwable> T expect(Class<T> type, Test action) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) return type.cast(e);
+            throw new AssertionError("expected " + type.getName() + " but got " + e, e);
+        }
+        throw new AssertionError("expected " + type.getName() + " but nothing was thrown");
+    }
+
+    public static void main(String[] args) {
+        TestRunner runner = new TestRunner(System.out);
+        SettingsParserTest.run(runner);
+        CipherStreamEngineTest.run(runner);
+        FramedCipherStreamTest.run(runner);
+        AuthenticatedCipherTest.run(runner);
+        AESCTRRandomAccessTest.run(runner);
+        ParallelCipherEngineTest.run(runner);
+        ChaCha20Poly1305Test.run(runner);
+        KeyDerivationTest.run(runner);
+        DigestComparerTest.run(runner);
+        DigestProviderTest.run(runner);
+        TreeDigestProviderTest.run(runner);
+        MultiDigestStreamTest.run(runner);
+        ResumableDigestTest.run(runner);
+        CryptoInstancePoolTest.run(runner);
+        DerivedKeyCacheTest.run(runner);
+        AsyncCipherTest.run(runner);
+        SettingsSnapshotTest.run(runner);
+        SettingsBufferTest.run(runner);
+        SecureRandomSourceTest.run(runner);
+        System.out.println(runner.getPassed() + " passed, " + runner.getFailed() + " failed");
+        if (runner.getFailed() > 0) System.exit(1);
+    }
+}
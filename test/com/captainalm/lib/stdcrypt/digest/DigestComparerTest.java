@@ -0,0 +1,148 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link DigestComparer} tests.
+ *
+ * @author Captain ALM
+ */
+public final class DigestComparerTest {
+    private DigestComparerTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("digestComparer.array", () -> {
+            for (int length = 0; length <= 33; length++) {
+                byte[] digest = getDigest(length);
+                check(DigestComparer.compareDigests(digest, digest.clone()), "equal digests of " + length + " bytes should match");
+                for (int i = 0; i < length; i++) {
+                    byte[] modified = digest.clone();
+                    modified[i] ^= (byte) (1 << (i % 8));
+                    check(!DigestComparer.compareDigests(digest, modified), "a difference at byte " + i + " of " + length + " should not match");
+                }
+                byte[] longer = Arrays.copyOf(digest, length + 1);
+                check(!DigestComparer.compareDigests(digest, longer), "digests of different lengths should not match");
+            }
+            byte[] digest = getDigest(32);
+            check(DigestComparer.compareDigests((byte[]) null, null), "two null digests should match");
+            check(!DigestComparer.compareDigests(digest, null) && !DigestComparer.compareDigests((byte[]) null, digest), "a null digest should not match");
+        });
+        runner.test("digestComparer.arrayOffsets", () -> {
+            byte[] digest = getDigest(32);
+            byte[] first = new byte[45];
+            byte[] second = new byte[40];
+            System.arraycopy(digest, 0, first, 13, 32);
+            System.arraycopy(digest, 0, second, 3, 32);
+            check(DigestComparer.compareDigests(first, 13, second, 3, 32), "equal digests at offsets should match");
+            check(DigestComparer.compareDigests(first, 14, second, 4, 31), "equal partial digests at offsets should match");
+            check(!DigestComparer.compareDigests(first, 12, second, 3, 32), "shifted digests should not match");
+            second[34] ^= 1;
+            check(!DigestComparer.compareDigests(first, 13, second, 3, 32), "different digests at offsets should not match");
+            check(DigestComparer.compareDigests(first, 0, second, 0, 0), "empty ranges should match");
+            expect(IndexOutOfBoundsException.class, () -> DigestComparer.compareDigests(first, 14, second, 3, 32));
+            expect(IndexOutOfBoundsException.class, () -> DigestComparer.compareDigests(first, -1, second, 3, 32));
+            expect(IndexOutOfBoundsException.class, () -> DigestComparer.compareDigests(first, 13, second, 3, -1));
+            expect(NullPointerException.class, () -> DigestComparer.compareDigests(null, 0, second, 0, 0));
+            expect(NullPointerException.class, () -> DigestComparer.compareDigests(first, 0, null, 0, 0));
+        });
+        runner.test("digestComparer.buffer", () -> {
+            byte[] digest = getDigest(37);
+            ByteBuffer direct = ByteBuffer.allocateDirect(42);
+            direct.position(5);
+            direct.put(digest);
+            direct.position(5);
+            ByteBuffer heap = ByteBuffer.wrap(Arrays.copyOf(digest, 40));
+            heap.limit(37);
+            ByteBuffer littleEndian = ByteBuffer.wrap(digest.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            check(DigestComparer.compareDigests(direct, heap), "equal direct and heap digests should match");
+            check(DigestComparer.compareDigests(heap, littleEndian), "digests of different byte orders should match");
+            check(direct.position() == 5 && heap.position() == 0, "the positions should not be changed");
+            for (int i = 0; i < digest.length; i++) {
+                ByteBuffer modified = ByteBuffer.wrap(digest.clone());
+                modified.put(i, (byte) (digest[i] ^ 0x40));
+                check(!DigestComparer.compareDigests(direct, modified), "a difference at byte " + i + " should not match");
+            }
+            heap.limit(36);
+            check(!DigestComparer.compareDigests(direct, heap), "digests of different lengths should not match");
+            check(DigestComparer.compareDigests((ByteBuffer) null, null), "two null digests should match");
+            check(!DigestComparer.compareDigests(direct, null), "a null digest should not match");
+        });
+        runner.test("digestComparer.stream", () -> {
+            for (int length : new int[] {1, 7, 8, 20, 32, 64, 100}) {
+                byte[] digest = getDigest(length);
+                byte[] data = Arrays.copyOf(digest, length + 5);
+                InputStream in = new ByteArrayInputStream(data);
+                check(DigestComparer.compareDigests(in, digest), "equal stream digests of " + length + " bytes should match");
+                check(in.available() == 5, "only the digest should be read from the stream");
+                check(DigestComparer.compareDigests(new SlowInputStream(data), digest), "equal digests read a byte at a time should match");
+                byte[] modified = digest.clone();
+                modified[length - 1] ^= 1;
+                check(!DigestComparer.compareDigests(new ByteArrayInputStream(modified), digest), "different stream digests should not match");
+                check(!DigestComparer.compareDigests(new ByteArrayInputStream(digest, 0, length - 1), digest), "truncated stream digests should not match");
+            }
+            check(!DigestComparer.compareDigests((InputStream) null, new byte[1]), "a null stream should not match");
+            check(!DigestComparer.compareDigests(new ByteArrayInputStream(new byte[0]), new byte[0]), "empty digests should not match");
+        });
+        runner.test("digestComparer.channel", () -> {
+            for (int length : new int[] {1, 7, 8, 20, 32, 64, 100}) {
+                byte[] digest = getDigest(length);
+                byte[] data = Arrays.copyOf(digest, length + 5);
+                ByteArrayInputStream in = new ByteArrayInputStream(data);
+                check(DigestComparer.compareDigests(Channels.newChannel(in), digest), "equal channel digests of " + length + " bytes should match");
+                check(in.available() == 5, "only the digest should be read from the channel");
+                byte[] modified = digest.clone();
+                modified[0] ^= (byte) 0x80;
+                check(!DigestComparer.compareDigests(Channels.newChannel(new ByteArrayInputStream(modified)), digest), "different channel digests should not match");
+                check(!DigestComparer.compareDigests(Channels.newChannel(new ByteArrayInputStream(digest, 0, length - 1)), digest), "truncated channel digests should not match");
+            }
+        });
+        runner.test("digestComparer.nonBlockingChannelRejected", () -> {
+            Pipe pipe = Pipe.open();
+            try {
+                pipe.sink().write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+                pipe.source().configureBlocking(false);
+                expect(IllegalArgumentException.class, () -> DigestComparer.compareDigests(pipe.source(), new byte[] {1, 2, 3, 4}));
+                pipe.source().configureBlocking(true);
+                check(DigestComparer.compareDigests(pipe.source(), new byte[] {1, 2, 3, 4}), "a blocking pipe digest should match");
+            } finally {
+                pipe.source().close();
+                pipe.sink().close();
+            }
+        });
+    }
+
+    static byte[] getDigest(int length) {
+        byte[] toret = new byte[length];
+        new Random(length).nextBytes(toret);
+        return toret;
+    }
+
+    private static final class SlowInputStream extends ByteArrayInputStream {
+        private SlowInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}
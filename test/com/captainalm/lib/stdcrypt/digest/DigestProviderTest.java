@@ -0,0 +1,181 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link DigestProvider} tests.
+ *
+ * @author Captain ALM
+ */
+public final class DigestProviderTest {
+    private DigestProviderTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("digestProvider.byteBuffer", () -> {
+            DigestProvider provider = new DigestProvider("SHA-256");
+            byte[] data = getData(1000);
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest(Arrays.copyOfRange(data, 10, 990));
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data);
+            for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(data), direct, ByteBuffer.wrap(data).asReadOnlyBuffer()}) {
+                buffer.limit(990).position(10);
+                check(Arrays.equals(provider.getDigestOf(buffer), expected), "buffer digest should match the remaining bytes");
+                check(buffer.position() == 990, "the position should be advanced to the limit");
+                buffer.position(10);
+                byte[] out = new byte[provider.getLength() + 4];
+                check(provider.digestInto(buffer, out, 2) == provider.getLength(), "the digest length should be returned");
+                check(Arrays.equals(Arrays.copyOfRange(out, 2, 2 + provider.getLength()), expected), "digest should be written at the offset");
+                check(out[0] == 0 && out[1] == 0 && out[out.length - 1] == 0, "bytes outside the digest should be untouched");
+                buffer.position(10);
+                expect(IndexOutOfBoundsException.class, () -> provider.digestInto(buffer, out, 5));
+                expect(IndexOutOfBoundsException.class, () -> provider.digestInto(buffer, out, -1));
+                check(buffer.position() == 10, "a digest that does not fit should not consume the buffer");
+            }
+            expect(NullPointerException.class, () -> provider.getDigestOf((ByteBuffer) null));
+            expect(NullPointerException.class, () -> provider.digestInto(null, new byte[32], 0));
+            expect(NullPointerException.class, () -> provider.digestInto(ByteBuffer.allocate(0), null, 0));
+        });
+        runner.test("digestProvider.digestAll", () -> {
+            for (boolean concurrent : new boolean[] {false, true}) {
+                DigestProvider provider = new DigestProvider("SHA-256", false, concurrent);
+                int length = provider.getLength();
+                for (int count : new int[] {0, 1, 7, DigestProvider.parallelBatchThreshold + 300}) {
+                    byte[] data = getData(count * 20 + 64);
+                    int[] offsets = new int[count];
+                    int[] lengths = new int[count];
+                    byte[] expected = new byte[count * length];
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    for (int i = 0; i < count; i++) {
+                        offsets[i] = i * 20;
+                        lengths[i] = i % 64;
+                        digest.update(data, offsets[i], lengths[i]);
+                        digest.digest(expected, i * length, length);
+                    }
+                    for (boolean parallel : new boolean[] {false, true}) {
+                        String name = count + " records" + ((parallel) ? " in parallel" : "") + ((concurrent) ? " concurrently" : "");
+                        byte[] out = new byte[expected.length + 3];
+                        check(provider.digestAll(data, offsets, lengths, out, 3, parallel) == expected.length, "the written length should match for " + name);
+                        check(Arrays.equals(Arrays.copyOfRange(out, 3, out.length), expected), "packed digests should match for " + name);
+
+                        ByteBuffer[] records = getRecords(data, offsets, lengths);
+                        out = new byte[expected.length + 3];
+                        check(provider.digestAll(records, out, 3, parallel) == expected.length, "the written length should match for " + name);
+                        check(Arrays.equals(Arrays.copyOfRange(out, 3, out.length), expected), "buffer digests should match for " + name);
+                        for (ByteBuffer record : records) check(!record.hasRemaining(), "records should be consumed for " + name);
+
+                        ByteBuffer heap = ByteBuffer.allocate(expected.length + 5);
+                        ByteBuffer direct = ByteBuffer.allocateDirect(expected.length + 5);
+                        for (ByteBuffer buffer : new ByteBuffer[] {heap, direct, ByteBuffer.wrap(new byte[expected.length + 5], 1, expected.length + 4).slice()}) {
+                            buffer.position(2);
+                            check(provider.digestAll(getRecords(data, offsets, lengths), buffer, parallel) == expected.length, "the written length should match for " + name);
+                            check(buffer.position() == 2 + expected.length, "the output position should be advanced for " + name);
+                            byte[] written = new byte[expected.length];
+                            ByteBuffer source = buffer.duplicate();
+                            source.position(2);
+                            source.get(written);
+                            check(Arrays.equals(written, expected), "digests written to a buffer should match for " + name);
+                        }
+                    }
+                }
+            }
+        });
+        runner.test("digestProvider.digestAllInvalid", () -> {
+            DigestProvider provider = new DigestProvider("SHA-256");
+            byte[] data = getData(100);
+            ByteBuffer[] records = new ByteBuffer[] {ByteBuffer.wrap(data), ByteBuffer.wrap(data)};
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(records, new byte[63], 0, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(records, new byte[64], 1, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(records, new byte[64], -1, false));
+            ByteBuffer small = ByteBuffer.allocate(63);
+            expect(BufferOverflowException.class, () -> provider.digestAll(records, small, false));
+            check(small.position() == 0 && records[0].position() == 0, "an overflow should write and consume nothing");
+            expect(NullPointerException.class, () -> provider.digestAll(new ByteBuffer[] {records[0], null}, new byte[64], 0, false));
+            expect(NullPointerException.class, () -> provider.digestAll(new ByteBuffer[] {records[0], null}, ByteBuffer.allocateDirect(64), false));
+            expect(NullPointerException.class, () -> provider.digestAll((ByteBuffer[]) null, new byte[64], 0, false));
+            expect(NullPointerException.class, () -> provider.digestAll(records, (byte[]) null, 0, false));
+            expect(IllegalArgumentException.class, () -> provider.digestAll(data, new int[2], new int[1], new byte[64], 0, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(data, new int[] {90}, new int[] {11}, new byte[32], 0, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(data, new int[] {-1}, new int[] {1}, new byte[32], 0, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(data, new int[] {0}, new int[] {-1}, new byte[32], 0, false));
+            expect(IndexOutOfBoundsException.class, () -> provider.digestAll(data, new int[] {0}, new int[] {1}, new byte[31], 0, false));
+        });
+        runner.test("digestProvider.digestFile", () -> {
+            DigestProvider provider = new DigestProvider("SHA-256");
+            Path file = Files.createTempFile("calmstdcrypt", ".bin");
+            try {
+                for (int size : new int[] {0, 1, 65537, DigestProvider.fileMappingWindowSize + 3}) {
+                    byte[] data = getData(size);
+                    Files.write(file, data);
+                    byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+                    check(Arrays.equals(provider.digestFile(file), expected), "file digest should match for " + size + " bytes");
+                    check(Arrays.equals(provider.digestFile(file, 4096), expected), "file digest mapped in several windows should match for " + size + " bytes");
+                }
+            } finally {
+                Files.delete(file);
+            }
+            expect(NoSuchFileException.class, () -> provider.digestFile(file));
+            expect(NullPointerException.class, () -> provider.digestFile(null));
+        });
+        runner.test("digestProvider.concurrent", () -> {
+            DigestProvider provider = new DigestProvider("SHA-256", false, true);
+            check(provider.isConcurrent() && provider.digestClonedForStreams(), "a concurrent provider should clone digests for streams");
+            check(!new DigestProvider("SHA-256").isConcurrent(), "a provider should not be concurrent by default");
+            check(((DigestProvider) provider.clone()).isConcurrent(), "a clone should stay concurrent");
+            int threadCount = 8;
+            Thread[] threads = new Thread[threadCount];
+            Throwable[] failures = new Throwable[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                int index = i;
+                threads[i] = new Thread(() -> {
+                    try {
+                        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+                        for (int j = 0; j < 200; j++) {
+                            byte[] data = getData(index * 1000 + j);
+                            if (!Arrays.equals(provider.getDigestOf(data), expected.digest(data))) throw new AssertionError("digest should match on thread " + index);
+                        }
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) thread.join();
+            for (Throwable failure : failures) if (failure != null) throw new AssertionError(failure);
+            DigestInputStream first = provider.getDigestInputStream(new ByteArrayInputStream(getData(10)));
+            DigestInputStream second = provider.getDigestInputStream(new ByteArrayInputStream(getData(20)));
+            check(first.getMessageDigest() != second.getMessageDigest(), "each stream should have its own digest");
+        });
+    }
+
+    private static ByteBuffer[] getRecords(byte[] data, int[] offsets, int[] lengths) {
+        ByteBuffer[] toret = new ByteBuffer[offsets.length];
+        for (int i = 0; i < toret.length; i++) toret[i] = ByteBuffer.wrap(data, offsets[i], lengths[i]);
+        return toret;
+    }
+
+    static byte[] getData(int size) {
+        byte[] toret = new byte[size];
+        new Random(size).nextBytes(toret);
+        return toret;
+    }
+}
@@ -0,0 +1,93 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link MultiDigestInputStream} and {@link MultiDigestOutputStream} tests.
+ *
+ * @author Captain ALM
+ */
+public final class MultiDigestStreamTest {
+    private static final String[] algorithms = new String[] {"MD5", "SHA-1", "SHA-256", "SHA-512"};
+
+    private MultiDigestStreamTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("multiDigestStream.input", () -> {
+            byte[] data = DigestProviderTest.getData(100000);
+            MultiDigestInputStream in = new MultiDigestInputStream(new ByteArrayInputStream(data), getProviders());
+            check(Arrays.equals(in.getAlgorithms(), algorithms), "the algorithms should be in the order of the providers");
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            read.write(in.read());
+            byte[] buffer = new byte[4093];
+            int length;
+            while ((length = in.read(buffer, 3, buffer.length - 3)) != -1) read.write(buffer, 3, length);
+            check(Arrays.equals(read.toByteArray(), data), "the data should pass through unchanged");
+            checkDigests(in.getDigests(), data);
+            checkDigests(in.getDigests(), new byte[0]);
+
+            in = new MultiDigestInputStream(new ByteArrayInputStream(data), getProviders());
+            check(in.skip(10) == 10, "bytes should be skipped");
+            in.read(new byte[100]);
+            checkDigests(in.getDigests(), Arrays.copyOfRange(data, 10, 110));
+            in.read(new byte[10]);
+            in.resetDigests();
+            in.read(new byte[5]);
+            checkDigests(in.getDigests(), Arrays.copyOfRange(data, 120, 125));
+            check(!in.markSupported(), "marking should not be supported");
+            MultiDigestInputStream unmarkable = in;
+            expect(IOException.class, unmarkable::reset);
+        });
+        runner.test("multiDigestStream.output", () -> {
+            byte[] data = DigestProviderTest.getData(100000);
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            MultiDigestOutputStream out = new MultiDigestOutputStream(written, getProviders());
+            check(Arrays.equals(out.getAlgorithms(), algorithms), "the algorithms should be in the order of the providers");
+            out.write(data[0]);
+            for (int i = 1; i < data.length; i += 4093) out.write(data, i, Math.min(4093, data.length - i));
+            out.flush();
+            check(Arrays.equals(written.toByteArray(), data), "the data should pass through unchanged");
+            checkDigests(out.getDigests(), data);
+            out.write(data, 0, 10);
+            out.resetDigests();
+            out.write(data, 10, 20);
+            checkDigests(out.getDigests(), Arrays.copyOfRange(data, 10, 30));
+            out.close();
+        });
+        runner.test("multiDigestStream.invalid", () -> {
+            expect(IllegalArgumentException.class, () -> new MultiDigestInputStream(new ByteArrayInputStream(new byte[0])));
+            expect(IllegalArgumentException.class, () -> new MultiDigestOutputStream(new ByteArrayOutputStream()));
+            expect(NullPointerException.class, () -> new MultiDigestInputStream(null, getProviders()));
+            expect(NullPointerException.class, () -> new MultiDigestOutputStream(null, getProviders()));
+            expect(NullPointerException.class, () -> new MultiDigestInputStream(new ByteArrayInputStream(new byte[0]), new DigestProvider("MD5"), null));
+            expect(NullPointerException.class, () -> new MultiDigestOutputStream(new ByteArrayOutputStream(), (DigestProvider[]) null));
+        });
+    }
+
+    private static DigestProvider[] getProviders() throws Exception {
+        DigestProvider[] toret = new DigestProvider[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) toret[i] = new DigestProvider(algorithms[i], true);
+        return toret;
+    }
+
+    private static void checkDigests(byte[][] digests, byte[] data) throws Exception {
+        check(digests.length == algorithms.length, "there should be a digest per provider");
+        for (int i = 0; i < algorithms.length; i++)
+            check(Arrays.equals(digests[i], MessageDigest.getInstance(algorithms[i]).digest(data)), algorithms[i] + " digest should match");
+    }
+}
@@ -0,0 +1,111 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link IncrementalTreeDigest} and {@link DigestCheckpoint} tests.
+ *
+ * @author Captain ALM
+ */
+public final class ResumableDigestTest {
+    private static final int chunkSize = TreeDigestProviderTest.chunkSize;
+
+    private ResumableDigestTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("resumableDigest.incremental", () -> {
+            TreeDigestProvider provider = new TreeDigestProvider("SHA-256", chunkSize);
+            for (int size : TreeDigestProviderTest.sizes) {
+                byte[] data = DigestProviderTest.getData(size);
+                byte[] expected = TreeDigestProviderTest.getTreeDigest(data, chunkSize);
+                check(Arrays.equals(provider.getDigestOf(data), expected), "the reference tree digest should match for " + size + " bytes");
+                IncrementalTreeDigest single = provider.getIncrementalDigest();
+                IncrementalTreeDigest array = provider.getIncrementalDigest();
+                IncrementalTreeDigest buffer = provider.getIncrementalDigest();
+                for (byte b : data) single.update(b);
+                for (int i = 0; i < size; i += 37) {
+                    int length = Math.min(37, size - i);
+                    array.update(data, i, length);
+                    ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                    direct.put(data, i, length).flip();
+                    buffer.update(direct);
+                    check(!direct.hasRemaining(), "the buffer should be consumed");
+                }
+                for (IncrementalTreeDigest digest : new IncrementalTreeDigest[] {single, array, buffer}) {
+                    check(digest.getOffset() == size, "the offset should match for " + size + " bytes");
+                    check(digest.getCheckpointOffset() == size / chunkSize * chunkSize, "the checkpoint offset should be at a chunk boundary for " + size + " bytes");
+                    check(Arrays.equals(digest.digest(), expected), "incremental tree digest should match for " + size + " bytes");
+                }
+            }
+            IncrementalTreeDigest digest = provider.getIncrementalDigest();
+            byte[] data = DigestProviderTest.getData(chunkSize * 3 + 5);
+            digest.update(data, 0, chunkSize + 1);
+            check(Arrays.equals(digest.digest(), TreeDigestProviderTest.getTreeDigest(Arrays.copyOf(data, chunkSize + 1), chunkSize)), "an intermediate digest should match");
+            digest.update(data, chunkSize + 1, data.length - chunkSize - 1);
+            check(Arrays.equals(digest.digest(), TreeDigestProviderTest.getTreeDigest(data, chunkSize)), "hashing should continue after a digest");
+            expect(NullPointerException.class, () -> digest.update(null, 0, 0));
+            expect(NullPointerException.class, () -> digest.update((ByteBuffer) null));
+            expect(IndexOutOfBoundsException.class, () -> digest.update(data, data.length - 1, 2));
+            expect(IndexOutOfBoundsException.class, () -> digest.update(data, -1, 1));
+        });
+        runner.test("resumableDigest.checkpoint", () -> {
+            TreeDigestProvider provider = new TreeDigestProvider("SHA-256", chunkSize);
+            byte[] data = DigestProviderTest.getData(chunkSize * 33 + 17);
+            byte[] expected = TreeDigestProviderTest.getTreeDigest(data, chunkSize);
+            for (int stop : new int[] {0, 1, chunkSize, chunkSize * 7 + 9, chunkSize * 32, data.length}) {
+                IncrementalTreeDigest digest = provider.getIncrementalDigest();
+                digest.update(data, 0, stop);
+                ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+                digest.writeCheckpoint(checkpoint);
+                IncrementalTreeDigest resumed = new TreeDigestProvider("SHA-256", chunkSize).resumeIncrementalDigest(new ByteArrayInputStream(checkpoint.toByteArray()));
+                check(resumed.getOffset() == digest.getCheckpointOffset(), "a resumed digest should continue from the checkpoint offset for " + stop + " bytes");
+                int offset = (int) resumed.getOffset();
+                resumed.update(data, offset, data.length - offset);
+                check(Arrays.equals(resumed.digest(), expected), "a resumed tree digest should match for a checkpoint at " + stop + " bytes");
+            }
+            IncrementalTreeDigest digest = provider.getIncrementalDigest();
+            digest.update(data, 0, chunkSize * 5);
+            ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+            digest.writeCheckpoint(checkpoint);
+            byte[] written = checkpoint.toByteArray();
+            expect(IOException.class, () -> new TreeDigestProvider("SHA-512", chunkSize).resumeIncrementalDigest(new ByteArrayInputStream(written)));
+            expect(IOException.class, () -> new TreeDigestProvider("SHA-256", chunkSize * 2).resumeIncrementalDigest(new ByteArrayInputStream(written)));
+            expect(EOFException.class, () -> provider.resumeIncrementalDigest(new ByteArrayInputStream(Arrays.copyOf(written, written.length - 1))));
+            expect(NullPointerException.class, () -> provider.resumeIncrementalDigest(null));
+            expect(NullPointerException.class, () -> digest.writeCheckpoint(null));
+        });
+        runner.test("resumableDigest.digestCheckpoint", () -> {
+            byte[] data = DigestProviderTest.getData(1000);
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, 400);
+            DigestCheckpoint checkpoint = new DigestCheckpoint(digest, 400);
+            digest.update((byte) 1);
+            check(checkpoint.getAlgorithm().equals("SHA-256") && checkpoint.getOffset() == 400, "the checkpoint properties should match");
+            for (int i = 0; i < 2; i++) {
+                MessageDigest restored = checkpoint.restore();
+                restored.update(data, (int) checkpoint.getOffset(), data.length - (int) checkpoint.getOffset());
+                check(Arrays.equals(restored.digest(), expected), "a restored digest should match");
+            }
+            expect(NullPointerException.class, () -> new DigestCheckpoint(null, 0));
+            expect(IllegalArgumentException.class, () -> new DigestCheckpoint(MessageDigest.getInstance("SHA-256"), -1));
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.captainalm.lib.stdcrypt.digest;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link TreeDigestProvider} tests.
+ *
+ * @author Captain ALM
+ */
+public final class TreeDigestProviderTest {
+    static final int chunkSize = 64;
+    static final int[] sizes = new int[] {0, 1, chunkSize - 1, chunkSize, chunkSize + 1, chunkSize * 5 + 3, chunkSize * 8, chunkSize * 33 + 17};
+
+    private TreeDigestProviderTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("treeDigestProvider.array", () -> {
+            TreeDigestProvider provider = new TreeDigestProvider("SHA-256", chunkSize);
+            check(provider.getAlgorithm().equals("SHA-256") && provider.getLength() == 32 && provider.getChunkSize() == chunkSize, "the provider properties should match");
+            for (int size : sizes) {
+                byte[] data = DigestProviderTest.getData(size);
+                check(Arrays.equals(provider.getDigestOf(data), getTreeDigest(data, chunkSize)), "tree digest should match for " + size + " bytes");
+            }
+            byte[] data = DigestProviderTest.getData(chunkSize * 3);
+            check(!Arrays.equals(provider.getDigestOf(data), MessageDigest.getInstance("SHA-256").digest(data)), "tree digest should differ from the plain digest");
+            check(!Arrays.equals(provider.getDigestOf(data), new TreeDigestProvider("SHA-256", chunkSize * 2).getDigestOf(data)), "tree digest should depend on the chunk size");
+            expect(NullPointerException.class, () -> provider.getDigestOf((byte[]) null));
+            expect(IllegalArgumentException.class, () -> new TreeDigestProvider("SHA-256", 0));
+            expect(NullPointerException.class, () -> new TreeDigestProvider((String) null, chunkSize));
+        });
+        runner.test("treeDigestProvider.byteBuffer", () -> {
+            TreeDigestProvider provider = new TreeDigestProvider("SHA-256", chunkSize, new ForkJoinPool(2));
+            for (int size : sizes) {
+                byte[] data = DigestProviderTest.getData(size + 4);
+                byte[] expected = getTreeDigest(Arrays.copyOfRange(data, 2, size + 2), chunkSize);
+                ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+                direct.put(data);
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(data), direct}) {
+                    buffer.limit(size + 2).position(2);
+                    check(Arrays.equals(provider.getDigestOf(buffer), expected), "buffer tree digest should match for " + size + " bytes");
+                    check(buffer.position() == size + 2, "the position should be advanced to the limit");
+                }
+            }
+            expect(NullPointerException.class, () -> provider.getDigestOf((ByteBuffer) null));
+        });
+        runner.test("treeDigestProvider.digestFile", () -> {
+            TreeDigestProvider provider = new TreeDigestProvider(new DigestProvider("SHA-256"), chunkSize);
+            Path file = Files.createTempFile("calmstdcrypt", ".bin");
+            try {
+                for (int size : sizes) {
+                    byte[] data = DigestProviderTest.getData(size);
+                    Files.write(file, data);
+                    check(Arrays.equals(provider.digestFile(file), getTreeDigest(data, chunkSize)), "file tree digest should match for " + size + " bytes");
+                }
+            } finally {
+                Files.delete(file);
+            }
+            expect(NullPointerException.class, () -> provider.digestFile(null));
+        });
+    }
+
+    /**
+     * Gets the tree digest of the specified data sequentially, as specified by {@link TreeDigestProvider}.
+     *
+     * @param data The data.
+     * @param chunkSize The chunk size.
+     * @return The tree digest.
+     * @throws NoSuchAlgorithmException SHA-256 does not exist.
+     */
+    static byte[] getTreeDigest(byte[] data, int chunkSize) throws NoSuchAlgorithmException {
+        int leaves = Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+        return getTreeDigest(MessageDigest.getInstance("SHA-256"), data, chunkSize, 0, leaves);
+    }
+
+    private static byte[] getTreeDigest(MessageDigest md, byte[] data, int chunkSize, int start, int end) {
+        if (end - start == 1) {
+            int offset = start * chunkSize;
+            md.update((byte) 0);
+            md.update(data, offset, Math.min(chunkSize, data.length - offset));
+            return md.digest();
+        }
+        int split = Integer.highestOneBit(end - start - 1);
+        byte[] left = getTreeDigest(md, data, chunkSize, start, start + split);
+        byte[] right = getTreeDigest(md, data, chunkSize, start + split, end);
+        md.update((byte) 1);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+}
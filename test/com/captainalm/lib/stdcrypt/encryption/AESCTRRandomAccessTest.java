@@ -0,0 +1,167 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the random access tests of {@link AESCTRPasswordRfc2898CipherFactory} and {@link AESCTRSeekableByteChannel}.
+ *
+ * @author Captain ALM
+ */
+public final class AESCTRRandomAccessTest {
+    private static final int payloadSize = 200000;
+    private static final int[] offsets = new int[] {0, 1, 15, 16, 17, 4095, 65535, 65536, 65537, payloadSize - 1, payloadSize};
+
+    private AESCTRRandomAccessTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("aesCTR.getCipherAtOffset", () -> {
+            AESCTRPasswordRfc2898CipherFactory sender = (AESCTRPasswordRfc2898CipherFactory) TestFactories.create("AES/CTR");
+            byte[] payload = TestFactories.getPayload(payloadSize);
+            CipherWithHeader encryptor = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+            byte[] cipherText = encryptor.getCipher().doFinal(payload);
+            check(cipherText.length == payload.length, "the cipher text should be the size of the plain text");
+            AESCTRPasswordRfc2898CipherFactory receiver = (AESCTRPasswordRfc2898CipherFactory) TestFactories.create("AES/CTR");
+            byte[] settings = receiver.getSettings();
+            for (int offset : offsets) {
+                byte[] expected = Arrays.copyOfRange(payload, offset, payload.length);
+                check(Arrays.equals(sender.getCipher(Cipher.DECRYPT_MODE, offset).doFinal(cipherText, offset, cipherText.length - offset), expected),
+                        "plain text from the settings should match at offset " + offset);
+                check(Arrays.equals(receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, encryptor.getHeader(), offset).doFinal(cipherText, offset, cipherText.length - offset), expected),
+                        "plain text from the header should match at offset " + offset);
+            }
+            check(Arrays.equals(receiver.getSettings(), settings), "decrypting from the header should not modify the factory");
+            expect(IllegalArgumentException.class, () -> sender.getCipher(Cipher.ENCRYPT_MODE, 0));
+            for (int opmode : new int[] {Cipher.ENCRYPT_MODE, Cipher.WRAP_MODE}) {
+                expect(IllegalArgumentException.class, () -> receiver.getCipherFromHeader(opmode, encryptor.getHeader()));
+                expect(IllegalArgumentException.class, () -> receiver.getCipherFromHeader(opmode, encryptor.getHeader(), (byte[]) null));
+                expect(IllegalArgumentException.class, () -> receiver.getCipherFromHeader(opmode, encryptor.getHeader(), 0));
+            }
+            expect(IllegalArgumentException.class, () -> sender.getCipher(Cipher.DECRYPT_MODE, -1));
+            expect(NullPointerException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, null, 0));
+            expect(CipherException.class, () -> new AESCTRPasswordRfc2898CipherFactory(TestFactories.password, new byte[] {1}, null).getCipher(Cipher.DECRYPT_MODE, 0));
+        });
+        runner.test("aesCTR.counterBlock", () -> {
+            byte[] initializationVector = new byte[16];
+            initializationVector[14] = (byte) 0xff;
+            initializationVector[15] = (byte) 0xff;
+            byte[] expected = new byte[16];
+            expected[13] = 1;
+            check(Arrays.equals(AESCTRPasswordRfc2898CipherFactory.getCounterBlock(initializationVector, 1), expected), "the counter should carry");
+            byte[] full = new byte[16];
+            Arrays.fill(full, (byte) 0xff);
+            check(Arrays.equals(AESCTRPasswordRfc2898CipherFactory.getCounterBlock(full, 1), new byte[16]), "the counter should wrap at 128 bits");
+            Arrays.fill(initializationVector, 8, 16, (byte) 0xff);
+            expected = new byte[16];
+            expected[7] = 1;
+            check(Arrays.equals(AESCTRPasswordRfc2898CipherFactory.getCounterBlock(initializationVector, 1), expected), "the counter should carry past 64 bits");
+        });
+        runner.test("aesCTR.seekableChannel", () -> {
+            byte[] payload = TestFactories.getPayload(payloadSize);
+            Path file = Files.createTempFile("calmstdcrypt", ".bin");
+            try {
+                Files.write(file, FramedCipherStreamTest.encryptFramed(TestFactories.create("AES/CTR"), payload));
+                checkChannel(file, (AESCTRPasswordRfc2898CipherFactory) TestFactories.create("AES/CTR"), payload);
+
+                AESCTRPasswordRfc2898CipherFactory factory = (AESCTRPasswordRfc2898CipherFactory) TestFactories.create("AES/CTR");
+                factory.setOutputSalt(false);
+                factory.setOutputInitializationVector(false);
+                Files.write(file, factory.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload));
+                checkChannel(file, factory, payload);
+            } finally {
+                Files.delete(file);
+            }
+        });
+        runner.test("aesCTR.pooledChannels", () -> {
+            for (boolean header : new boolean[] {true, false}) {
+                byte[][] payloads = new byte[][] {TestFactories.getPayload(10000), TestFactories.getPayload(10001)};
+                Path[] files = new Path[payloads.length];
+                SeekableByteChannel[] channels = new SeekableByteChannel[payloads.length];
+                try {
+                    ByteArrayOutputStream[] plainTexts = new ByteArrayOutputStream[payloads.length];
+                    for (int i = 0; i < payloads.length; i++) {
+                        AESCTRPasswordRfc2898CipherFactory factory = (AESCTRPasswordRfc2898CipherFactory) TestFactories.create("AES/CTR");
+                        factory.setOutputSalt(header);
+                        factory.setOutputInitializationVector(header);
+                        factory.setPoolingCiphers(true);
+                        files[i] = Files.createTempFile("calmstdcrypt", ".bin");
+                        Files.write(files[i], FramedCipherStreamTest.encryptFramed(factory, payloads[i]));
+                        channels[i] = new AESCTRSeekableByteChannel(FileChannel.open(files[i], StandardOpenOption.READ), factory);
+                        plainTexts[i] = new ByteArrayOutputStream();
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(100);
+                    boolean reading = true;
+                    while (reading) {
+                        reading = false;
+                        for (int i = 0; i < channels.length; i++) {
+                            buffer.clear();
+                            if (channels[i].read(buffer) == -1) continue;
+                            plainTexts[i].write(buffer.array(), 0, buffer.position());
+                            CryptoInstancePool.getCipher("AES/CTR/NoPadding", Cipher.DECRYPT_MODE).init(Cipher.DECRYPT_MODE, DerivedKeyCacheTest.getKey(i), new IvParameterSpec(new byte[16]));
+                            reading = true;
+                        }
+                    }
+                    for (int i = 0; i < payloads.length; i++)
+                        check(Arrays.equals(plainTexts[i].toByteArray(), payloads[i]), "channels read alternately with pooling should match" + ((header) ? " with a header" : ""));
+                } finally {
+                    for (SeekableByteChannel channel : channels) if (channel != null) channel.close();
+                    for (Path file : files) if (file != null) Files.delete(file);
+                    CryptoInstancePool.clear();
+                }
+            }
+        });
+    }
+
+    private static void checkChannel(Path file, AESCTRPasswordRfc2898CipherFactory factory, byte[] payload) throws Exception {
+        SeekableByteChannel channel = new AESCTRSeekableByteChannel(FileChannel.open(file, StandardOpenOption.READ), factory);
+        try {
+            check(channel.size() == payload.length, "the size should be the plain text size");
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                int offset = offsets[i];
+                channel.position(offset);
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (offset == payload.length) {
+                    check(read == -1, "reading at the end should return -1");
+                    continue;
+                }
+                check(read == Math.min(100, payload.length - offset), "a full buffer should be read at offset " + offset);
+                check(Arrays.equals(Arrays.copyOf(buffer.array(), read), Arrays.copyOfRange(payload, offset, offset + read)), "plain text should match at offset " + offset);
+                check(channel.position() == offset + read, "the position should be advanced");
+            }
+            channel.position(0);
+            ByteBuffer all = ByteBuffer.allocate(payload.length);
+            while (all.hasRemaining() && channel.read(all) != -1) ;
+            check(Arrays.equals(all.array(), payload), "sequential reads should match");
+            expect(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+            expect(NonWritableChannelException.class, () -> channel.truncate(0));
+            expect(IllegalArgumentException.class, () -> channel.position(-1));
+        } finally {
+            channel.close();
+        }
+        check(!channel.isOpen(), "the channel should be closed");
+        expect(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1)));
+    }
+}
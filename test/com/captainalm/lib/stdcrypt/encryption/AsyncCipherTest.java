@@ -0,0 +1,93 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link ICipherFactory#getCipherAsync(int, Executor)} tests,
+ * of both {@link AESPasswordRfc2898CipherFactory} and the default implementation.
+ *
+ * @author Captain ALM
+ */
+public final class AsyncCipherTest {
+    private AsyncCipherTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("async.roundTrip", () -> {
+            for (boolean cached : new boolean[] {true, false}) {
+                AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/CBC");
+                if (!cached) factory.setKeyCache(null);
+                checkRoundTrip(factory);
+                checkRoundTrip(TestFactories.wrap(factory));
+            }
+            check(KeyDerivationExecutor.getSharedInstance() == KeyDerivationExecutor.getSharedInstance(), "the key derivation executor should be shared");
+            AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/GCM");
+            byte[] payload = TestFactories.getPayload(1000);
+            byte[] cipherText = factory.getCipherAsync(Cipher.ENCRYPT_MODE).get().doFinal(payload);
+            check(Arrays.equals(factory.getCipherAsync(Cipher.DECRYPT_MODE).get().doFinal(cipherText), payload), "plain text from the shared executor should match");
+        });
+        runner.test("async.rejected", () -> {
+            Executor rejecting = command -> {
+                throw new RejectedExecutionException("rejected");
+            };
+            for (ICipherFactory factory : new ICipherFactory[] {getUncachedFactory(), TestFactories.create("AES/CBC"), TestFactories.wrap(TestFactories.create("AES/CBC"))}) {
+                CompletableFuture<Cipher> future = factory.getCipherAsync(Cipher.ENCRYPT_MODE, rejecting);
+                check(future.isCompletedExceptionally(), "a rejected derivation should complete the future exceptionally");
+                CompletionException e = expect(CompletionException.class, future::join);
+                check(e.getCause() instanceof RejectedExecutionException, "the rejection should be the cause");
+                expect(NullPointerException.class, () -> factory.getCipherAsync(Cipher.ENCRYPT_MODE, null));
+            }
+        });
+        runner.test("async.failure", () -> {
+            for (boolean cached : new boolean[] {true, false}) {
+                AESPasswordRfc2898CipherFactory failing = new AESPasswordRfc2898CipherFactory(TestFactories.password) {
+                    @Override
+                    protected SecretKeySpec deriveSecretKey(Settings current) throws InvalidKeySpecException {
+                        throw new InvalidKeySpecException("failing");
+                    }
+                };
+                if (!cached) failing.setKeyCache(null);
+                for (ICipherFactory factory : new ICipherFactory[] {failing, TestFactories.wrap(failing)}) {
+                    CompletionException e = expect(CompletionException.class, () -> factory.getCipherAsync(Cipher.ENCRYPT_MODE, Runnable::run).join());
+                    check(e.getCause() instanceof CipherException, "the cause should be a CipherException but was " + e.getCause());
+                }
+            }
+        });
+    }
+
+    private static void checkRoundTrip(ICipherFactory factory) throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        Executor executor = command -> {
+            executions.incrementAndGet();
+            new Thread(command).start();
+        };
+        byte[] payload = TestFactories.getPayload(1000);
+        byte[] cipherText = factory.getCipherAsync(Cipher.ENCRYPT_MODE, executor).get().doFinal(payload);
+        check(executions.get() == 1, "the key should be derived on the executor");
+        check(Arrays.equals(factory.getCipherAsync(Cipher.DECRYPT_MODE, executor).get().doFinal(cipherText), payload), "plain text should match");
+    }
+
+    private static AESPasswordRfc2898CipherFactory getUncachedFactory() {
+        AESPasswordRfc2898CipherFactory toret = TestFactories.create("AES/CBC");
+        toret.setKeyCache(null);
+        return toret;
+    }
+}
@@ -0,0 +1,124 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the tests of the authenticated modes and their {@link NonceGenerator}.
+ * Authenticated modes must reject any modification or truncation of the cipher text and never reuse a nonce under a key.
+ *
+ * @author Captain ALM
+ */
+public final class AuthenticatedCipherTest {
+    private AuthenticatedCipherTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        for (String mode : TestFactories.getModes()) {
+            if (!TestFactories.isAuthenticated(mode)) continue;
+            runner.test("authenticated.modified " + mode, () -> {
+                byte[] cipherText = CipherStreamEngineTest.encrypt(TestFactories.create(mode), TestFactories.getPayload(1000));
+                int headerLength = new SettingsParser(false).read(new ByteArrayInputStream(cipherText)).length;
+                for (int index : new int[] {headerLength, headerLength + 500, cipherText.length - 1}) {
+                    byte[] modified = cipherText.clone();
+                    modified[index] ^= 1;
+                    CipherStreamEngineTest.rejects(() -> CipherStreamEngineTest.decrypt(TestFactories.create(mode), modified));
+                    CipherStreamEngineTest.rejects(() -> FramedCipherStreamTest.readFramed(TestFactories.create(mode), modified));
+                }
+                for (int length : new int[] {headerLength, headerLength + 500, cipherText.length - 1}) {
+                    byte[] truncated = Arrays.copyOf(cipherText, length);
+                    CipherStreamEngineTest.rejects(() -> CipherStreamEngineTest.decrypt(TestFactories.create(mode), truncated));
+                    CipherStreamEngineTest.rejects(() -> FramedCipherStreamTest.readFramed(TestFactories.create(mode), truncated));
+                }
+            });
+            runner.test("authenticated.uniqueNonces " + mode, () -> {
+                AESPasswordRfc2898CipherFactory factory = TestFactories.create(mode);
+                byte[] payload = TestFactories.getPayload(100);
+                Set<ByteBuffer> nonces = new HashSet<>();
+                for (int i = 0; i < 1000; i++) {
+                    factory.getCipher(Cipher.ENCRYPT_MODE);
+                    check(nonces.add(ByteBuffer.wrap(factory.getInitializationVector())), "a nonce should not be reused");
+                }
+                Set<ByteBuffer> headers = ConcurrentHashMap.newKeySet();
+                Thread[] threads = new Thread[4];
+                Throwable[] failures = new Throwable[threads.length];
+                for (int i = 0; i < threads.length; i++) {
+                    int index = i;
+                    threads[i] = new Thread(() -> {
+                        try {
+                            for (int j = 0; j < 100; j++) {
+                                CipherWithHeader encryptor = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+                                if (!headers.add(ByteBuffer.wrap(encryptor.getHeader()))) throw new AssertionError("a header should not be reused");
+                                byte[] cipherText = encryptor.getCipher().doFinal(payload);
+                                Cipher decryptor = TestFactories.create(mode).getCipherFromHeader(Cipher.DECRYPT_MODE, encryptor.getHeader());
+                                if (!Arrays.equals(decryptor.doFinal(cipherText), payload)) throw new AssertionError("the header should hold the nonce of its cipher");
+                            }
+                        } catch (Throwable t) {
+                            failures[index] = t;
+                        }
+                    });
+                    threads[i].start();
+                }
+                for (Thread thread : threads) thread.join();
+                for (Throwable failure : failures) if (failure != null) throw new AssertionError(failure);
+            });
+            runner.test("authenticated.wrongNonce " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                byte[] cipherText = sender.getCipher(Cipher.ENCRYPT_MODE).doFinal(TestFactories.getPayload(100));
+                sender.getCipher(Cipher.ENCRYPT_MODE);
+                expect(AEADBadTagException.class, () -> sender.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText));
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                receiver.setSalt(sender.getSalt());
+                expect(CipherException.class, () -> receiver.getCipher(Cipher.DECRYPT_MODE));
+            });
+        }
+        runner.test("authenticated.explicitNonce AES/GCM", () -> {
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/GCM");
+            byte[] payload = TestFactories.getPayload(100);
+            CipherWithHeader encryptor = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+            byte[] cipherText = encryptor.getCipher().doFinal(payload);
+            byte[] header = encryptor.getHeader();
+            byte[] nonce = encryptor.getCipher().getIV();
+            AESPasswordRfc2898CipherFactory receiver = TestFactories.create("AES/GCM");
+            check(Arrays.equals(receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, header, nonce).doFinal(cipherText), payload), "a header with a nonce should decrypt");
+            check(Arrays.equals(sender.getCipher(Cipher.DECRYPT_MODE, nonce).doFinal(cipherText), payload), "a specified nonce should decrypt");
+            for (int opmode : new int[] {Cipher.ENCRYPT_MODE, Cipher.WRAP_MODE}) {
+                expect(IllegalArgumentException.class, () -> receiver.getCipherFromHeader(opmode, header));
+                expect(IllegalArgumentException.class, () -> receiver.getCipherFromHeader(opmode, header, nonce));
+                expect(IllegalArgumentException.class, () -> sender.getCipher(opmode, nonce));
+            }
+            ParallelCipherEngine engine = ParallelCipherEngineTest.getEngine(sender);
+            check(Arrays.equals(engine.decrypt(engine.encrypt(payload)), payload), "the parallel engine should still encrypt with its own nonces");
+        });
+        runner.test("authenticated.nonceGenerator", () -> {
+            NonceGenerator generator = new NonceGenerator(12);
+            check(generator.getNonceSize() == 12, "the nonce size should match");
+            SecureRandomSource randomSource = SecureRandomSource.getNonBlockingInstance();
+            byte[] first = generator.next(DerivedKeyCacheTest.getKey(1), randomSource);
+            byte[] second = generator.next(DerivedKeyCacheTest.getKey(1), randomSource);
+            check(first.length == 12 && !Arrays.equals(first, second), "nonces should not repeat under a key");
+            check(Arrays.equals(Arrays.copyOf(first, 4), Arrays.copyOf(second, 4)), "nonces should share the random base under a key");
+            byte[] other = generator.next(DerivedKeyCacheTest.getKey(2), randomSource);
+            check(!Arrays.equals(Arrays.copyOf(first, 4), Arrays.copyOf(other, 4)), "a new key should use a new random base");
+            expect(IllegalArgumentException.class, () -> new NonceGenerator(7));
+            expect(NullPointerException.class, () -> generator.next(null, randomSource));
+            expect(NullPointerException.class, () -> generator.next(DerivedKeyCacheTest.getKey(1), null));
+        });
+    }
+}
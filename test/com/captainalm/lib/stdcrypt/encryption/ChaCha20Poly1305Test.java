@@ -0,0 +1,106 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link ChaCha20Poly1305PasswordRfc2898CipherFactory} and {@link CipherFactorySelector} tests.
+ * The ChaCha20-Poly1305 tests only run where the runtime supports the cipher.
+ *
+ * @author Captain ALM
+ */
+public final class ChaCha20Poly1305Test {
+    private ChaCha20Poly1305Test() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        if (ChaCha20Poly1305PasswordRfc2898CipherFactory.isSupported()) {
+            runner.test("chaCha20Poly1305.roundTrip", () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create("ChaCha20-Poly1305");
+                byte[] payload = TestFactories.getPayload(1000);
+                CipherWithHeader encryptor = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+                byte[] cipherText = encryptor.getCipher().doFinal(payload);
+                check(cipherText.length == payload.length + 16, "the cipher text should carry a 16 byte tag");
+                check(sender.getInitializationVector().length == 12, "the nonce should be 12 bytes");
+                check(Arrays.equals(TestFactories.create("ChaCha20-Poly1305").getCipherFromHeader(Cipher.DECRYPT_MODE, encryptor.getHeader()).doFinal(cipherText), payload),
+                        "plain text should match");
+                AESPasswordRfc2898CipherFactory receiver = new ChaCha20Poly1305PasswordRfc2898CipherFactory(TestFactories.password, sender.getSalt(), new byte[16]);
+                receiver.setIterations(1000);
+                expect(CipherException.class, () -> receiver.getCipher(Cipher.DECRYPT_MODE));
+                check(!sender.getName().equals(TestFactories.create("AES/GCM").getName()), "the name should differ from AES GCM");
+            });
+            runner.test("chaCha20Poly1305.explicitNonce", () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create("ChaCha20-Poly1305");
+                byte[] payload = TestFactories.getPayload(100);
+                CipherWithHeader encryptor = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+                byte[] cipherText = encryptor.getCipher().doFinal(payload);
+                byte[] header = encryptor.getHeader();
+                byte[] nonce = sender.getInitializationVector();
+                check(Arrays.equals(sender.getCipher(Cipher.DECRYPT_MODE, nonce).doFinal(cipherText), payload), "a specified nonce should decrypt");
+                for (int opmode : new int[] {Cipher.ENCRYPT_MODE, Cipher.WRAP_MODE}) {
+                    expect(IllegalArgumentException.class, () -> sender.getCipherFromHeader(opmode, header));
+                    expect(IllegalArgumentException.class, () -> sender.getCipherFromHeader(opmode, header, nonce));
+                    expect(IllegalArgumentException.class, () -> sender.getCipher(opmode, nonce));
+                }
+                ParallelCipherEngine engine = ParallelCipherEngineTest.getEngine(sender);
+                check(Arrays.equals(engine.decrypt(engine.encrypt(payload)), payload), "the parallel engine should still encrypt with its own nonces");
+            });
+            runner.test("chaCha20Poly1305.sharedKeyCache", () -> {
+                DerivedKeyCache cache = new DerivedKeyCache();
+                byte[] salt = new byte[] {1, 2, 3, 4};
+                byte[] payload = TestFactories.getPayload(1000);
+                for (String mode : new String[] {"AES/GCM", "ChaCha20-Poly1305", "AES/GCM"}) {
+                    AESPasswordRfc2898CipherFactory factory = TestFactories.create(mode);
+                    factory.setKeyCache(cache);
+                    factory.setSalt(salt);
+                    byte[] cipherText = factory.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload);
+                    check(Arrays.equals(factory.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "plain text should match for " + mode + " sharing a cache");
+                }
+                check(cache.size() == 1 && cache.getMissCount() == 1, "the key should be derived once for both key algorithms");
+            });
+        } else {
+            runner.test("chaCha20Poly1305.unsupported", () -> {
+                expect(CipherException.class, () -> TestFactories.create("ChaCha20-Poly1305").getCipher(Cipher.ENCRYPT_MODE));
+                check(CipherFactorySelector.getAuthenticatedFactory(TestFactories.password) instanceof AESGCMPasswordRfc2898CipherFactory,
+                        "AES GCM should be selected without ChaCha20-Poly1305");
+            });
+        }
+        runner.test("cipherFactorySelector.select", () -> {
+            AESPasswordRfc2898CipherFactory working = TestFactories.create("AES/GCM");
+            AESPasswordRfc2898CipherFactory failing = new AESPasswordRfc2898CipherFactory(TestFactories.password) {
+                @Override
+                protected String getTransformation() {
+                    return "Unsupported/NONE/NoPadding";
+                }
+            };
+            check(CipherFactorySelector.measure(working, 1024, 10) > 0, "the throughput should be positive");
+            check(CipherFactorySelector.select(1024, 10, failing, working) == working, "failing candidates should be skipped");
+            expect(CipherException.class, () -> CipherFactorySelector.select(1024, 10, failing));
+            expect(CipherException.class, () -> CipherFactorySelector.select(1024, 10));
+            expect(IllegalArgumentException.class, () -> CipherFactorySelector.measure(working, 0, 10));
+            expect(IllegalArgumentException.class, () -> CipherFactorySelector.measure(working, 1024, 0));
+            expect(NullPointerException.class, () -> CipherFactorySelector.select(1024, 10, working, null));
+        });
+        runner.test("cipherFactorySelector.authenticatedFactory", () -> {
+            ICipherFactory factory = CipherFactorySelector.getAuthenticatedFactory(TestFactories.password);
+            check(factory instanceof AESGCMPasswordRfc2898CipherFactory || factory instanceof ChaCha20Poly1305PasswordRfc2898CipherFactory,
+                    "an authenticated factory should be selected");
+            check(CipherFactorySelector.getAuthenticatedFactory(TestFactories.password).getClass() == factory.getClass(), "the selection should be reused");
+            check(CipherFactorySelector.getAuthenticatedFactory(TestFactories.password) != factory, "a new factory should be returned");
+            byte[] payload = TestFactories.getPayload(1000);
+            byte[] cipherText = factory.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload);
+            check(Arrays.equals(factory.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "plain text should match");
+            expect(NullPointerException.class, () -> CipherFactorySelector.getAuthenticatedFactory(null));
+        });
+    }
+}
@@ -0,0 +1,157 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link CipherStreamEngine} and {@link ByteArrayPool} tests in each mode.
+ * Decryption uses a separate factory with only the password in common, which must not be modified by decrypting.
+ *
+ * @author Captain ALM
+ */
+public final class CipherStreamEngineTest {
+    /**
+     * The payload sizes used by the tests.
+     */
+    static final int[] sizes = new int[] {0, 1, 15, 16, 17, 8191, 65536, 200000};
+    /**
+     * The size of the payload larger than the engine buffers used by the tests.
+     */
+    static final int largeSize = 24 * 1024 * 1024 + 5;
+
+    private CipherStreamEngineTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        for (String mode : TestFactories.getModes()) {
+            runner.test("cipherStreamEngine.stream " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                byte[] settings = receiver.getSettings();
+                for (int size : sizes) {
+                    byte[] payload = TestFactories.getPayload(size);
+                    ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+                    long written = new CipherStreamEngine(sender).encrypt(new ByteArrayInputStream(payload), cipherText);
+                    check(written == cipherText.size(), "written count should match the cipher text size");
+                    ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+                    new CipherStreamEngine(receiver).decrypt(new ByteArrayInputStream(cipherText.toByteArray()), plainText);
+                    check(Arrays.equals(plainText.toByteArray(), payload), "plain text should match for " + size + " bytes");
+                }
+                check(Arrays.equals(receiver.getSettings(), settings), "decrypting should not modify the factory");
+            });
+            runner.test("cipherStreamEngine.channel " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                byte[] settings = receiver.getSettings();
+                for (int size : sizes) {
+                    byte[] payload = TestFactories.getPayload(size);
+                    ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+                    new CipherStreamEngine(sender).encrypt(Channels.newChannel(new ByteArrayInputStream(payload)), Channels.newChannel(cipherText));
+                    ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+                    new CipherStreamEngine(receiver).decrypt(Channels.newChannel(new ByteArrayInputStream(cipherText.toByteArray())), Channels.newChannel(plainText));
+                    check(Arrays.equals(plainText.toByteArray(), payload), "plain text should match for " + size + " bytes");
+                }
+                check(Arrays.equals(receiver.getSettings(), settings), "decrypting should not modify the factory");
+            });
+            runner.test("cipherStreamEngine.truncatedHeader " + mode, () -> {
+                byte[] cipherText = encrypt(TestFactories.create(mode), TestFactories.getPayload(100));
+                int headerLength = new SettingsParser(false).read(new ByteArrayInputStream(cipherText)).length;
+                for (int length = 0; length < headerLength; length++) {
+                    byte[] truncated = Arrays.copyOf(cipherText, length);
+                    rejects(() -> decrypt(TestFactories.create(mode), truncated));
+                }
+            });
+        }
+        runner.test("cipherStreamEngine.large AES/GCM", () -> {
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/GCM");
+            AESPasswordRfc2898CipherFactory receiver = TestFactories.create("AES/GCM");
+            byte[] payload = TestFactories.getPayload(largeSize);
+            byte[] cipherText = encrypt(sender, payload);
+            check(Arrays.equals(decrypt(receiver, cipherText), payload), "stream plain text should match");
+            ByteArrayOutputStream plainText = new ByteArrayOutputStream(largeSize);
+            new CipherStreamEngine(receiver).decrypt(Channels.newChannel(new ByteArrayInputStream(cipherText)), Channels.newChannel(plainText));
+            check(Arrays.equals(plainText.toByteArray(), payload), "channel plain text should match");
+        });
+        runner.test("cipherStreamEngine.sharedFactoryWithoutHeader", () -> {
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password, new byte[] {1, 2, 3, 4}, new byte[16]);
+            byte[] payload = TestFactories.getPayload(1000);
+            byte[] cipherText = encrypt(factory, payload);
+            check(cipherText.length == 1008, "no header should be written");
+            check(Arrays.equals(decrypt(factory, cipherText), payload), "plain text should match");
+        });
+        runner.test("cipherStreamEngine.nonBlockingChannelRejected", () -> {
+            CipherStreamEngine engine = new CipherStreamEngine(TestFactories.create("AES/CBC"));
+            Pipe pipe = Pipe.open();
+            try {
+                pipe.source().configureBlocking(false);
+                expect(IllegalArgumentException.class, () -> engine.decrypt(pipe.source(), Channels.newChannel(new ByteArrayOutputStream())));
+                pipe.sink().configureBlocking(false);
+                expect(IllegalArgumentException.class, () -> engine.encrypt(Channels.newChannel(new ByteArrayInputStream(new byte[1])), pipe.sink()));
+            } finally {
+                pipe.source().close();
+                pipe.sink().close();
+            }
+        });
+        runner.test("cipherStreamEngine.byteArrayPoolZeroes", () -> {
+            ByteArrayPool pool = new ByteArrayPool(4);
+            byte[] array = pool.acquire(1024);
+            Arrays.fill(array, (byte) 1);
+            pool.release(array);
+            for (byte b : array) check(b == 0, "released arrays should be zeroed");
+        });
+        runner.test("cipherStreamEngine.byteArrayPoolRetainedBytes", () -> {
+            ByteArrayPool pool = new ByteArrayPool(4, 4096);
+            byte[][] arrays = new byte[][] {pool.acquire(2048), pool.acquire(2048), pool.acquire(1024)};
+            for (byte[] array : arrays) pool.release(array);
+            check(pool.getRetainedBytes() == 4096, "only 4096 bytes should be retained");
+            check(pool.acquire(1024) != arrays[2], "arrays over the retained bytes limit should be discarded");
+            pool.acquire(2048);
+            check(pool.getRetainedBytes() == 2048, "acquiring should reduce the retained bytes");
+            ByteArrayPool shared = ByteArrayPool.getSharedInstance();
+            for (int i = 0; i < 8; i++) shared.release(new byte[16 * 1024 * 1024]);
+            check(shared.getRetainedBytes() <= ByteArrayPool.sharedMaximumRetainedBytes, "the shared pool should not exceed its retained bytes limit");
+        });
+    }
+
+    /**
+     * Checks that the action rejects tampered or truncated cipher text with a {@link CipherException} or {@link IOException}.
+     *
+     * @param action The action to run.
+     */
+    static void rejects(TestRunner.Test action) {
+        try {
+            action.run();
+        } catch (CipherException | IOException e) {
+            return;
+        } catch (Exception e) {
+            throw new AssertionError("expected a CipherException or IOException but got " + e, e);
+        }
+        throw new AssertionError("tampered cipher text was accepted");
+    }
+
+    static byte[] encrypt(ICipherFactory factory, byte[] payload) throws Exception {
+        ByteArrayOutputStream toret = new ByteArrayOutputStream();
+        new CipherStreamEngine(factory).encrypt(new ByteArrayInputStream(payload), toret);
+        return toret.toByteArray();
+    }
+
+    static byte[] decrypt(ICipherFactory factory, byte[] cipherText) throws Exception {
+        ByteArrayOutputStream toret = new ByteArrayOutputStream();
+        new CipherStreamEngine(factory).decrypt(new ByteArrayInputStream(cipherText), toret);
+        return toret.toByteArray();
+    }
+}
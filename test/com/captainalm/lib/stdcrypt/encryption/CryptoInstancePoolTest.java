@@ -0,0 +1,68 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+
+/**
+ * This class contains the {@link CryptoInstancePool} and opt-in cipher pooling tests.
+ *
+ * @author Captain ALM
+ */
+public final class CryptoInstancePoolTest {
+    private CryptoInstancePoolTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("cryptoInstancePool.perThread", () -> {
+            try {
+                Cipher cipher = CryptoInstancePool.getCipher("AES/CBC/PKCS5Padding", Cipher.ENCRYPT_MODE);
+                check(CryptoInstancePool.getCipher("AES/CBC/PKCS5Padding", Cipher.ENCRYPT_MODE) == cipher, "the same cipher should be pooled for a mode");
+                check(CryptoInstancePool.getCipher("AES/CBC/PKCS5Padding", Cipher.DECRYPT_MODE) != cipher, "each mode should have its own cipher");
+                check(CryptoInstancePool.getSecretKeyFactory("PBKDF2WithHmacSHA1") == CryptoInstancePool.getSecretKeyFactory("PBKDF2WithHmacSHA1"),
+                        "the same secret key factory should be pooled");
+                Cipher[] other = new Cipher[1];
+                Thread thread = new Thread(() -> {
+                    try {
+                        other[0] = CryptoInstancePool.getCipher("AES/CBC/PKCS5Padding", Cipher.ENCRYPT_MODE);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                thread.start();
+                thread.join();
+                check(other[0] != null && other[0] != cipher, "each thread should have its own cipher");
+                CryptoInstancePool.clear();
+                check(CryptoInstancePool.getCipher("AES/CBC/PKCS5Padding", Cipher.ENCRYPT_MODE) != cipher, "clearing should remove the pooled ciphers");
+            } finally {
+                CryptoInstancePool.clear();
+            }
+        });
+        runner.test("cryptoInstancePool.optIn", () -> {
+            try {
+                AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/CBC");
+                check(!factory.isPoolingCiphers(), "pooling should be disabled by default");
+                check(factory.getCipher(Cipher.ENCRYPT_MODE) != factory.getCipher(Cipher.ENCRYPT_MODE), "ciphers should not be pooled by default");
+                factory.setPoolingCiphers(true);
+                Cipher cipher = factory.getCipher(Cipher.ENCRYPT_MODE);
+                check(factory.getCipher(Cipher.ENCRYPT_MODE) == cipher, "ciphers should be pooled when enabled");
+                byte[] payload = TestFactories.getPayload(100);
+                byte[] cipherText = factory.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload);
+                check(Arrays.equals(factory.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "pooled ciphers should round trip");
+                check(factory.getCipherAsync(Cipher.ENCRYPT_MODE).get() != cipher, "asynchronous ciphers should not be pooled");
+                check(factory.getUnpooledCipher(Cipher.ENCRYPT_MODE) != cipher, "unpooled ciphers should not be pooled");
+                check(factory.getCipherWithHeader(Cipher.ENCRYPT_MODE).getCipher() != cipher, "ciphers with headers should not be pooled");
+            } finally {
+                CryptoInstancePool.clear();
+            }
+        });
+    }
+}
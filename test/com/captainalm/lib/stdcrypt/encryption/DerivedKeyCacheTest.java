@@ -0,0 +1,267 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link DerivedKeyCache} tests and the tests of its use by {@link AESPasswordRfc2898CipherFactory}.
+ *
+ * @author Captain ALM
+ */
+public final class DerivedKeyCacheTest {
+    private static final String algorithm = "PBKDF2WithHmacSHA1";
+
+    private DerivedKeyCacheTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("derivedKeyCache.putGet", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            byte[] salt = new byte[] {1, 2, 3};
+            SecretKeySpec key = getKey(1);
+            check(cache.get(algorithm, 1000, 256, "password", salt) == null, "an empty cache should miss");
+            cache.put(algorithm, 1000, 256, "password", salt, key);
+            salt[0] = 9;
+            check(cache.get(algorithm, 1000, 256, "password", new byte[] {1, 2, 3}) == key, "the cached key should be returned");
+            check(cache.get("PBKDF2WithHmacSHA256", 1000, 256, "password", new byte[] {1, 2, 3}) == null, "the algorithm should be part of the key");
+            check(cache.get(algorithm, 1001, 256, "password", new byte[] {1, 2, 3}) == null, "the iterations should be part of the key");
+            check(cache.get(algorithm, 1000, 128, "password", new byte[] {1, 2, 3}) == null, "the key size should be part of the key");
+            check(cache.get(algorithm, 1000, 256, "Password", new byte[] {1, 2, 3}) == null, "the password should be part of the key");
+            check(cache.get(algorithm, 1000, 256, "password", salt) == null, "the salt should be copied and be part of the key");
+            check(cache.getHitCount() == 1 && cache.getMissCount() == 6, "hits and misses should be counted");
+            cache.resetCounters();
+            check(cache.getHitCount() == 0 && cache.getMissCount() == 0, "counters should be reset");
+            expect(NullPointerException.class, () -> cache.put(algorithm, 1000, 256, "password", salt, null));
+            expect(NullPointerException.class, () -> cache.get(algorithm, 1000, 256, null, salt));
+            expect(IllegalArgumentException.class, () -> new DerivedKeyCache(0, 0));
+        });
+        runner.test("derivedKeyCache.leastRecentlyUsed", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache(2, 0);
+            cache.put(algorithm, 1000, 256, "a", new byte[1], getKey(1));
+            Thread.sleep(2);
+            cache.put(algorithm, 1000, 256, "b", new byte[1], getKey(2));
+            Thread.sleep(2);
+            cache.get(algorithm, 1000, 256, "a", new byte[1]);
+            Thread.sleep(2);
+            cache.put(algorithm, 1000, 256, "c", new byte[1], getKey(3));
+            check(cache.size() == 2 && cache.getEvictionCount() == 1, "one entry should be evicted");
+            check(cache.get(algorithm, 1000, 256, "b", new byte[1]) == null, "the least recently used entry should be evicted");
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1]) != null, "the recently used entry should be kept");
+        });
+        runner.test("derivedKeyCache.maximumAge", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache(4, 20);
+            cache.put(algorithm, 1000, 256, "a", new byte[1], getKey(1));
+            cache.put(algorithm, 1000, 256, "b", new byte[1], getKey(2));
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1]) != null, "a new entry should not be expired");
+            Thread.sleep(50);
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1]) == null, "an old entry should be expired");
+            cache.purgeExpired();
+            check(cache.size() == 0 && cache.getEvictionCount() == 2, "expired entries should be purged");
+        });
+        runner.test("derivedKeyCache.invalidateClear", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            cache.put(algorithm, 1000, 256, "a", new byte[1], getKey(1));
+            cache.put(algorithm, 1000, 256, "b", new byte[1], getKey(2));
+            cache.invalidate(algorithm, 1000, 256, "a", new byte[1]);
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1]) == null && cache.size() == 1, "the invalidated entry should be removed");
+            cache.clear();
+            check(cache.size() == 0, "clearing should remove every entry");
+        });
+        runner.test("derivedKeyCache.deriver", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            AtomicInteger derivations = new AtomicInteger();
+            SecretKeySpec key = getKey(1);
+            DerivedKeyCache.Deriver deriver = () -> {
+                derivations.incrementAndGet();
+                return key;
+            };
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1], deriver) == key, "the derived key should be returned");
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1], deriver) == key, "the cached key should be returned");
+            check(derivations.get() == 1, "the key should be derived once");
+            expect(NullPointerException.class, () -> cache.get(algorithm, 1000, 256, "b", new byte[1], () -> null));
+            check(cache.get(algorithm, 1000, 256, "b", new byte[1]) == null, "a failed derivation should not be cached");
+        });
+        runner.test("derivedKeyCache.coalesced", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            AtomicInteger derivations = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            SecretKeySpec key = getKey(1);
+            DerivedKeyCache.Deriver deriver = () -> {
+                derivations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return key;
+            };
+            int threadCount = 8;
+            SecretKeySpec[] results = new SecretKeySpec[threadCount];
+            Thread[] threads = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                int index = i;
+                threads[i] = new Thread(() -> {
+                    try {
+                        results[index] = cache.get(algorithm, 1000, 256, "a", new byte[1], deriver);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                threads[i].start();
+            }
+            started.await();
+            Thread.sleep(50);
+            release.countDown();
+            for (Thread thread : threads) thread.join();
+            for (SecretKeySpec result : results) check(result == key, "every caller should receive the derived key");
+            check(derivations.get() == 1, "concurrent derivations should be coalesced but " + derivations.get() + " were made");
+        });
+        runner.test("derivedKeyCache.coalescedFailure", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            AtomicInteger derivations = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            DerivedKeyCache.Deriver failing = () -> {
+                derivations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new InvalidKeySpecException("failing");
+            };
+            Throwable[] failures = new Throwable[2];
+            Thread[] threads = new Thread[failures.length];
+            for (int i = 0; i < threads.length; i++) {
+                int index = i;
+                threads[i] = new Thread(() -> {
+                    try {
+                        cache.get(algorithm, 1000, 256, "a", new byte[1], failing);
+                    } catch (Exception e) {
+                        failures[index] = e;
+                    }
+                });
+                threads[i].start();
+                if (i == 0) started.await();
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Thread thread : threads) thread.join();
+            for (Throwable failure : failures) check(failure instanceof InvalidKeySpecException, "every caller should receive the failure but got " + failure);
+            check(derivations.get() == 1, "the waiting caller should share the failed derivation");
+            check(cache.size() == 0, "a failed derivation should not be cached");
+            check(cache.get(algorithm, 1000, 256, "a", new byte[1], () -> getKey(2)) != null, "a later derivation should be attempted again");
+        });
+        runner.test("derivedKeyCache.coalescedAsync", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            AtomicInteger derivations = new AtomicInteger();
+            List<Runnable> queued = new ArrayList<>();
+            SecretKeySpec key = getKey(1);
+            DerivedKeyCache.Deriver deriver = () -> {
+                derivations.incrementAndGet();
+                return key;
+            };
+            CompletableFuture<SecretKeySpec> first = cache.getAsync(algorithm, 1000, 256, "a", new byte[1], deriver, queued::add);
+            CompletableFuture<SecretKeySpec> second = cache.getAsync(algorithm, 1000, 256, "a", new byte[1], deriver, queued::add);
+            check(queued.size() == 1, "concurrent asynchronous derivations should be coalesced");
+            check(!first.isDone() && !second.isDone(), "the futures should wait for the derivation");
+            queued.get(0).run();
+            check(first.get() == key && second.get() == key && derivations.get() == 1, "both futures should receive the derived key");
+            check(cache.getAsync(algorithm, 1000, 256, "a", new byte[1], deriver, queued::add).isDone() && queued.size() == 1, "a cached key should complete immediately");
+
+            CompletableFuture<SecretKeySpec> rejected = cache.getAsync(algorithm, 1000, 256, "b", new byte[1], deriver, command -> {
+                throw new RejectedExecutionException("rejected");
+            });
+            check(expect(ExecutionException.class, rejected::get).getCause() instanceof RejectedExecutionException, "a rejected derivation should fail the future");
+            CompletableFuture<SecretKeySpec> failed = cache.getAsync(algorithm, 1000, 256, "b", new byte[1], () -> {
+                throw new InvalidKeySpecException("failing");
+            }, Runnable::run);
+            check(expect(ExecutionException.class, failed::get).getCause() instanceof InvalidKeySpecException, "a failed derivation should fail the future");
+            check(cache.getAsync(algorithm, 1000, 256, "b", new byte[1], deriver, Runnable::run).get() == key, "a failed derivation should not be cached");
+            expect(NullPointerException.class, () -> cache.getAsync(algorithm, 1000, 256, "c", new byte[1], deriver, null));
+            expect(NullPointerException.class, () -> cache.getAsync(algorithm, 1000, 256, "c", new byte[1], null, Runnable::run));
+        });
+        runner.test("derivedKeyCache.coalescedFactory", () -> {
+            AtomicInteger derivations = new AtomicInteger();
+            AESPasswordRfc2898CipherFactory factory = getCountingFactory(derivations);
+            factory.setKeyCache(new DerivedKeyCache());
+            factory.setSalt(new byte[] {1, 2, 3, 4});
+            List<Runnable> queued = new ArrayList<>();
+            List<CompletableFuture<Cipher>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) futures.add(factory.getCipherAsync(Cipher.ENCRYPT_MODE, queued::add));
+            check(queued.size() == 1, "concurrent asynchronous ciphers should share one derivation");
+            queued.get(0).run();
+            for (CompletableFuture<Cipher> future : futures) check(future.get() != null, "every future should receive a cipher");
+            check(derivations.get() == 1, "the key should be derived once");
+        });
+        runner.test("derivedKeyCache.factory", () -> {
+            DerivedKeyCache cache = new DerivedKeyCache();
+            AtomicInteger derivations = new AtomicInteger();
+            AESPasswordRfc2898CipherFactory sender = getCountingFactory(derivations);
+            sender.setKeyCache(cache);
+            check(sender.getKeyCache() == cache, "the cache should be set");
+            byte[] payload = TestFactories.getPayload(100);
+            byte[] cipherText = sender.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload);
+            check(Arrays.equals(sender.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "plain text should match");
+            check(derivations.get() == 1 && cache.getHitCount() == 1, "the key should be derived once and then cached");
+
+            AESPasswordRfc2898CipherFactory receiver = getCountingFactory(derivations);
+            receiver.setKeyCache(cache);
+            receiver.setSalt(sender.getSalt());
+            receiver.setInitializationVector(sender.getInitializationVector());
+            check(Arrays.equals(receiver.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "a factory sharing the cache should decrypt");
+            check(derivations.get() == 1, "a factory sharing the cache should reuse the key");
+
+            sender.setPassword("other password");
+            check(cache.size() == 0, "changing the password should invalidate the previous key");
+            sender.getCipher(Cipher.ENCRYPT_MODE);
+            check(derivations.get() == 2, "changing the password should derive a new key");
+
+            sender.setKeyCache(null);
+            sender.getCipher(Cipher.ENCRYPT_MODE);
+            sender.getCipher(Cipher.ENCRYPT_MODE);
+            check(derivations.get() == 4, "every cipher should derive the key without a cache");
+        });
+    }
+
+    static AESPasswordRfc2898CipherFactory getCountingFactory(AtomicInteger derivations) {
+        AESPasswordRfc2898CipherFactory toret = new AESPasswordRfc2898CipherFactory(TestFactories.password) {
+            @Override
+            protected SecretKeySpec deriveSecretKey(Settings current) throws NoSuchAlgorithmException, InvalidKeySpecException {
+                derivations.incrementAndGet();
+                return super.deriveSecretKey(current);
+            }
+        };
+        toret.setIterations(1000);
+        return toret;
+    }
+
+    static SecretKeySpec getKey(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return new SecretKeySpec(key, "AES");
+    }
+}
@@ -0,0 +1,184 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the round trip tests of the framed cipher streams in each mode.
+ * Decryption uses a separate factory with only the password in common, which must not be modified by decrypting.
+ *
+ * @author Captain ALM
+ */
+public final class FramedCipherStreamTest {
+    private FramedCipherStreamTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        for (String mode : TestFactories.getModes()) {
+            runner.test("framedCipherStream.stream " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                byte[] settings = receiver.getSettings();
+                for (int size : CipherStreamEngineTest.sizes) {
+                    byte[] payload = TestFactories.getPayload(size);
+                    byte[] cipherText = encryptFramed(sender, payload);
+                    try (InputStream in = new FramedCipherInputStream(new ByteArrayInputStream(cipherText), receiver)) {
+                        check(Arrays.equals(readAll(in, 7), payload), "plain text should match for " + size + " bytes");
+                    }
+                    try (InputStream in = new FramedCipherInputStream(new ByteArrayInputStream(cipherText), receiver)) {
+                        ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+                        int b;
+                        while ((b = in.read()) != -1) plainText.write(b);
+                        check(Arrays.equals(plainText.toByteArray(), payload), "single byte reads should match for " + size + " bytes");
+                    }
+                    check(Arrays.equals(CipherStreamEngineTest.decrypt(receiver, cipherText), payload), "the engine should decrypt framed cipher text of " + size + " bytes");
+                }
+                check(Arrays.equals(receiver.getSettings(), settings), "decrypting should not modify the factory");
+            });
+            runner.test("framedCipherStream.channel " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                byte[] settings = receiver.getSettings();
+                for (int size : CipherStreamEngineTest.sizes) {
+                    byte[] payload = TestFactories.getPayload(size);
+                    byte[] cipherText = encryptFramed(sender, payload);
+                    try (ReadableByteChannel channel = new FramedCipherReadableByteChannel(Channels.newChannel(new ByteArrayInputStream(cipherText)), receiver)) {
+                        check(Arrays.equals(readAll(channel, 4096), payload), "plain text should match for " + size + " bytes");
+                    }
+                }
+                check(Arrays.equals(receiver.getSettings(), settings), "decrypting should not modify the factory");
+            });
+            runner.test("framedCipherStream.truncatedHeader " + mode, () -> {
+                byte[] cipherText = encryptFramed(TestFactories.create(mode), TestFactories.getPayload(100));
+                int headerLength = new SettingsParser(false).read(new ByteArrayInputStream(cipherText)).length;
+                for (int length = 0; length < headerLength; length++) {
+                    byte[] truncated = Arrays.copyOf(cipherText, length);
+                    CipherStreamEngineTest.rejects(() -> readFramed(TestFactories.create(mode), truncated));
+                }
+            });
+        }
+        runner.test("framedCipherStream.nonBlockingChannel", () -> {
+            byte[] payload = TestFactories.getPayload(1000);
+            byte[] cipherText = encryptFramed(TestFactories.create("AES/CBC"), payload);
+            Pipe pipe = Pipe.open();
+            ReadableByteChannel channel = new FramedCipherReadableByteChannel(pipe.source(), TestFactories.create("AES/CBC"));
+            try {
+                pipe.source().configureBlocking(false);
+                ByteBuffer buffer = ByteBuffer.allocate(4096);
+                check(channel.read(buffer) == 0, "nothing should be read before the header arrives");
+                pipe.sink().write(ByteBuffer.wrap(cipherText, 0, 3));
+                check(channel.read(buffer) == 0, "nothing should be read from a partial header");
+                pipe.sink().write(ByteBuffer.wrap(cipherText, 3, cipherText.length - 3));
+                pipe.sink().close();
+                ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+                while (channel.read(buffer) != -1) {
+                    plainText.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                check(Arrays.equals(plainText.toByteArray(), payload), "plain text should match");
+                channel.close();
+                check(!channel.isOpen(), "the channel should be closed");
+                expect(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1)));
+            } finally {
+                channel.close();
+                pipe.sink().close();
+            }
+        });
+        runner.test("framedCipherStream.pooledCiphers", () -> {
+            for (boolean header : new boolean[] {true, false}) {
+                AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/CBC");
+                factory.setOutputSalt(header);
+                factory.setOutputInitializationVector(header);
+                factory.setPoolingCiphers(true);
+                try {
+                    byte[][] payloads = new byte[][] {TestFactories.getPayload(10000), TestFactories.getPayload(10001)};
+                    InputStream[] streams = new InputStream[payloads.length];
+                    ByteArrayOutputStream[] plainTexts = new ByteArrayOutputStream[payloads.length];
+                    for (int i = 0; i < payloads.length; i++) {
+                        streams[i] = new FramedCipherInputStream(new ByteArrayInputStream(encryptFramed(factory, payloads[i])), factory);
+                        plainTexts[i] = new ByteArrayOutputStream();
+                    }
+                    byte[] buffer = new byte[100];
+                    boolean reading = true;
+                    while (reading) {
+                        reading = false;
+                        for (int i = 0; i < streams.length; i++) {
+                            int read = streams[i].read(buffer);
+                            if (read == -1) continue;
+                            plainTexts[i].write(buffer, 0, read);
+                            factory.getCipher(Cipher.DECRYPT_MODE);
+                            reading = true;
+                        }
+                    }
+                    for (int i = 0; i < payloads.length; i++) {
+                        streams[i].close();
+                        check(Arrays.equals(plainTexts[i].toByteArray(), payloads[i]), "streams read alternately with pooling should match" + ((header) ? " with a header" : ""));
+                    }
+                } finally {
+                    CryptoInstancePool.clear();
+                }
+            }
+        });
+        runner.test("framedCipherStream.large AES/GCM", () -> {
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/GCM");
+            AESPasswordRfc2898CipherFactory receiver = TestFactories.create("AES/GCM");
+            byte[] payload = TestFactories.getPayload(CipherStreamEngineTest.largeSize);
+            byte[] cipherText = encryptFramed(sender, payload);
+            check(Arrays.equals(readFramed(receiver, cipherText), payload), "stream plain text should match");
+            try (ReadableByteChannel channel = new FramedCipherReadableByteChannel(Channels.newChannel(new ByteArrayInputStream(cipherText)), receiver)) {
+                check(Arrays.equals(readAll(channel, 65536), payload), "channel plain text should match");
+            }
+        });
+    }
+
+    static byte[] encryptFramed(ICipherFactory factory, byte[] payload) throws Exception {
+        ByteArrayOutputStream toret = new ByteArrayOutputStream();
+        try (OutputStream out = new FramedCipherOutputStream(toret, factory)) {
+            for (int i = 0; i < payload.length; i += 5000) out.write(payload, i, Math.min(5000, payload.length - i));
+        }
+        return toret.toByteArray();
+    }
+
+    static byte[] readFramed(ICipherFactory factory, byte[] cipherText) throws Exception {
+        try (InputStream in = new FramedCipherInputStream(new ByteArrayInputStream(cipherText), factory)) {
+            return readAll(in, 65536);
+        }
+    }
+
+    static byte[] readAll(InputStream in, int readSize) throws Exception {
+        ByteArrayOutputStream toret = new ByteArrayOutputStream();
+        byte[] buffer = new byte[readSize];
+        int read;
+        while ((read = in.read(buffer)) != -1) toret.write(buffer, 0, read);
+        return toret.toByteArray();
+    }
+
+    static byte[] readAll(ReadableByteChannel channel, int readSize) throws Exception {
+        ByteArrayOutputStream toret = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(readSize);
+        while (channel.read(buffer) != -1) {
+            toret.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return toret.toByteArray();
+    }
+}
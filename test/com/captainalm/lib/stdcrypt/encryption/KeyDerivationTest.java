@@ -0,0 +1,177 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the tests of the configurable key derivation parameters of {@link AESPasswordRfc2898CipherFactory},
+ * including the limits applied to the parameters of untrusted headers.
+ *
+ * @author Captain ALM
+ */
+public final class KeyDerivationTest {
+    private KeyDerivationTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("keyDerivation.algorithms", () -> {
+            byte[] payload = TestFactories.getPayload(100);
+            for (String algorithm : new String[] {"PBKDF2WithHmacSHA1", "PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512"}) {
+                for (int keySize : new int[] {128, 256}) {
+                    AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/CBC");
+                    sender.setKeyDerivationAlgorithm(algorithm);
+                    sender.setKeySize(keySize);
+                    CipherWithHeader cipherWithHeader = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+                    byte[] cipherText = cipherWithHeader.getCipher().doFinal(payload);
+                    AESPasswordRfc2898CipherFactory receiver = new AESPasswordRfc2898CipherFactory(TestFactories.password);
+                    check(Arrays.equals(receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, cipherWithHeader.getHeader()).doFinal(cipherText), payload),
+                            "plain text should match for " + algorithm + " with " + keySize + " bits");
+                    receiver.setSettings(sender.getSettings());
+                    check(receiver.getKeyDerivationAlgorithm().equals(algorithm) && receiver.getKeySize() == keySize && receiver.getIterations() == 1000,
+                            "key derivation parameters should be loaded from the settings");
+                }
+            }
+        });
+        runner.test("keyDerivation.defaultsNotEncoded", () -> {
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password, new byte[] {1, 2, 3, 4}, new byte[16]);
+            check((factory.getSettings()[0] & 8) == 0, "default key derivation parameters should not be encoded");
+            factory.setIterations(3000);
+            check((factory.getSettings()[0] & 8) == 8, "other key derivation parameters should be encoded");
+        });
+        runner.test("keyDerivation.invalidParameters", () -> {
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password);
+            expect(IllegalArgumentException.class, () -> factory.setKeyDerivationAlgorithm("PBKDF2WithHmacMD5"));
+            expect(IllegalArgumentException.class, () -> factory.setIterations(0));
+            expect(IllegalArgumentException.class, () -> factory.setKeySize(12));
+            expect(IllegalArgumentException.class, () -> factory.setMaximumIterations(0));
+            expect(IllegalArgumentException.class, () -> factory.setMaximumKeySize(4));
+        });
+        runner.test("keyDerivation.calibrateIterations", () -> {
+            int iterations = AESPasswordRfc2898CipherFactory.calibrateIterations("PBKDF2WithHmacSHA256", 256, 5);
+            check(iterations >= 1, "calibrated iterations should be at least 1");
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password);
+            check(factory.calibrateIterations(5) == factory.getIterations(), "calibrated iterations should be set");
+            expect(IllegalArgumentException.class, () -> factory.calibrateIterations(0));
+            expect(CipherException.class, () -> AESPasswordRfc2898CipherFactory.calibrateIterations("PBKDF2WithHmacNone", 256, 5));
+        });
+        runner.test("keyDerivation.headerLimits", () -> {
+            byte[] header = getHeader(TestFactories.create("AES/CBC"));
+            byte[] iterations = setKeyDerivation(header, Integer.MAX_VALUE, 256);
+            byte[] keySize = setKeyDerivation(header, 1000, 65528);
+            AESPasswordRfc2898CipherFactory receiver = new AESPasswordRfc2898CipherFactory(TestFactories.password);
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, iterations));
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, keySize));
+            expect(CipherException.class, () -> receiver.setSettings(iterations));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(iterations, 0, iterations.length));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(keySize, 0, keySize.length));
+
+            byte[] raised = setKeyDerivation(header, 2000000, 256);
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, setKeyDerivation(header, 1000, 1024)));
+            receiver.setMaximumIterations(1000);
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, raised));
+            expect(CipherException.class, () -> new SettingsParser(false, 1, 1000, 256).offer(raised, 0, raised.length));
+            check(new SettingsParser(false, 1, 2000000, 256).offer(raised, 0, raised.length) == raised.length, "raised maximum should be accepted by the parser");
+            expect(IllegalArgumentException.class, () -> new SettingsParser(false, 1, 0, 256));
+            expect(IllegalArgumentException.class, () -> new SettingsParser(false, 1, 1000, 0));
+        });
+        runner.test("keyDerivation.localParametersAccepted", () -> {
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/CBC");
+            AESPasswordRfc2898CipherFactory receiver = TestFactories.create("AES/CBC");
+            sender.setMaximumIterations(10);
+            receiver.setMaximumIterations(10);
+            byte[] payload = TestFactories.getPayload(100);
+            CipherWithHeader cipherWithHeader = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+            byte[] cipherText = cipherWithHeader.getCipher().doFinal(payload);
+            check(Arrays.equals(receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, cipherWithHeader.getHeader()).doFinal(cipherText), payload),
+                    "iterations equal to the local settings should be accepted above the maximum");
+        });
+        runner.test("keyDerivation.aboveDefaultMaximum", () -> {
+            int iterations = SettingsParser.defaultMaximumIterations + 1;
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password) {
+                @Override
+                protected SecretKeySpec deriveSecretKey(Settings current) {
+                    return DerivedKeyCacheTest.getKey(current.iterations);
+                }
+            };
+            factory.setIterations(iterations);
+            factory.setOutputSalt(true);
+            factory.setOutputInitializationVector(true);
+            byte[] payload = TestFactories.getPayload(10000);
+            check(Arrays.equals(CipherStreamEngineTest.decrypt(factory, CipherStreamEngineTest.encrypt(factory, payload)), payload),
+                    "a stream above the default maximum iterations should round trip");
+            check(Arrays.equals(FramedCipherStreamTest.readFramed(factory, FramedCipherStreamTest.encryptFramed(factory, payload)), payload),
+                    "a framed stream above the default maximum iterations should round trip");
+            ParallelCipherEngine engine = ParallelCipherEngineTest.getEngine(factory);
+            check(Arrays.equals(engine.decrypt(engine.encrypt(payload)), payload), "a parallel container above the default maximum iterations should round trip");
+            factory.readSettings(new ByteArrayInputStream(factory.getSettings()));
+            check(factory.getIterations() == iterations, "settings above the default maximum iterations should be read back");
+
+            AESCTRPasswordRfc2898CipherFactory ctrFactory = new AESCTRPasswordRfc2898CipherFactory(TestFactories.password) {
+                @Override
+                protected SecretKeySpec deriveSecretKey(Settings current) {
+                    return DerivedKeyCacheTest.getKey(current.iterations);
+                }
+            };
+            ctrFactory.setIterations(iterations);
+            ctrFactory.setOutputSalt(true);
+            ctrFactory.setOutputInitializationVector(true);
+            Path file = Files.createTempFile("calmstdcrypt", ".bin");
+            try {
+                Files.write(file, FramedCipherStreamTest.encryptFramed(ctrFactory, payload));
+                try (AESCTRSeekableByteChannel channel = new AESCTRSeekableByteChannel(FileChannel.open(file, StandardOpenOption.READ), ctrFactory)) {
+                    check(Arrays.equals(FramedCipherStreamTest.readAll(channel, 1000), payload), "a seekable channel above the default maximum iterations should read");
+                }
+            } finally {
+                Files.delete(file);
+            }
+        });
+        runner.test("keyDerivation.requireLocal", () -> {
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/CBC");
+            AESPasswordRfc2898CipherFactory receiver = TestFactories.create("AES/CBC");
+            receiver.setRequireLocalKeyDerivation(true);
+            check(receiver.isRequiringLocalKeyDerivation(), "local key derivation should be required");
+            byte[] payload = TestFactories.getPayload(100);
+            CipherWithHeader cipherWithHeader = sender.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+            byte[] cipherText = cipherWithHeader.getCipher().doFinal(payload);
+            check(Arrays.equals(receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, cipherWithHeader.getHeader()).doFinal(cipherText), payload),
+                    "matching key derivation parameters should be accepted");
+            byte[] header = cipherWithHeader.getHeader();
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, setKeyDerivation(header, 1001, 256)));
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, setKeyDerivation(header, 1000, 128)));
+            byte[] algorithm = header.clone();
+            algorithm[algorithm.length - 7] = 2;
+            expect(CipherException.class, () -> receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, algorithm));
+            receiver.setRequireLocalKeyDerivation(false);
+            receiver.getCipherFromHeader(Cipher.DECRYPT_MODE, algorithm);
+        });
+    }
+
+    private static byte[] getHeader(AESPasswordRfc2898CipherFactory factory) throws CipherException {
+        byte[] toret = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE).getHeader();
+        check((toret[0] & 8) == 8, "the header should contain the key derivation parameters");
+        return toret;
+    }
+
+    private static byte[] setKeyDerivation(byte[] header, int iterations, int keySize) {
+        byte[] toret = header.clone();
+        ByteBuffer.wrap(toret, toret.length - 6, 6).putInt(iterations).putShort((short) keySize);
+        return toret;
+    }
+}
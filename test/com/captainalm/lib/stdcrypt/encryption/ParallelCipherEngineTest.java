@@ -0,0 +1,148 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link ParallelCipherEngine} tests in each mode.
+ * Every mode must reject any truncated container and authenticated modes must reject any modification.
+ *
+ * @author Captain ALM
+ */
+public final class ParallelCipherEngineTest {
+    /**
+     * The chunk size used by the tests.
+     */
+    static final int chunkSize = 1024;
+    private static final int[] sizes = new int[] {0, 1, chunkSize - 1, chunkSize, chunkSize + 1, chunkSize * 3, chunkSize * 20 + 7};
+
+    private ParallelCipherEngineTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        for (String mode : TestFactories.getModes()) {
+            runner.test("parallel.roundTrip " + mode, () -> {
+                AESPasswordRfc2898CipherFactory sender = TestFactories.create(mode);
+                AESPasswordRfc2898CipherFactory receiver = TestFactories.create(mode);
+                byte[] settings = receiver.getSettings();
+                ParallelCipherEngine encryptor = getEngine(sender);
+                ParallelCipherEngine decryptor = getEngine(receiver);
+                for (int size : sizes) {
+                    byte[] payload = TestFactories.getPayload(size);
+                    check(Arrays.equals(decryptor.decrypt(encryptor.encrypt(payload)), payload), "plain text should match for " + size + " bytes");
+                }
+                check(Arrays.equals(receiver.getSettings(), settings), "decrypting should not modify the factory");
+            });
+            runner.test("parallel.randomBase " + mode, () -> {
+                ParallelCipherEngine engine = getEngine(TestFactories.create(mode));
+                byte[] payload = TestFactories.getPayload(chunkSize * 2);
+                check(!Arrays.equals(engine.encrypt(payload), engine.encrypt(payload)), "encrypting twice should not repeat the cipher text");
+            });
+            runner.test("parallel.truncated " + mode, () -> {
+                ParallelCipherEngine sender = getEngine(TestFactories.create(mode));
+                ParallelCipherEngine receiver = getEngine(TestFactories.create(mode));
+                for (int size : new int[] {0, chunkSize * 3, chunkSize * 3 + 5}) {
+                    byte[] container = sender.encrypt(TestFactories.getPayload(size));
+                    for (int length = 0; length < container.length; length++) {
+                        byte[] truncated = Arrays.copyOf(container, length);
+                        expect(CipherException.class, () -> receiver.decrypt(truncated));
+                    }
+                }
+            });
+            runner.test("parallel.zeroLengthChunk " + mode, () -> {
+                ParallelCipherEngine sender = getEngine(TestFactories.create(mode));
+                byte[] container = sender.encrypt(TestFactories.getPayload(chunkSize * 2));
+                int offset = getFirstChunkOffset(container);
+                byte[] forged = Arrays.copyOf(container, offset + 4);
+                expect(CipherException.class, () -> getEngine(TestFactories.create(mode)).decrypt(forged));
+            });
+            runner.test("parallel.oversizedChunks " + mode, () -> {
+                ParallelCipherEngine receiver = getEngine(TestFactories.create(mode));
+                ParallelCipherEngine larger = new ParallelCipherEngine(TestFactories.create(mode), chunkSize * 2, ForkJoinPool.commonPool());
+                byte[] container = larger.encrypt(TestFactories.getPayload(chunkSize * 3));
+                expect(CipherException.class, () -> receiver.decrypt(container));
+
+                int offset = getFirstChunkOffset(container);
+                byte[] forged = Arrays.copyOf(container, offset + 4);
+                ByteBuffer.wrap(forged, offset - 4, 8).putInt(Integer.MAX_VALUE - 1024).putInt(Integer.MAX_VALUE - 1024);
+                expect(CipherException.class, () -> receiver.decrypt(forged));
+                ByteBuffer.wrap(forged, offset - 4, 4).putInt(chunkSize);
+                expect(CipherException.class, () -> receiver.decrypt(forged));
+            });
+            if (!TestFactories.isAuthenticated(mode)) continue;
+            runner.test("parallel.modified " + mode, () -> {
+                ParallelCipherEngine sender = getEngine(TestFactories.create(mode));
+                ParallelCipherEngine receiver = getEngine(TestFactories.create(mode));
+                byte[] container = sender.encrypt(TestFactories.getPayload(chunkSize * 3 + 5));
+                for (int index = getFirstChunkOffset(container) + 4; index < container.length; index += 97) {
+                    byte[] modified = container.clone();
+                    modified[index] ^= 1;
+                    expect(CipherException.class, () -> receiver.decrypt(modified));
+                }
+            });
+            runner.test("parallel.forgedFinal " + mode, () -> {
+                ParallelCipherEngine sender = getEngine(TestFactories.create(mode));
+                ParallelCipherEngine receiver = getEngine(TestFactories.create(mode));
+                byte[] container = sender.encrypt(TestFactories.getPayload(chunkSize * 3 + 5));
+                int offset = getFirstChunkOffset(container);
+                int length = ByteBuffer.wrap(container, offset, 4).getInt();
+                check(length > 0, "the first chunk should not be final");
+                byte[] forged = Arrays.copyOf(container, offset + 4 + length);
+                ByteBuffer.wrap(forged, offset, 4).putInt(~length);
+                expect(CipherException.class, () -> receiver.decrypt(forged));
+            });
+        }
+        runner.test("parallel.withoutHeader", () -> {
+            AESPasswordRfc2898CipherFactory factory = new AESPasswordRfc2898CipherFactory(TestFactories.password, new byte[] {1, 2, 3, 4}, new byte[16]);
+            ParallelCipherEngine engine = getEngine(factory);
+            byte[] payload = TestFactories.getPayload(chunkSize * 5 + 3);
+            check(Arrays.equals(engine.decrypt(engine.encrypt(payload)), payload), "plain text should match");
+        });
+        runner.test("parallel.deriveOncePerContainer", () -> {
+            AtomicInteger derivations = new AtomicInteger();
+            AESPasswordRfc2898CipherFactory sender = TestFactories.create("AES/CBC");
+            AESPasswordRfc2898CipherFactory receiver = new AESPasswordRfc2898CipherFactory(TestFactories.password) {
+                @Override
+                protected SecretKeySpec deriveSecretKey(Settings current) throws NoSuchAlgorithmException, InvalidKeySpecException {
+                    derivations.incrementAndGet();
+                    return super.deriveSecretKey(current);
+                }
+            };
+            receiver.setOutputSalt(true);
+            receiver.setOutputInitializationVector(true);
+            receiver.setKeyCache(null);
+            byte[] payload = TestFactories.getPayload(chunkSize * 20 + 7);
+            check(Arrays.equals(getEngine(receiver).decrypt(getEngine(sender).encrypt(payload)), payload), "plain text should match");
+            check(derivations.get() == 1, "the key should be derived once per container but was derived " + derivations.get() + " times");
+        });
+        runner.test("parallel.requiresInitializationVectors", () -> {
+            expect(IllegalArgumentException.class, () -> new ParallelCipherEngine(TestFactories.wrap(TestFactories.create("AES/CBC"))));
+        });
+    }
+
+    private static int getFirstChunkOffset(byte[] container) throws Exception {
+        int toret = new SettingsParser(false).read(new ByteArrayInputStream(container)).length;
+        toret += 1 + (container[toret] & 0xff);
+        return toret + 4;
+    }
+
+    static ParallelCipherEngine getEngine(ICipherFactory factory) {
+        return new ParallelCipherEngine(factory, chunkSize, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,70 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link SecureRandomSource} tests.
+ *
+ * @author Captain ALM
+ */
+public final class SecureRandomSourceTest {
+    private SecureRandomSourceTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("secureRandomSource.sharedInstances", () -> {
+            SecureRandomSource nonBlocking = SecureRandomSource.getNonBlockingInstance();
+            check(SecureRandomSource.getNonBlockingInstance() == nonBlocking, "the non-blocking source should be shared");
+            check(!nonBlocking.isThreadLocal(), "the non-blocking source should not be thread local");
+            check(nonBlocking.getSecureRandom() == nonBlocking.getSecureRandom(), "the non-blocking source should reuse its secure random");
+            SecureRandomSource threadLocal = SecureRandomSource.getThreadLocalInstance();
+            check(SecureRandomSource.getThreadLocalInstance() == threadLocal, "the thread local source should be shared");
+            check(threadLocal.isThreadLocal(), "the thread local source should be thread local");
+            SecureRandom random = threadLocal.getSecureRandom();
+            check(threadLocal.getSecureRandom() == random, "a thread should reuse its secure random");
+            SecureRandom[] other = new SecureRandom[1];
+            Thread thread = new Thread(() -> other[0] = threadLocal.getSecureRandom());
+            thread.start();
+            thread.join();
+            check(other[0] != null && other[0] != random, "each thread should have its own secure random");
+            byte[] bytes = new byte[32];
+            threadLocal.nextBytes(bytes);
+            check(!Arrays.equals(bytes, new byte[32]), "random bytes should be generated");
+            expect(NullPointerException.class, () -> nonBlocking.nextBytes(null));
+            expect(NullPointerException.class, () -> SecureRandomSource.of(null));
+        });
+        runner.test("secureRandomSource.factory", () -> {
+            AtomicInteger uses = new AtomicInteger();
+            SecureRandomSource source = SecureRandomSource.of(new SecureRandom() {
+                @Override
+                public void nextBytes(byte[] bytes) {
+                    uses.incrementAndGet();
+                    super.nextBytes(bytes);
+                }
+            });
+            check(!source.isThreadLocal(), "a specified source should not be thread local");
+            AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/CBC");
+            check(factory.getRandomSource() == SecureRandomSource.getNonBlockingInstance(), "the non-blocking source should be the default");
+            factory.setRandomSource(source);
+            check(factory.getRandomSource() == source, "the random source should be set");
+            byte[] payload = TestFactories.getPayload(100);
+            byte[] cipherText = factory.getCipher(Cipher.ENCRYPT_MODE).doFinal(payload);
+            check(uses.get() == 2, "the salt and initialization vector should be generated from the source");
+            check(Arrays.equals(factory.getCipher(Cipher.DECRYPT_MODE).doFinal(cipherText), payload), "plain text should match");
+            expect(NullPointerException.class, () -> factory.setRandomSource(null));
+        });
+    }
+}
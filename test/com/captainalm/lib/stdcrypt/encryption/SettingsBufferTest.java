@@ -0,0 +1,105 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the tests of the {@link ByteBuffer} settings serialization of {@link ICipherFactory},
+ * of both {@link AESPasswordRfc2898CipherFactory} and the default implementation.
+ *
+ * @author Captain ALM
+ */
+public final class SettingsBufferTest {
+    private SettingsBufferTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("settingsBuffer.write", () -> {
+            AESPasswordRfc2898CipherFactory source = getFactory();
+            for (ICipherFactory factory : new ICipherFactory[] {source, TestFactories.wrap(source)}) {
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+                    buffer.position(3);
+                    int written = factory.writeSettings(buffer);
+                    check(written == factory.getSettingsLength() && buffer.position() == 3 + written, "the position should be advanced by the settings length");
+                    check(Arrays.equals(getBytes(buffer, 3, written), factory.getSettings()), "written settings should match");
+                    int writtenNoSecrets = factory.writeSettingsNoSecrets(buffer);
+                    check(writtenNoSecrets == factory.getSettingsNoSecretsLength() && buffer.position() == 3 + written + writtenNoSecrets, "the position should be advanced by the settings length");
+                    check(Arrays.equals(getBytes(buffer, 3 + written, writtenNoSecrets), factory.getSettingsNoSecrets()), "written settings without secrets should match");
+                }
+                expect(NullPointerException.class, () -> factory.writeSettings(null));
+                expect(NullPointerException.class, () -> factory.writeSettingsNoSecrets(null));
+            }
+        });
+        runner.test("settingsBuffer.overflow", () -> {
+            AESPasswordRfc2898CipherFactory source = getFactory();
+            for (ICipherFactory factory : new ICipherFactory[] {source, TestFactories.wrap(source)}) {
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(factory.getSettingsLength() + 1), ByteBuffer.allocateDirect(factory.getSettingsLength() + 1)}) {
+                    buffer.position(2);
+                    expect(BufferOverflowException.class, () -> factory.writeSettings(buffer));
+                    check(buffer.position() == 2, "an overflow should not advance the position");
+                    check(Arrays.equals(getBytes(buffer, 0, buffer.capacity()), new byte[buffer.capacity()]), "an overflow should write nothing");
+                    buffer.limit(2 + factory.getSettingsNoSecretsLength() - 1);
+                    expect(BufferOverflowException.class, () -> factory.writeSettingsNoSecrets(buffer));
+                    check(buffer.position() == 2, "an overflow should not advance the position");
+                    check(Arrays.equals(getBytes(buffer, 0, buffer.capacity()), new byte[buffer.capacity()]), "an overflow should write nothing");
+                }
+            }
+        });
+        runner.test("settingsBuffer.read", () -> {
+            byte[] settings = getFactory().getSettings();
+            for (boolean wrapped : new boolean[] {false, true}) {
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(settings.length + 5), ByteBuffer.allocateDirect(settings.length + 5)}) {
+                    AESPasswordRfc2898CipherFactory target = new AESPasswordRfc2898CipherFactory("other");
+                    ICipherFactory factory = (wrapped) ? TestFactories.wrap(target) : target;
+                    buffer.position(2);
+                    buffer.put(settings);
+                    buffer.position(2);
+                    factory.readSettings(buffer);
+                    check(buffer.position() == 2 + settings.length, "the position should be advanced past the settings only");
+                    check(Arrays.equals(factory.getSettings(), settings), "read settings should match");
+                }
+            }
+        });
+        runner.test("settingsBuffer.readInvalid", () -> {
+            byte[] settings = getFactory().getSettings();
+            for (boolean wrapped : new boolean[] {false, true}) {
+                AESPasswordRfc2898CipherFactory target = new AESPasswordRfc2898CipherFactory("other", new byte[] {9}, null);
+                ICipherFactory factory = (wrapped) ? TestFactories.wrap(target) : target;
+                byte[] original = factory.getSettings();
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(settings, 0, settings.length - 1), ByteBuffer.wrap(new byte[] {16, 0, 0}), ByteBuffer.allocate(0)}) {
+                    int position = buffer.position();
+                    expect(CipherException.class, () -> factory.readSettings(buffer));
+                    check(buffer.position() == position, "invalid settings should not advance the position");
+                    check(Arrays.equals(factory.getSettings(), original), "invalid settings should not modify the factory");
+                }
+                expect(NullPointerException.class, () -> factory.readSettings((ByteBuffer) null));
+            }
+        });
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int index, int length) {
+        byte[] toret = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.limit(index + length).position(index);
+        source.get(toret);
+        return toret;
+    }
+
+    private static AESPasswordRfc2898CipherFactory getFactory() {
+        AESPasswordRfc2898CipherFactory toret = new AESPasswordRfc2898CipherFactory(TestFactories.password, new byte[] {1, 2, 3, 4}, new byte[16]);
+        toret.setKeyDerivationAlgorithm("PBKDF2WithHmacSHA256");
+        toret.setIterations(1000);
+        return toret;
+    }
+}
@@ -0,0 +1,207 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+import static com.captainalm.lib.stdcrypt.TestRunner.expect;
+
+/**
+ * This class contains the {@link SettingsParser} state machine tests.
+ *
+ * @author Captain ALM
+ */
+public final class SettingsParserTest {
+    private SettingsParserTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("settingsParser.emptyFlags", () -> {
+            SettingsParser parser = new SettingsParser(false);
+            check(!parser.isComplete() && parser.getBytesNeeded() == 1, "parser should need the flag byte");
+            check(parser.offer(ByteBuffer.wrap(new byte[] {0})), "flags of 0 should complete");
+            check(parser.getBytesNeeded() == 0, "a complete parser should need no bytes");
+            check(Arrays.equals(parser.getSettings(), new byte[] {0}), "settings should be the flag byte");
+        });
+        runner.test("settingsParser.allFields", () -> {
+            AESPasswordRfc2898CipherFactory factory = getFactory();
+            factory.setIterations(1000);
+            byte[] settings = factory.getSettings();
+            check((settings[0] & 15) == 15, "factory settings should contain every field");
+            SettingsParser parser = new SettingsParser(true);
+            check(parser.offer(ByteBuffer.wrap(settings)), "settings should complete");
+            check(Arrays.equals(parser.getSettings(), settings), "parsed settings should match");
+            check(parser.getSettingsBuffer().remaining() == settings.length, "settings buffer should match");
+        });
+        runner.test("settingsParser.byteAtATime", () -> {
+            byte[] settings = getFactory().getSettingsNoSecrets();
+            SettingsParser parser = new SettingsParser(false);
+            for (int i = 0; i < settings.length; i++) {
+                check(!parser.isComplete() && parser.getBytesNeeded() > 0, "parser completed early at " + i);
+                check(parser.offer(settings, i, 1) == 1, "byte " + i + " should be consumed");
+            }
+            check(parser.isComplete() && Arrays.equals(parser.getSettings(), settings), "parsed settings should match");
+        });
+        runner.test("settingsParser.stopsAtEnd", () -> {
+            byte[] settings = getFactory().getSettingsNoSecrets();
+            byte[] data = Arrays.copyOf(settings, settings.length + 3);
+            SettingsParser parser = new SettingsParser(false);
+            check(parser.offer(data, 0, data.length) == settings.length, "only the settings should be consumed");
+            check(parser.offer(data, settings.length, 3) == 0, "a complete parser should consume nothing");
+
+            ByteArrayInputStream in = new ByteArrayInputStream(data);
+            check(Arrays.equals(new SettingsParser(false).read(in), settings), "stream settings should match");
+            check(in.available() == 3, "reading from a stream should not read past the settings");
+
+            ByteArrayInputStream channelIn = new ByteArrayInputStream(data);
+            check(Arrays.equals(new SettingsParser(false).read(Channels.newChannel(channelIn)), settings), "channel settings should match");
+            check(channelIn.available() == 3, "reading from a channel should not read past the settings");
+        });
+        runner.test("settingsParser.factoryReadSettings", () -> {
+            AESPasswordRfc2898CipherFactory source = getFactory();
+            source.setIterations(1000);
+            byte[] settings = source.getSettings();
+            byte[] data = Arrays.copyOf(settings, settings.length + 3);
+            for (boolean wrapped : new boolean[] {false, true}) {
+                AESPasswordRfc2898CipherFactory target = new AESPasswordRfc2898CipherFactory("other");
+                ICipherFactory factory = (wrapped) ? TestFactories.wrap(target) : target;
+                ByteArrayInputStream in = new ByteArrayInputStream(data);
+                factory.readSettings(in);
+                check(Arrays.equals(factory.getSettings(), settings) && in.available() == 3, "stream settings should be read without reading past them");
+                target = new AESPasswordRfc2898CipherFactory("other");
+                ICipherFactory channelFactory = (wrapped) ? TestFactories.wrap(target) : target;
+                ByteArrayInputStream channelIn = new ByteArrayInputStream(data);
+                channelFactory.readSettings(Channels.newChannel(channelIn));
+                check(Arrays.equals(channelFactory.getSettings(), settings) && channelIn.available() == 3, "channel settings should be read without reading past them");
+                expect(EOFException.class, () -> factory.readSettings(new ByteArrayInputStream(settings, 0, settings.length - 1)));
+                expect(EOFException.class, () -> factory.readSettings(Channels.newChannel(new ByteArrayInputStream(settings, 0, settings.length - 1))));
+                expect(CipherException.class, () -> factory.readSettings(new ByteArrayInputStream(new byte[] {16})));
+                expect(NullPointerException.class, () -> factory.readSettings((InputStream) null));
+                expect(NullPointerException.class, () -> factory.readSettings((ReadableByteChannel) null));
+            }
+        });
+        runner.test("settingsParser.shortReads", () -> {
+            byte[] settings = getFactory().getSettingsNoSecrets();
+            byte[] data = Arrays.copyOf(settings, settings.length + 3);
+            InputStream in = new ByteArrayInputStream(data) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 1));
+                }
+            };
+            check(Arrays.equals(new SettingsParser(false).read(in), settings), "settings read a byte at a time should match");
+            check(in.available() == 3, "reading a byte at a time should not read past the settings");
+            ReadableByteChannel channel = new ReadableByteChannel() {
+                private int position;
+
+                @Override
+                public int read(ByteBuffer dst) {
+                    if (position == data.length) return -1;
+                    if (!dst.hasRemaining()) return 0;
+                    dst.put(data[position++]);
+                    return 1;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            check(Arrays.equals(new SettingsParser(false).read(channel), settings), "settings read a byte at a time from a channel should match");
+            ByteBuffer remaining = ByteBuffer.allocate(4);
+            while (channel.read(remaining) != -1) ;
+            check(remaining.position() == 3, "reading a byte at a time from a channel should not read past the settings");
+        });
+        runner.test("settingsParser.nonBlockingChannel", () -> {
+            byte[] settings = getFactory().getSettingsNoSecrets();
+            Pipe pipe = Pipe.open();
+            try {
+                pipe.source().configureBlocking(false);
+                expect(IllegalArgumentException.class, () -> new SettingsParser(false).read(pipe.source()));
+                expect(IllegalArgumentException.class, () -> getFactory().readSettings(pipe.source()));
+                SettingsParser parser = new SettingsParser(false);
+                ByteBuffer buffer = ByteBuffer.allocate(settings.length + 8);
+                for (int i = 0; i < settings.length; i += 5) {
+                    pipe.sink().write(ByteBuffer.wrap(settings, i, Math.min(5, settings.length - i)));
+                    while (pipe.source().read(buffer) > 0) {
+                        buffer.flip();
+                        parser.offer(buffer);
+                        buffer.compact();
+                    }
+                }
+                check(parser.isComplete() && Arrays.equals(parser.getSettings(), settings), "settings offered from a non-blocking channel should match");
+            } finally {
+                pipe.source().close();
+                pipe.sink().close();
+            }
+        });
+        runner.test("settingsParser.bytesNeeded", () -> {
+            SettingsParser parser = new SettingsParser(false);
+            parser.offer(new byte[] {6}, 0, 1);
+            check(parser.getBytesNeeded() == 1, "salt length should be needed");
+            parser.offer(new byte[] {3}, 0, 1);
+            check(parser.getBytesNeeded() == 3, "salt should be needed");
+            parser.offer(new byte[] {1, 2}, 0, 2);
+            check(parser.getBytesNeeded() == 1, "the rest of the salt should be needed");
+            parser.offer(new byte[] {3, 2}, 0, 2);
+            check(parser.getBytesNeeded() == 2, "initialization vector should be needed");
+            check(!parser.offer(ByteBuffer.wrap(new byte[] {9})), "settings should not be complete");
+            check(parser.offer(ByteBuffer.wrap(new byte[] {8})), "settings should be complete");
+            check(Arrays.equals(parser.getSettings(), new byte[] {6, 3, 1, 2, 3, 2, 9, 8}), "parsed settings should match");
+        });
+        runner.test("settingsParser.reset", () -> {
+            SettingsParser parser = new SettingsParser(false);
+            parser.offer(new byte[] {2, 1, 5}, 0, 3);
+            check(parser.isComplete(), "settings should be complete");
+            parser.reset();
+            check(!parser.isComplete() && parser.getBytesNeeded() == 1, "reset parser should need the flag byte");
+            expect(IllegalStateException.class, parser::getSettings);
+            parser.offer(new byte[] {4, 1, 7}, 0, 3);
+            check(Arrays.equals(parser.getSettings(), new byte[] {4, 1, 7}), "settings after reset should match");
+        });
+        runner.test("settingsParser.incomplete", () -> {
+            SettingsParser parser = new SettingsParser(false);
+            parser.offer(new byte[] {2, 4, 1}, 0, 3);
+            expect(IllegalStateException.class, parser::getSettings);
+            expect(EOFException.class, () -> new SettingsParser(false).read(new ByteArrayInputStream(new byte[] {2, 4, 1})));
+            expect(EOFException.class, () -> new SettingsParser(false).read(new ByteArrayInputStream(new byte[0])));
+        });
+        runner.test("settingsParser.rejectsSecrets", () -> {
+            byte[] settings = getFactory().getSettings();
+            expect(CipherException.class, () -> new SettingsParser(false).offer(settings, 0, settings.length));
+            expect(CipherException.class, () -> new SettingsParser(true, 2).offer(new byte[] {1, 0, 0, 0, 3}, 0, 5));
+            expect(CipherException.class, () -> new SettingsParser(true).offer(new byte[] {1, 0, 0, 0, 0}, 0, 5));
+            expect(IllegalArgumentException.class, () -> new SettingsParser(true, 0));
+        });
+        runner.test("settingsParser.rejectsInvalid", () -> {
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {16}, 0, 1));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {2, 0}, 0, 2));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {4, 0}, 0, 2));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {8, 0, 0, 0, 0, 1, 1, 0}, 0, 8));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {8, 1, 0, 0, 0, 0, 1, 0}, 0, 8));
+            expect(CipherException.class, () -> new SettingsParser(false).offer(new byte[] {8, 1, 0, 0, 0, 1, 0, 12}, 0, 8));
+            check(new SettingsParser(false).offer(new byte[] {8, 1, 0, 0, 0, 1, 1, 0}, 0, 8) == 8, "valid key derivation parameters should be accepted");
+        });
+    }
+
+    private static AESPasswordRfc2898CipherFactory getFactory() {
+        return new AESPasswordRfc2898CipherFactory("password", new byte[] {1, 2, 3, 4}, new byte[16]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import com.captainalm.lib.stdcrypt.TestRunner;
+
+import javax.crypto.Cipher;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.captainalm.lib.stdcrypt.TestRunner.check;
+
+/**
+ * This class contains the tests that the settings of {@link AESPasswordRfc2898CipherFactory} are read as a consistent snapshot
+ * while they are being replaced by another thread.
+ *
+ * @author Captain ALM
+ */
+public final class SettingsSnapshotTest {
+    private SettingsSnapshotTest() {
+    }
+
+    /**
+     * Runs the tests.
+     *
+     * @param runner The runner to use.
+     */
+    public static void run(TestRunner runner) {
+        runner.test("settingsSnapshot.concurrent", () -> {
+            AESPasswordRfc2898CipherFactory factory = TestFactories.create("AES/CBC");
+            factory.setSalt(new byte[] {5, 6, 7, 8, 9});
+            factory.setInitializationVector(TestFactories.getPayload(16));
+            byte[] second = factory.getSettings();
+            factory.setSalt(new byte[] {1, 2, 3, 4});
+            factory.setInitializationVector(new byte[16]);
+            byte[] first = factory.getSettings();
+            byte[] payload = TestFactories.getPayload(100);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Throwable[] failures = new Throwable[4];
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) factory.setSettings((i % 2 == 0) ? second : first);
+                } catch (Throwable t) {
+                    failures[0] = t;
+                } finally {
+                    running.set(false);
+                }
+            });
+            Thread[] readers = new Thread[failures.length - 1];
+            for (int i = 0; i < readers.length; i++) {
+                int index = i + 1;
+                readers[i] = new Thread(() -> {
+                    try {
+                        while (running.get()) {
+                            byte[] settings = factory.getSettings();
+                            if (!Arrays.equals(settings, first) && !Arrays.equals(settings, second)) throw new AssertionError("settings should be one of the written snapshots");
+                            CipherWithHeader encryptor = factory.getCipherWithHeader(Cipher.ENCRYPT_MODE);
+                            byte[] cipherText = encryptor.getCipher().doFinal(payload);
+                            Cipher decryptor = TestFactories.create("AES/CBC").getCipherFromHeader(Cipher.DECRYPT_MODE, encryptor.getHeader());
+                            if (!Arrays.equals(decryptor.doFinal(cipherText), payload)) throw new AssertionError("the header should match the settings of its cipher");
+                        }
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                });
+            }
+            for (Thread reader : readers) reader.start();
+            writer.start();
+            writer.join();
+            for (Thread reader : readers) reader.join();
+            for (Throwable failure : failures) if (failure != null) throw new AssertionError(failure);
+            check(Arrays.equals(factory.getSettings(), first), "the last written settings should be kept");
+        });
+    }
+}
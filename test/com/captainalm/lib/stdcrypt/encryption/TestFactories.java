@@ -0,0 +1,126 @@
+package com.captainalm.lib.stdcrypt.encryption;
+
+import javax.crypto.Cipher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class provides the cipher factories and payloads used by the encryption tests.
+ *
+ * @author Captain ALM
+ */
+final class TestFactories {
+    /**
+     * The password used by the test factories.
+     */
+    static final String password = "test password";
+
+    private TestFactories() {
+    }
+
+    /**
+     * Gets the names of the supported cipher modes.
+     *
+     * @return The mode names.
+     */
+    static List<String> getModes() {
+        List<String> toret = new ArrayList<>(Arrays.asList("AES/CBC", "AES/GCM", "AES/CTR"));
+        if (ChaCha20Poly1305PasswordRfc2898CipherFactory.isSupported()) toret.add("ChaCha20-Poly1305");
+        return toret;
+    }
+
+    /**
+     * Gets whether the mode authenticates the cipher text.
+     *
+     * @param mode The mode name.
+     * @return If the mode is authenticated.
+     */
+    static boolean isAuthenticated(String mode) {
+        return mode.equals("AES/GCM") || mode.equals("ChaCha20-Poly1305");
+    }
+
+    /**
+     * Creates a new factory for the specified mode that outputs its salt and initialization vector.
+     *
+     * @param mode The mode name.
+     * @return The new factory.
+     */
+    static AESPasswordRfc2898CipherFactory create(String mode) {
+        AESPasswordRfc2898CipherFactory toret;
+        switch (mode) {
+            case "AES/CBC": toret = new AESPasswordRfc2898CipherFactory(password); break;
+            case "AES/GCM": toret = new AESGCMPasswordRfc2898CipherFactory(password); break;
+            case "AES/CTR": toret = new AESCTRPasswordRfc2898CipherFactory(password); break;
+            case "ChaCha20-Poly1305": toret = new ChaCha20Poly1305PasswordRfc2898CipherFactory(password); break;
+            default: throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+        toret.setIterations(1000);
+        toret.setOutputSalt(true);
+        toret.setOutputInitializationVector(true);
+        return toret;
+    }
+
+    /**
+     * Gets a deterministic payload of the specified size.
+     *
+     * @param size The size in bytes.
+     * @return The payload.
+     */
+    static byte[] getPayload(int size) {
+        byte[] toret = new byte[size];
+        new Random(size).nextBytes(toret);
+        return toret;
+    }
+
+    /**
+     * Wraps the specified factory so that only the default methods of {@link ICipherFactory} are used.
+     *
+     * @param factory The factory to wrap.
+     * @return The wrapping factory.
+     */
+    static ICipherFactory wrap(ICipherFactory factory) {
+        return new ICipherFactory() {
+            @Override
+            public Cipher getCipher(int opmode) throws CipherException {
+                return factory.getCipher(opmode);
+            }
+
+            @Override
+            public String getName() {
+                return "Wrapped " + factory.getName();
+            }
+
+            @Override
+            public boolean cipherAttributesModified() {
+                return factory.cipherAttributesModified();
+            }
+
+            @Override
+            public byte[] getSettings() {
+                return factory.getSettings();
+            }
+
+            @Override
+            public int getSettingsLength() {
+                return factory.getSettingsLength();
+            }
+
+            @Override
+            public byte[] getSettingsNoSecrets() {
+                return factory.getSettingsNoSecrets();
+            }
+
+            @Override
+            public int getSettingsNoSecretsLength() {
+                return factory.getSettingsNoSecretsLength();
+            }
+
+            @Override
+            public void setSettings(byte[] settingsIn) throws CipherException {
+                factory.setSettings(settingsIn);
+            }
+        };
+    }
+}